@@ -18,6 +18,7 @@ dependencies {
     implementation(libs.spotless)
     implementation(libs.shadow)
     implementation(libs.errorprone.gradle)
+    implementation(libs.jmh.gradle)
     // https://github.com/KyoriPowered/adventure/blob/b271c100a463a5bdc850753d571bf555ef855b85/build-logic/build.gradle.kts#L17
     compileOnly(files(libs::class.java.protectionDomain.codeSource.location))
 }
@@ -66,7 +66,7 @@ tasks.withType<JavaCompile> {
             "InlineMeSuggester",
             "EmptyCatch",
         )
-        if (!name.contains("test", true)) {
+        if (!name.contains("test", true) && !name.contains("jmh", true)) {
             check("NullAway", CheckSeverity.ERROR)
             option("NullAway:AnnotatedPackages", "fr.xpdustry.nucleus")
             option("NullAway:TreatGeneratedAsUnannotated", true)
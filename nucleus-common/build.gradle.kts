@@ -1,12 +1,14 @@
 plugins {
     id("nucleus.base-conventions")
     id("nucleus.publishing-conventions")
+    id("me.champeau.jmh")
 }
 
 dependencies {
     api(libs.slf4j.api)
     api(libs.javelin.core)
     api(libs.mongodb.driver.sync)
+    api(libs.mongodb.driver.reactivestreams)
     api(libs.password4j)
     api(libs.gson)
     api(libs.owner.java8)
@@ -24,3 +26,9 @@ dependencies {
     annotationProcessor(libs.immutables.value.processor)
     compileOnly(libs.javax.inject)
 }
+
+jmh {
+    // The benchmarks share the prefix fixtures of the tests
+    includeTests.set(true)
+    profilers.add("gc")
+}
@@ -0,0 +1,104 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import com.google.common.collect.RangeSet;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cloud address lookups of {@link AddressRangeSet} with the {@link RangeSet} of {@link BigInteger} used
+ * before, on the prefixes of {@link CloudPrefixFixtures}. The addresses are already parsed, so only the lookups are
+ * measured, half of them are in the blocked ranges.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddressRangeSetBenchmark {
+
+    // A power of two, so the cursor wraps with a mask
+    private static final int ADDRESS_COUNT = 4096;
+
+    private AddressRangeSet set = AddressRangeSet.empty();
+    private RangeSet<BigInteger> reference = CloudPrefixFixtures.createReference(List.of());
+    private InetAddress[] addresses = new InetAddress[0];
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var prefixes = CloudPrefixFixtures.load();
+        final var builder = AddressRangeSet.builder();
+        prefixes.forEach(builder::add);
+        this.set = builder.build();
+        this.reference = CloudPrefixFixtures.createReference(prefixes);
+
+        final var ranges = new ArrayList<>(this.reference.asRanges());
+        final var random = new Random(42L);
+        final List<InetAddress> addresses = new ArrayList<>();
+        while (addresses.size() < ADDRESS_COUNT) {
+            final var range = ranges.get(random.nextInt(ranges.size()));
+            final var span = range.upperEndpoint().subtract(range.lowerEndpoint());
+            // An address in the range, or the address right after it, which is never in the next merged range
+            final var candidate = addresses.size() % 2 == 0
+                    ? range.lowerEndpoint().add(new BigInteger(span.bitLength() - 1, random))
+                    : range.upperEndpoint();
+            final var address = CloudPrefixFixtures.toAddress(candidate);
+            if (address != null) {
+                addresses.add(address);
+            }
+        }
+        Collections.shuffle(addresses, random);
+        this.addresses = addresses.toArray(InetAddress[]::new);
+        this.cursor = 0;
+    }
+
+    @Benchmark
+    public boolean containsAddressRangeSet() {
+        return this.set.contains(this.next());
+    }
+
+    @Benchmark
+    public boolean containsTreeRangeSet() {
+        return this.reference.contains(CloudPrefixFixtures.toInteger(this.next()));
+    }
+
+    private InetAddress next() {
+        final var address = this.addresses[this.cursor];
+        this.cursor = (this.cursor + 1) & (ADDRESS_COUNT - 1);
+        return address;
+    }
+}
@@ -20,15 +20,19 @@ package fr.xpdustry.nucleus.common;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import fr.xpdustry.nucleus.common.annotation.NucleusExecutor;
+import fr.xpdustry.nucleus.common.application.NucleusApplication;
 import fr.xpdustry.nucleus.common.configuration.ConfigurationFactory;
 import fr.xpdustry.nucleus.common.configuration.NoopNucleusConfigurationUpgrader;
 import fr.xpdustry.nucleus.common.configuration.NucleusConfiguration;
 import fr.xpdustry.nucleus.common.configuration.NucleusConfigurationUpgrader;
 import fr.xpdustry.nucleus.common.configuration.SimpleConfigurationFactory;
 import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.embedded.EmbeddedDatabaseService;
 import fr.xpdustry.nucleus.common.database.mongo.MongoDatabaseService;
+import fr.xpdustry.nucleus.common.database.mongo.MongoReactiveDatabaseService;
 import fr.xpdustry.nucleus.common.hash.BcryptHashFunction;
 import fr.xpdustry.nucleus.common.hash.HashFunction;
+import fr.xpdustry.nucleus.common.network.CachingVpnDetector;
 import fr.xpdustry.nucleus.common.network.DiscoveryService;
 import fr.xpdustry.nucleus.common.network.IpHubVpnDetector;
 import fr.xpdustry.nucleus.common.network.IpQualityScoreVpnDetector;
@@ -40,14 +44,16 @@ import fr.xpdustry.nucleus.common.translation.TranslationService;
 import fr.xpdustry.nucleus.common.translation.TranslationServiceProvider;
 import fr.xpdustry.nucleus.common.version.SimpleUpdateService;
 import fr.xpdustry.nucleus.common.version.UpdateService;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Executor;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 public final class NucleusCommonModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(DatabaseService.class).to(MongoDatabaseService.class).in(Singleton.class);
         bind(HashFunction.class).to(BcryptHashFunction.class).in(Singleton.class);
         bind(DiscoveryService.class).to(ListeningDiscoveryService.class).in(Singleton.class);
         bind(TranslationService.class)
@@ -66,13 +72,42 @@ public final class NucleusCommonModule extends AbstractModule {
         return factory.create(NucleusConfiguration.class);
     }
 
+    @Provides
+    @Singleton
+    public DatabaseService provideDatabaseService(
+            final NucleusConfiguration configuration,
+            final Provider<MongoDatabaseService> mongo,
+            final Provider<MongoReactiveDatabaseService> reactive,
+            final Provider<EmbeddedDatabaseService> embedded) {
+        return switch (configuration.getDatabaseBackend()) {
+            case MONGODB -> mongo.get();
+            case MONGODB_REACTIVE -> reactive.get();
+            case EMBEDDED -> embedded.get();
+        };
+    }
+
     @Provides
     @Singleton
     public VpnDetector provideVpnDetector(
-            final NucleusConfiguration configuration, final @NucleusExecutor Executor executor) {
-        return new RollingVpnDetector(
-                new IpHubVpnDetector(configuration, executor),
-                new VpnApiIoDetector(configuration, executor),
-                new IpQualityScoreVpnDetector(configuration, executor));
+            final NucleusConfiguration configuration,
+            final NucleusApplication application,
+            final @NucleusExecutor Executor executor) {
+        return new CachingVpnDetector(
+                new RollingVpnDetector(
+                        List.of(
+                                new IpHubVpnDetector(configuration, executor),
+                                new VpnApiIoDetector(configuration, executor),
+                                new IpQualityScoreVpnDetector(configuration, executor)),
+                        Duration.ofSeconds(configuration.getVpnRoutingCooldown()),
+                        Duration.ofMillis(configuration.getVpnRoutingSlowThreshold()),
+                        configuration.getVpnRoutingHedgeBudget() > 0
+                                ? Duration.ofMillis(configuration.getVpnRoutingHedgeBudget())
+                                : null),
+                Duration.ofSeconds(configuration.getVpnCachePositiveTtl()),
+                Duration.ofSeconds(configuration.getVpnCacheNegativeTtl()),
+                configuration.getVpnCacheMaximumSize(),
+                configuration.isVpnCachePersistent()
+                        ? application.getDataDirectory().resolve("vpn-verdicts.bin")
+                        : null);
     }
 }
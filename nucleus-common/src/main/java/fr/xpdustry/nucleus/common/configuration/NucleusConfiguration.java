@@ -17,6 +17,7 @@
  */
 package fr.xpdustry.nucleus.common.configuration;
 
+import fr.xpdustry.nucleus.common.database.DatabaseBackend;
 import org.aeonbits.owner.Config;
 
 // TODO Create a small config library backed by Configurate, Owner is getting old
@@ -34,6 +35,34 @@ public interface NucleusConfiguration extends Config {
     @Config.DefaultValue("false")
     String getIpQualityScoreToken();
 
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-cache.positive-ttl")
+    @Config.DefaultValue("604800")
+    long getVpnCachePositiveTtl();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-cache.negative-ttl")
+    @Config.DefaultValue("86400")
+    long getVpnCacheNegativeTtl();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-cache.maximum-size")
+    @Config.DefaultValue("100000")
+    long getVpnCacheMaximumSize();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-cache.persistent")
+    @Config.DefaultValue("true")
+    boolean isVpnCachePersistent();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-routing.cooldown")
+    @Config.DefaultValue("60")
+    long getVpnRoutingCooldown();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-routing.slow-threshold")
+    @Config.DefaultValue("2000")
+    long getVpnRoutingSlowThreshold();
+
+    @Config.Key("fr.xpdustry.nucleus.network.vpn-routing.hedge-budget")
+    @Config.DefaultValue("0")
+    long getVpnRoutingHedgeBudget();
+
     @Config.Key("fr.xpdustry.nucleus.auto-update.enabled")
     @Config.DefaultValue("true")
     boolean isAutoUpdateEnabled();
@@ -46,6 +75,10 @@ public interface NucleusConfiguration extends Config {
     @Config.DefaultValue("")
     String getDeeplTranslationToken();
 
+    @Config.Key("fr.xpdustry.nucleus.data.backend")
+    @Config.DefaultValue("MONGODB")
+    DatabaseBackend getDatabaseBackend();
+
     @Config.Key("fr.xpdustry.nucleus.data.mongodb.host")
     @Config.DefaultValue("")
     String getMongoHost();
@@ -0,0 +1,59 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A named field of an entity, used to describe partial updates with {@link EntityUpdate}.
+ */
+public final class EntityField<E extends Entity<?>, V> {
+
+    private final String name;
+    private final Function<E, V> getter;
+    private final BiConsumer<E, V> setter;
+
+    private EntityField(final String name, final Function<E, V> getter, final BiConsumer<E, V> setter) {
+        this.name = name;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public static <E extends Entity<?>, V> EntityField<E, V> of(
+            final String name, final Function<E, V> getter, final BiConsumer<E, V> setter) {
+        return new EntityField<>(name, getter, setter);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public V get(final E entity) {
+        return this.getter.apply(entity);
+    }
+
+    public void set(final E entity, final V value) {
+        this.setter.accept(entity, value);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityField{name=" + this.name + "}";
+    }
+}
@@ -17,8 +17,12 @@
  */
 package fr.xpdustry.nucleus.common.database;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.UnaryOperator;
 
 public interface EntityManager<I, E extends Entity<I>> {
@@ -31,6 +35,16 @@ public interface EntityManager<I, E extends Entity<I>> {
 
     CompletableFuture<Iterable<E>> findAll();
 
+    /**
+     * Streams all the entities, fetching them in batches of the given size. Only the fields of the projection are
+     * loaded, the other ones keep their default value. An empty projection loads every field.
+     */
+    Flow.Publisher<E> streamAll(final int batchSize, final Collection<EntityField<E, ?>> projection);
+
+    default Flow.Publisher<E> streamAll(final int batchSize) {
+        return streamAll(batchSize, List.of());
+    }
+
     CompletableFuture<Boolean> exists(final E entity);
 
     CompletableFuture<Long> count();
@@ -41,6 +55,16 @@ public interface EntityManager<I, E extends Entity<I>> {
 
     CompletableFuture<Void> deleteAll(final Iterable<E> entities);
 
+    /**
+     * Applies a partial update to an entity in a single atomic write, creating it if it does not exist.
+     */
+    CompletableFuture<Void> update(final I id, final EntityUpdate<E> update);
+
+    /**
+     * Applies several partial updates in a single batch, creating the missing entities.
+     */
+    CompletableFuture<Void> updateAll(final Map<I, EntityUpdate<E>> updates);
+
     default CompletableFuture<Void> updateIfPresent(final I id, final UnaryOperator<E> updater) {
         return findById(id).thenCompose(result -> result.map(entity -> this.save(updater.apply(entity)))
                 .orElse(CompletableFuture.completedFuture(null)));
@@ -0,0 +1,143 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of field-level changes to apply atomically to an entity, without reading it first. Successive operations on
+ * the same field are coalesced, so an update can accumulate changes before being written.
+ */
+public final class EntityUpdate<E extends Entity<?>> {
+
+    private final Map<String, Operation<E>> operations = new LinkedHashMap<>();
+
+    private EntityUpdate() {}
+
+    public static <E extends Entity<?>> EntityUpdate<E> create() {
+        return new EntityUpdate<>();
+    }
+
+    public <V> EntityUpdate<E> set(final EntityField<E, V> field, final V value) {
+        return this.add(new Operation<>(Type.SET, field, value));
+    }
+
+    public EntityUpdate<E> increment(final EntityField<E, Integer> field, final int amount) {
+        return this.add(new Operation<>(Type.INCREMENT, field, amount));
+    }
+
+    public EntityUpdate<E> increment(final EntityField<E, Duration> field, final Duration amount) {
+        return this.add(new Operation<>(Type.INCREMENT, field, amount));
+    }
+
+    public <V> EntityUpdate<E> addToSet(final EntityField<E, Set<V>> field, final V value) {
+        return this.add(new Operation<>(Type.ADD_TO_SET, field, Set.of(value)));
+    }
+
+    public <V extends Comparable<? super V>> EntityUpdate<E> max(final EntityField<E, V> field, final V value) {
+        return this.add(new Operation<>(Type.MAX, field, value));
+    }
+
+    /**
+     * Adds the operations of another update to this one.
+     */
+    public EntityUpdate<E> merge(final EntityUpdate<E> other) {
+        other.operations.values().forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Applies the operations to an entity held in memory.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void apply(final E entity) {
+        for (final var operation : this.operations.values()) {
+            final var field = (EntityField<E, Object>) operation.field();
+            final var current = field.get(entity);
+            field.set(
+                    entity,
+                    switch (operation.type()) {
+                        case SET -> operation.value();
+                        case INCREMENT -> sum(current, operation.value());
+                        case ADD_TO_SET -> union((Collection<?>) current, (Collection<?>) operation.value());
+                        case MAX -> current == null || ((Comparable) operation.value()).compareTo(current) > 0
+                                ? operation.value()
+                                : current;
+                    });
+        }
+    }
+
+    public List<Operation<E>> getOperations() {
+        return List.copyOf(this.operations.values());
+    }
+
+    public boolean isEmpty() {
+        return this.operations.isEmpty();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private EntityUpdate<E> add(final Operation<E> operation) {
+        this.operations.merge(operation.field().getName(), operation, (previous, next) -> {
+            if (previous.type() != next.type()) {
+                throw new IllegalArgumentException("Conflicting operations on the field " + next.field());
+            }
+            return new Operation<>(
+                    next.type(),
+                    next.field(),
+                    switch (next.type()) {
+                        case SET -> next.value();
+                        case INCREMENT -> sum(previous.value(), next.value());
+                        case ADD_TO_SET -> union((Collection<?>) previous.value(), (Collection<?>) next.value());
+                        case MAX -> ((Comparable) next.value()).compareTo(previous.value()) > 0
+                                ? next.value()
+                                : previous.value();
+                    });
+        });
+        return this;
+    }
+
+    private static Object sum(final Object a, final Object b) {
+        if (a instanceof Integer x && b instanceof Integer y) {
+            return x + y;
+        } else if (a instanceof Duration x && b instanceof Duration y) {
+            return x.plus(y);
+        }
+        throw new IllegalArgumentException("Cannot increment " + a + " by " + b);
+    }
+
+    private static Set<Object> union(final Collection<?> a, final Collection<?> b) {
+        final Set<Object> result = new LinkedHashSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    public enum Type {
+        SET,
+        INCREMENT,
+        ADD_TO_SET,
+        MAX
+    }
+
+    public record Operation<E extends Entity<?>>(Type type, EntityField<E, ?> field, Object value) {}
+}
@@ -0,0 +1,144 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Emits the items of a blocking iterator such as a database cursor on the executor, following the demand of the
+ * subscriber. The iterator is only opened once the first item is requested, and is closed once done if it is
+ * {@link AutoCloseable}.
+ */
+public final class IteratorPublisher<T> implements Flow.Publisher<T> {
+
+    private final Supplier<? extends Iterator<T>> cursor;
+    private final Executor executor;
+
+    public IteratorPublisher(final Supplier<? extends Iterator<T>> cursor, final Executor executor) {
+        this.cursor = cursor;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new CursorSubscription<>(subscriber, this.cursor, this.executor));
+    }
+
+    private static final class CursorSubscription<T> implements Flow.Subscription {
+
+        private final AtomicLong demand = new AtomicLong(0L);
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<? extends Iterator<T>> supplier;
+        private final Executor executor;
+        private volatile boolean cancelled = false;
+        private volatile @Nullable Throwable failure = null;
+        // Only accessed by the drain loop, which never runs concurrently
+        private @Nullable Iterator<T> cursor = null;
+        private boolean done = false;
+
+        private CursorSubscription(
+                final Flow.Subscriber<? super T> subscriber,
+                final Supplier<? extends Iterator<T>> supplier,
+                final Executor executor) {
+            this.subscriber = subscriber;
+            this.supplier = supplier;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                this.failure = new IllegalArgumentException("The requested amount must be positive, got " + n);
+            } else {
+                this.demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            this.schedule();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.schedule();
+        }
+
+        private void schedule() {
+            if (this.pending.getAndIncrement() == 0) {
+                this.executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            var missed = 1;
+            do {
+                if (!this.done) {
+                    this.emit();
+                }
+                missed = this.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            try {
+                if (this.failure != null) {
+                    this.terminate();
+                    this.subscriber.onError(this.failure);
+                    return;
+                }
+                while (!this.cancelled && this.demand.get() > 0) {
+                    if (this.cursor == null) {
+                        this.cursor = this.supplier.get();
+                    }
+                    if (!this.cursor.hasNext()) {
+                        this.terminate();
+                        this.subscriber.onComplete();
+                        return;
+                    }
+                    final var item = this.cursor.next();
+                    this.demand.decrementAndGet();
+                    this.subscriber.onNext(item);
+                }
+                if (this.cancelled) {
+                    this.terminate();
+                }
+            } catch (final RuntimeException exception) {
+                this.terminate();
+                this.subscriber.onError(exception);
+            }
+        }
+
+        private void terminate() {
+            this.done = true;
+            if (this.cursor instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (final Exception ignored) {
+                    // The cursor is discarded anyway
+                }
+            }
+        }
+    }
+}
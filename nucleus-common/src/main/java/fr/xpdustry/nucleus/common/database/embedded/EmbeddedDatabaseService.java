@@ -0,0 +1,92 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.embedded;
+
+import fr.xpdustry.nucleus.common.annotation.NucleusExecutor;
+import fr.xpdustry.nucleus.common.application.NucleusApplication;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.model.PunishmentManager;
+import fr.xpdustry.nucleus.common.database.model.UserManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DatabaseService} storing everything in the data directory, for single node deployments and tests without
+ * a MongoDB server.
+ */
+public final class EmbeddedDatabaseService implements DatabaseService, NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedDatabaseService.class);
+
+    private final Path directory;
+    private final Executor executor;
+    private @MonotonicNonNull EmbeddedUserManager userManager = null;
+    private @MonotonicNonNull EmbeddedPunishmentManager punishmentManager = null;
+
+    @Inject
+    public EmbeddedDatabaseService(final NucleusApplication application, final @NucleusExecutor Executor executor) {
+        this(application.getDataDirectory().resolve("database"), executor);
+    }
+
+    public EmbeddedDatabaseService(final Path directory, final Executor executor) {
+        this.directory = directory;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        try {
+            Files.createDirectories(this.directory);
+            this.userManager = new EmbeddedUserManager(this.directory.resolve("users.log"), this.executor);
+            this.userManager.open();
+            this.punishmentManager =
+                    new EmbeddedPunishmentManager(this.directory.resolve("punishments.log"), this.executor);
+            this.punishmentManager.open();
+        } catch (final IOException exception) {
+            throw new UncheckedIOException("Failed to open the embedded database in " + this.directory, exception);
+        }
+    }
+
+    @Override
+    public void onNucleusExit() {
+        try {
+            this.userManager.close();
+            this.punishmentManager.close();
+        } catch (final IOException exception) {
+            logger.error("Failed to close the embedded database.", exception);
+        }
+    }
+
+    @Override
+    public UserManager getUserManager() {
+        return this.userManager;
+    }
+
+    @Override
+    public PunishmentManager getPunishmentManager() {
+        return this.punishmentManager;
+    }
+}
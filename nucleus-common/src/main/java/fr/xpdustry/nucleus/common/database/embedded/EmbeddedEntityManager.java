@@ -0,0 +1,482 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.embedded;
+
+import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityField;
+import fr.xpdustry.nucleus.common.database.EntityManager;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import fr.xpdustry.nucleus.common.database.IteratorPublisher;
+import fr.xpdustry.nucleus.common.database.mongo.MongoEntityCodec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EntityManager} keeping its entities in memory as BSON documents, persisted in an append-only log file.
+ * The log is replayed on open and compacted once it holds too many stale records. Entities can be indexed by keys,
+ * for the lookups by something else than the identifier.
+ * <p>
+ * The reads are served from memory, while the writes are run one after the other on the executor. Each write is
+ * applied as a whole or not at all.
+ */
+public class EmbeddedEntityManager<E extends Entity<I>, I> implements EntityManager<I, E> {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedEntityManager.class);
+    private static final String ID_FIELD = "_id";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    protected final MongoEntityCodec<E> codec;
+    private final Map<BsonValue, BsonDocument> documents = new LinkedHashMap<>();
+    private final Map<String, Set<BsonValue>> index = new HashMap<>();
+    private final Path file;
+    private final Executor executor;
+    private final Function<I, E> factory;
+    private final Function<I, BsonValue> identifiers;
+    private final Function<BsonDocument, Collection<String>> keys;
+    // Only touched by the writes, which are run one after the other on the executor
+    private @Nullable FileChannel channel = null;
+    private long records = 0L;
+    private CompletableFuture<Void> writes = CompletableFuture.completedFuture(null);
+
+    protected EmbeddedEntityManager(
+            final Path file,
+            final Executor executor,
+            final MongoEntityCodec<E> codec,
+            final Function<I, E> factory,
+            final Function<I, BsonValue> identifiers,
+            final Function<BsonDocument, Collection<String>> keys) {
+        this.file = file;
+        this.executor = executor;
+        this.codec = codec;
+        this.factory = factory;
+        this.identifiers = identifiers;
+        this.keys = keys;
+    }
+
+    /**
+     * Loads the entities from the log file, then compacts it.
+     */
+    public synchronized void open() throws IOException {
+        try (final var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+            while (true) {
+                final int type = input.read();
+                if (type == -1) {
+                    break;
+                }
+                final byte[] bytes;
+                try {
+                    bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                } catch (final EOFException exception) {
+                    logger.warn("The last record of {} is incomplete, discarding it.", this.file);
+                    break;
+                }
+                final var document = new RawBsonDocument(bytes);
+                switch (type) {
+                    case PUT -> this.store(document);
+                    case DELETE -> this.remove(document.get(ID_FIELD));
+                    default -> throw new IOException("Unknown record type " + type + " in " + this.file);
+                }
+            }
+        } catch (final NoSuchFileException ignored) {
+            // The log will be created by the compaction
+        }
+        this.compact(List.copyOf(this.documents.values()));
+    }
+
+    /**
+     * Waits for the pending writes, then closes the log file.
+     */
+    public void close() throws IOException {
+        final CompletableFuture<Void> pending;
+        synchronized (this) {
+            pending = this.writes;
+        }
+        try {
+            pending.join();
+        } catch (final CompletionException ignored) {
+            // Already reported to the caller of the failed write
+        }
+        this.closeChannel();
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final E entity) {
+        final var document = this.codec.encode(entity);
+        return this.write(batch -> batch.put(document));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAll(final Iterable<E> entities) {
+        // Encoded right away, the entities can be modified by the caller before the write runs
+        final List<BsonDocument> documents = new ArrayList<>();
+        for (final var entity : entities) {
+            documents.add(this.codec.encode(entity));
+        }
+        return this.write(batch -> documents.forEach(batch::put));
+    }
+
+    @Override
+    public synchronized CompletableFuture<Optional<E>> findById(final I id) {
+        return CompletableFuture.completedFuture(
+                Optional.ofNullable(this.documents.get(this.identifiers.apply(id))).map(this.codec::decode));
+    }
+
+    @Override
+    public synchronized CompletableFuture<Iterable<E>> findAll() {
+        return CompletableFuture.completedFuture(this.documents.values().stream().map(this.codec::decode).toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entities are already in memory, so the projection is ignored and every field is loaded.
+     */
+    @Override
+    public Flow.Publisher<E> streamAll(final int batchSize, final Collection<EntityField<E, ?>> projection) {
+        return new IteratorPublisher<>(
+                () -> {
+                    final List<BsonDocument> snapshot;
+                    synchronized (this) {
+                        snapshot = List.copyOf(this.documents.values());
+                    }
+                    return snapshot.stream().map(this.codec::decode).iterator();
+                },
+                this.executor);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> exists(final E entity) {
+        return CompletableFuture.completedFuture(
+                this.documents.containsKey(this.identifiers.apply(entity.getIdentifier())));
+    }
+
+    @Override
+    public synchronized CompletableFuture<Long> count() {
+        return CompletableFuture.completedFuture((long) this.documents.size());
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteById(final I id) {
+        return this.write(batch -> batch.delete(this.identifiers.apply(id)));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll() {
+        return this.write(Batch::clear);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(final Iterable<E> entities) {
+        final List<BsonValue> identifiers = new ArrayList<>();
+        for (final var entity : entities) {
+            identifiers.add(this.identifiers.apply(entity.getIdentifier()));
+        }
+        return this.write(batch -> identifiers.forEach(batch::delete));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(final I id, final EntityUpdate<E> update) {
+        return this.write(batch -> this.apply(batch, id, update));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAll(final Map<I, EntityUpdate<E>> updates) {
+        final var copy = new LinkedHashMap<>(updates);
+        return this.write(batch -> {
+            for (final var entry : copy.entrySet()) {
+                this.apply(batch, entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    /**
+     * Returns the documents indexed under the given key.
+     */
+    protected synchronized List<BsonDocument> findAllByKey(final String key) {
+        final var indexed = this.index.getOrDefault(key, Set.of());
+        final List<BsonDocument> result = new ArrayList<>(indexed.size());
+        for (final var identifier : indexed) {
+            result.add(this.documents.get(identifier));
+        }
+        return result;
+    }
+
+    /**
+     * Queues a write, the writes are run one after the other on the executor, so the callers never wait for the disk.
+     */
+    private synchronized CompletableFuture<Void> write(final Consumer<Batch> operation) {
+        // A failed write must not prevent the next ones
+        final var future = this.writes.exceptionally(throwable -> null).thenRunAsync(() -> {
+            try {
+                this.commit(operation);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }, this.executor);
+        this.writes = future;
+        return future;
+    }
+
+    /**
+     * Stages the changes of the operation, writes them to the log, then applies them in memory. If anything fails
+     * before the changes are applied, neither the memory nor the log is modified.
+     */
+    private void commit(final Consumer<Batch> operation) throws IOException {
+        final var batch = new Batch();
+        synchronized (this) {
+            operation.accept(batch);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (batch.cleared) {
+            // The whole log is rewritten with what remains
+            final List<BsonDocument> remaining = new ArrayList<>();
+            batch.changes.values().forEach(document -> {
+                if (document != null) {
+                    remaining.add(document);
+                }
+            });
+            this.compact(remaining);
+            synchronized (this) {
+                batch.apply();
+            }
+            return;
+        }
+
+        final var encoded = batch.encode();
+        final var channel = this.channel();
+        final var position = channel.size();
+        try {
+            channel.position(position);
+            final var buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final IOException exception) {
+            // Don't leave a partial batch in the log, it would be replayed on the next start
+            try {
+                channel.truncate(position);
+            } catch (final IOException suppressed) {
+                exception.addSuppressed(suppressed);
+            }
+            throw exception;
+        }
+
+        final @Nullable List<BsonDocument> snapshot;
+        synchronized (this) {
+            batch.apply();
+            this.records += batch.changes.size();
+            snapshot = this.records > Math.max(MIN_COMPACTION_RECORDS, this.documents.size() * 2L)
+                    ? List.copyOf(this.documents.values())
+                    : null;
+        }
+        if (snapshot != null) {
+            try {
+                this.compact(snapshot);
+            } catch (final IOException exception) {
+                // The batch is already persisted, the log is only longer than it should be
+                logger.error("Failed to compact {}", this.file, exception);
+            }
+        }
+    }
+
+    private void apply(final Batch batch, final I id, final EntityUpdate<E> update) {
+        if (update.isEmpty()) {
+            return;
+        }
+        final var entity = Optional.ofNullable(batch.get(this.identifiers.apply(id)))
+                .map(this.codec::decode)
+                .orElseGet(() -> this.factory.apply(id));
+        update.apply(entity);
+        batch.put(this.codec.encode(entity));
+    }
+
+    private void store(final BsonDocument document) {
+        final var identifier = document.get(ID_FIELD);
+        this.remove(identifier);
+        this.documents.put(identifier, document);
+        for (final var key : this.keys.apply(document)) {
+            this.index.computeIfAbsent(key, k -> new HashSet<>()).add(identifier);
+        }
+    }
+
+    private void remove(final BsonValue identifier) {
+        final var previous = this.documents.remove(identifier);
+        if (previous == null) {
+            return;
+        }
+        for (final var key : this.keys.apply(previous)) {
+            final var indexed = this.index.get(key);
+            if (indexed != null && indexed.remove(identifier) && indexed.isEmpty()) {
+                this.index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the given documents, then swaps it with the current one.
+     */
+    private void compact(final Collection<BsonDocument> live) throws IOException {
+        this.closeChannel();
+        final var temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (final var writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (final var document : live) {
+                final var bytes = toBytes(document);
+                writer.writeByte(PUT);
+                writer.writeInt(bytes.length);
+                writer.write(bytes);
+            }
+        }
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            this.records = live.size();
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return this.channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    private static byte[] toBytes(final BsonDocument document) {
+        if (document instanceof RawBsonDocument raw) {
+            final var buffer = raw.getByteBuffer();
+            final var bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        final var buffer = new BasicOutputBuffer();
+        new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    /**
+     * The changes of a write, staged on top of the current documents without modifying them.
+     */
+    private final class Batch {
+
+        // The last state of each changed document, null when deleted
+        private final Map<BsonValue, @Nullable BsonDocument> changes = new LinkedHashMap<>();
+        private boolean cleared = false;
+
+        private @Nullable BsonDocument get(final BsonValue identifier) {
+            if (this.changes.containsKey(identifier)) {
+                return this.changes.get(identifier);
+            }
+            return this.cleared ? null : EmbeddedEntityManager.this.documents.get(identifier);
+        }
+
+        private void put(final BsonDocument document) {
+            this.changes.put(document.get(ID_FIELD), new RawBsonDocument(toBytes(document)));
+        }
+
+        private void delete(final BsonValue identifier) {
+            if (this.get(identifier) != null) {
+                this.changes.put(identifier, null);
+            }
+        }
+
+        private void clear() {
+            this.changes.clear();
+            this.cleared = true;
+        }
+
+        private boolean isEmpty() {
+            return this.changes.isEmpty() && !this.cleared;
+        }
+
+        private byte[] encode() throws IOException {
+            final var bytes = new ByteArrayOutputStream();
+            final var output = new DataOutputStream(bytes);
+            for (final var change : this.changes.entrySet()) {
+                final var document = change.getValue();
+                final var encoded = toBytes(document != null ? document : new BsonDocument(ID_FIELD, change.getKey()));
+                output.writeByte(document != null ? PUT : DELETE);
+                output.writeInt(encoded.length);
+                output.write(encoded);
+            }
+            return bytes.toByteArray();
+        }
+
+        private void apply() {
+            if (this.cleared) {
+                EmbeddedEntityManager.this.documents.clear();
+                EmbeddedEntityManager.this.index.clear();
+            }
+            for (final var change : this.changes.entrySet()) {
+                if (change.getValue() != null) {
+                    EmbeddedEntityManager.this.store(change.getValue());
+                } else {
+                    EmbeddedEntityManager.this.remove(change.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.embedded;
+
+import fr.xpdustry.nucleus.common.database.model.Punishment;
+import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import fr.xpdustry.nucleus.common.database.model.PunishmentManager;
+import fr.xpdustry.nucleus.common.database.mongo.MongoPunishmentManager.MongoPunishmentCodec;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+
+/**
+ * A {@link PunishmentManager} indexing the punishments by target address.
+ */
+public final class EmbeddedPunishmentManager extends EmbeddedEntityManager<Punishment, ObjectId>
+        implements PunishmentManager {
+
+    public EmbeddedPunishmentManager(final Path file, final Executor executor) {
+        super(
+                file,
+                executor,
+                new MongoPunishmentCodec(),
+                Punishment::new,
+                BsonObjectId::new,
+                document -> document.getArray("targets").stream()
+                        .map(BsonValue::asString)
+                        .map(BsonString::getValue)
+                        .toList());
+    }
+
+    @Override
+    public CompletableFuture<List<Punishment>> findAllByTarget(final InetAddress target) {
+        return CompletableFuture.completedFuture(this.findAllByKey(target.getHostAddress()).stream()
+                .map(this.codec::decode)
+                .toList());
+    }
+
+    @Override
+    public CompletableFuture<List<Punishment>> findActiveByTargets(final Collection<InetAddress> targets) {
+        final var punishments = new LinkedHashMap<BsonValue, Punishment>();
+        for (final var target : targets) {
+            for (final var document : this.findAllByKey(target.getHostAddress())) {
+                punishments.computeIfAbsent(document.get("_id"), id -> this.codec.decode(document));
+            }
+        }
+        return CompletableFuture.completedFuture(punishments.values().stream().filter(Punishment::isActive).toList());
+    }
+
+    @Override
+    public CompletableFuture<Long> countByTargetAndKind(final InetAddress target, final Kind kind) {
+        return CompletableFuture.completedFuture(this.findAllByKey(target.getHostAddress()).stream()
+                .filter(document -> document.getString("kind").getValue().equals(kind.name()))
+                .count());
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.embedded;
+
+import fr.xpdustry.nucleus.common.database.model.User;
+import fr.xpdustry.nucleus.common.database.model.UserManager;
+import fr.xpdustry.nucleus.common.database.mongo.MongoUserManager.MongoUserCodec;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.bson.BsonString;
+
+public final class EmbeddedUserManager extends EmbeddedEntityManager<User, String> implements UserManager {
+
+    public EmbeddedUserManager(final Path file, final Executor executor) {
+        super(file, executor, new MongoUserCodec(), User::new, BsonString::new, document -> List.of());
+    }
+}
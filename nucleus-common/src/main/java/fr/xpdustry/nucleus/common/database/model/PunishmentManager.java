@@ -19,6 +19,7 @@ package fr.xpdustry.nucleus.common.database.model;
 
 import fr.xpdustry.nucleus.common.database.EntityManager;
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.bson.types.ObjectId;
@@ -26,4 +27,14 @@ import org.bson.types.ObjectId;
 public interface PunishmentManager extends EntityManager<ObjectId, Punishment> {
 
     CompletableFuture<List<Punishment>> findAllByTarget(final InetAddress target);
+
+    /**
+     * Returns the active punishments of any of the given targets.
+     */
+    CompletableFuture<List<Punishment>> findActiveByTargets(final Collection<InetAddress> targets);
+
+    /**
+     * Counts the punishments of the given kind ever received by the target, pardoned or not.
+     */
+    CompletableFuture<Long> countByTargetAndKind(final InetAddress target, final Punishment.Kind kind);
 }
@@ -0,0 +1,42 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.model;
+
+import fr.xpdustry.nucleus.common.annotation.ImmutableNucleusStyle;
+import fr.xpdustry.nucleus.common.message.Message;
+import java.net.InetAddress;
+import java.util.List;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * Published when a punishment is created or modified, so the punishment caches of the addresses can be invalidated.
+ */
+@Immutable(copy = false, builder = false)
+@ImmutableNucleusStyle
+public sealed interface PunishmentMessage extends Message permits ImmutablePunishmentMessage {
+
+    static PunishmentMessage of(final Punishment punishment) {
+        return ImmutablePunishmentMessage.of(
+                punishment.getIdentifier().toHexString(),
+                punishment.getTargets().stream().map(InetAddress::getHostAddress).toList());
+    }
+
+    String getIdentifier();
+
+    List<String> getTargets();
+}
@@ -18,6 +18,7 @@
 package fr.xpdustry.nucleus.common.database.model;
 
 import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityField;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.Collections;
@@ -28,6 +29,22 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 public final class User extends Entity<String> {
 
+    public static final EntityField<User, Set<String>> NAMES = EntityField.of("names", User::getNames, User::setNames);
+    public static final EntityField<User, Set<InetAddress>> ADDRESSES =
+            EntityField.of("addresses", User::getAddresses, User::setAddresses);
+    public static final EntityField<User, @Nullable String> LAST_NAME =
+            EntityField.of("last_name", user -> user.getLastName().orElse(null), User::setLastName);
+    public static final EntityField<User, @Nullable InetAddress> LAST_ADDRESS =
+            EntityField.of("last_address", user -> user.getLastAddress().orElse(null), User::setLastAddress);
+    public static final EntityField<User, Integer> TIMES_JOINED =
+            EntityField.of("times_joined", User::getTimesJoined, User::setTimesJoined);
+    public static final EntityField<User, Integer> TIMES_KICKED =
+            EntityField.of("times_kicked", User::getTimesKicked, User::setTimesKicked);
+    public static final EntityField<User, Integer> GAMES_PLAYED =
+            EntityField.of("games_played", User::getGamesPlayed, User::setGamesPlayed);
+    public static final EntityField<User, Duration> PLAY_TIME =
+            EntityField.of("play_time", User::getPlayTime, User::setPlayTime);
+
     private final Set<String> names = new HashSet<>();
     private final Set<InetAddress> addresses = new HashSet<>();
     private @Nullable String lastName = null;
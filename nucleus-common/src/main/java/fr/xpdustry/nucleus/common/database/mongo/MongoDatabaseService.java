@@ -36,9 +36,13 @@ import java.util.concurrent.Executor;
 import javax.inject.Inject;
 import org.bson.BsonDocument;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class MongoDatabaseService implements DatabaseService, NucleusListener {
 
+    private static final Logger logger = LoggerFactory.getLogger(MongoDatabaseService.class);
+
     private final MongoClientSettings settings;
     private final String databaseName;
     private final Executor executor;
@@ -48,7 +52,13 @@ public final class MongoDatabaseService implements DatabaseService, NucleusListe
 
     @Inject
     public MongoDatabaseService(final NucleusConfiguration configuration, final @NucleusExecutor Executor executor) {
-        this.settings = MongoClientSettings.builder()
+        this.settings = createSettings(configuration);
+        this.databaseName = configuration.getMongoDatabase();
+        this.executor = executor;
+    }
+
+    static MongoClientSettings createSettings(final NucleusConfiguration configuration) {
+        return MongoClientSettings.builder()
                 .applicationName("Nucleus")
                 .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
                         new ServerAddress(configuration.getMongoHost(), configuration.getMongoPort()))))
@@ -65,8 +75,6 @@ public final class MongoDatabaseService implements DatabaseService, NucleusListe
                         .enabled(configuration.isMongoConnectionSsl())
                         .build()))
                 .build();
-        this.databaseName = configuration.getMongoDatabase();
-        this.executor = executor;
     }
 
     @Override
@@ -74,8 +82,13 @@ public final class MongoDatabaseService implements DatabaseService, NucleusListe
         this.client = MongoClients.create(this.settings);
         final var database = this.client.getDatabase(this.databaseName);
         this.userManager = new MongoUserManager(database.getCollection("users", BsonDocument.class), this.executor);
-        this.punishmentManager =
+        final var punishments =
                 new MongoPunishmentManager(database.getCollection("punishments", BsonDocument.class), this.executor);
+        punishments.createIndexes().exceptionally(throwable -> {
+            logger.error("Failed to create the punishment indexes.", throwable);
+            return null;
+        });
+        this.punishmentManager = punishments;
     }
 
     @Override
@@ -21,14 +21,23 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityField;
 import fr.xpdustry.nucleus.common.database.EntityManager;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import fr.xpdustry.nucleus.common.database.IteratorPublisher;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import org.bson.BsonDocument;
 
@@ -39,12 +48,17 @@ public class MongoEntityManager<E extends Entity<I>, I> implements EntityManager
     protected final MongoCollection<BsonDocument> collection;
     protected final MongoEntityCodec<E> codec;
     private final Executor executor;
+    private final Function<I, E> factory;
 
     protected MongoEntityManager(
-            final MongoCollection<BsonDocument> collection, final Executor executor, final MongoEntityCodec<E> codec) {
+            final MongoCollection<BsonDocument> collection,
+            final Executor executor,
+            final MongoEntityCodec<E> codec,
+            final Function<I, E> factory) {
         this.collection = collection;
         this.codec = codec;
         this.executor = executor;
+        this.factory = factory;
     }
 
     @Override
@@ -75,7 +89,21 @@ public class MongoEntityManager<E extends Entity<I>, I> implements EntityManager
 
     @Override
     public CompletableFuture<Iterable<E>> findAll() {
-        return supplyAsync(() -> collection.find().map(codec::decode));
+        return supplyAsync(() -> this.collection.find().map(this.codec::decode).into(new ArrayList<>()));
+    }
+
+    @Override
+    public Flow.Publisher<E> streamAll(final int batchSize, final Collection<EntityField<E, ?>> projection) {
+        final var fields = MongoProjections.encode(projection);
+        return new IteratorPublisher<>(
+                () -> this.collection
+                        .find()
+                        .projection(fields)
+                        .batchSize(batchSize)
+                        .map(document -> this.codec.decode(
+                                fields == null ? document : MongoProjections.fill(document, this.codec, this.factory)))
+                        .cursor(),
+                this.executor);
     }
 
     @Override
@@ -109,6 +137,34 @@ public class MongoEntityManager<E extends Entity<I>, I> implements EntityManager
         });
     }
 
+    @Override
+    public CompletableFuture<Void> update(final I id, final EntityUpdate<E> update) {
+        if (update.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return runAsync(() -> this.collection.updateOne(
+                Filters.eq(ID_FIELD, id),
+                MongoUpdates.encode(this.codec, this.factory, id, update),
+                new UpdateOptions().upsert(true)));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAll(final Map<I, EntityUpdate<E>> updates) {
+        final List<WriteModel<BsonDocument>> writes = new ArrayList<>();
+        for (final var entry : updates.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                writes.add(new UpdateOneModel<>(
+                        Filters.eq(ID_FIELD, entry.getKey()),
+                        MongoUpdates.encode(this.codec, this.factory, entry.getKey(), entry.getValue()),
+                        new UpdateOptions().upsert(true)));
+            }
+        }
+        if (writes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return runAsync(() -> this.collection.bulkWrite(writes));
+    }
+
     protected <T> CompletableFuture<T> supplyAsync(final Supplier<T> supplier) {
         return CompletableFuture.supplyAsync(supplier, this.executor);
     }
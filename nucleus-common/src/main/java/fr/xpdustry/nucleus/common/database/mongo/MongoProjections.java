@@ -0,0 +1,61 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.client.model.Projections;
+import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityField;
+import java.util.Collection;
+import java.util.function.Function;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+final class MongoProjections {
+
+    private MongoProjections() {}
+
+    static <E extends Entity<?>> @Nullable Bson encode(final Collection<EntityField<E, ?>> projection) {
+        if (projection.isEmpty()) {
+            return null;
+        }
+        return Projections.include(projection.stream().map(EntityField::getName).toList());
+    }
+
+    /**
+     * Fills the fields left out of a projected document with their default value, so it can be decoded.
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Entity<I>, I> BsonDocument fill(
+            final BsonDocument document, final MongoEntityCodec<E> codec, final Function<I, E> factory) {
+        final var result = codec.encode(factory.apply((I) unwrapId(document.get(MongoEntityManager.ID_FIELD))));
+        result.putAll(document);
+        return result;
+    }
+
+    private static Object unwrapId(final BsonValue value) {
+        return switch (value.getBsonType()) {
+            case STRING -> value.asString().getValue();
+            case OBJECT_ID -> value.asObjectId().getValue();
+            case INT32 -> value.asInt32().getValue();
+            case INT64 -> value.asInt64().getValue();
+            default -> throw new IllegalArgumentException("Unsupported identifier: " + value);
+        };
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Bridges the publishers of the reactive streams driver to completable futures. The futures are completed on the
+ * given executor, so the dependent stages never run on the threads of the driver.
+ */
+final class MongoPublishers {
+
+    private MongoPublishers() {}
+
+    static <T> CompletableFuture<List<T>> collect(final Publisher<T> publisher, final Executor executor) {
+        final var future = new CompletableFuture<List<T>>();
+        publisher.subscribe(new CollectingSubscriber<>(future, executor));
+        return future;
+    }
+
+    static <T> CompletableFuture<Optional<T>> first(final Publisher<T> publisher, final Executor executor) {
+        return collect(publisher, executor).thenApply(list -> list.stream().findFirst());
+    }
+
+    static CompletableFuture<Void> drain(final Publisher<?> publisher, final Executor executor) {
+        return collect(publisher, executor).thenApply(list -> null);
+    }
+
+    static <T, R> Flow.Publisher<R> map(final Publisher<T> publisher, final Function<T, R> mapper) {
+        final var adapted = FlowAdapters.toFlowPublisher(publisher);
+        return subscriber -> adapted.subscribe(new Flow.Subscriber<T>() {
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(final T item) {
+                subscriber.onNext(mapper.apply(item));
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    private static final class CollectingSubscriber<T> implements Subscriber<T> {
+
+        private final List<T> items = new ArrayList<>();
+        private final CompletableFuture<List<T>> future;
+        private final Executor executor;
+
+        private CollectingSubscriber(final CompletableFuture<List<T>> future, final Executor executor) {
+            this.future = future;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(final T item) {
+            this.items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.executor.execute(() -> this.future.completeExceptionally(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            final var result = List.copyOf(this.items);
+            this.executor.execute(() -> this.future.complete(result));
+        }
+    }
+}
@@ -19,19 +19,20 @@ package fr.xpdustry.nucleus.common.database.mongo;
 
 import com.google.common.net.InetAddresses;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.Filters;
 import fr.xpdustry.nucleus.common.database.model.Punishment;
 import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
 import fr.xpdustry.nucleus.common.database.model.PunishmentManager;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import org.bson.BsonArray;
 import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
 import org.bson.BsonDocument;
 import org.bson.BsonInt64;
 import org.bson.BsonObjectId;
@@ -43,17 +44,45 @@ public final class MongoPunishmentManager extends MongoEntityManager<Punishment,
         implements PunishmentManager {
 
     public MongoPunishmentManager(final MongoCollection<BsonDocument> collection, final Executor executor) {
-        super(collection, executor, new MongoPunishmentCodec());
+        super(collection, executor, new MongoPunishmentCodec(), Punishment::new);
     }
 
     @Override
     public CompletableFuture<List<Punishment>> findAllByTarget(final InetAddress target) {
         return supplyAsync(() -> Collections.unmodifiableList(this.collection
-                .find(Filters.in("targets", target.getHostAddress()))
+                .find(MongoPunishmentQueries.byTarget(target))
                 .map(this.codec::decode)
                 .into(new ArrayList<>())));
     }
 
+    @Override
+    public CompletableFuture<List<Punishment>> findActiveByTargets(final Collection<InetAddress> targets) {
+        if (targets.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return supplyAsync(() -> Collections.unmodifiableList(this.collection
+                .find(MongoPunishmentQueries.activeByTargets(targets))
+                .map(this.codec::decode)
+                .into(new ArrayList<>())));
+    }
+
+    @Override
+    public CompletableFuture<Long> countByTargetAndKind(final InetAddress target, final Kind kind) {
+        return supplyAsync(
+                () -> this.collection.countDocuments(MongoPunishmentQueries.byTargetAndKind(target, kind)));
+    }
+
+    /**
+     * Creates the indexes backing the target queries, after filling the expiration of the documents predating it.
+     */
+    public CompletableFuture<Void> createIndexes() {
+        return runAsync(() -> {
+            this.collection.updateMany(
+                    MongoPunishmentQueries.missingExpiration(), MongoPunishmentQueries.expirationBackfill());
+            this.collection.createIndexes(MongoPunishmentQueries.INDEXES);
+        });
+    }
+
     public static final class MongoPunishmentCodec implements MongoEntityCodec<Punishment> {
 
         @Override
@@ -71,7 +100,8 @@ public final class MongoPunishmentManager extends MongoEntityManager<Punishment,
                     .append("kind", new BsonString(entity.getKind().name()))
                     .append("reason", new BsonString(entity.getReason()))
                     .append("duration", new BsonInt64(entity.getDuration().getSeconds()))
-                    .append("pardoned", new BsonBoolean(entity.isPardoned()));
+                    .append("pardoned", new BsonBoolean(entity.isPardoned()))
+                    .append("expiration", new BsonDateTime(entity.getExpiration().toEpochMilli()));
         }
 
         @Override
@@ -0,0 +1,85 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Updates;
+import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+
+/**
+ * The punishment queries shared by the synchronous and reactive managers.
+ */
+final class MongoPunishmentQueries {
+
+    /**
+     * The indexes backing the target queries.
+     */
+    static final List<IndexModel> INDEXES = List.of(
+            new IndexModel(Indexes.ascending("targets", "kind")),
+            new IndexModel(Indexes.ascending("targets", "expiration")));
+
+    private MongoPunishmentQueries() {}
+
+    static Bson byTarget(final InetAddress target) {
+        return Filters.eq("targets", target.getHostAddress());
+    }
+
+    static Bson byTargetAndKind(final InetAddress target, final Kind kind) {
+        return Filters.and(byTarget(target), Filters.eq("kind", kind.name()));
+    }
+
+    static Bson activeByTargets(final Collection<InetAddress> targets) {
+        return Filters.and(
+                Filters.in("targets", targets.stream().map(InetAddress::getHostAddress).toList()),
+                Filters.gt("expiration", new BsonDateTime(System.currentTimeMillis())),
+                Filters.eq("pardoned", false));
+    }
+
+    /**
+     * Selects the documents predating the expiration field.
+     */
+    static Bson missingExpiration() {
+        return Filters.exists("expiration", false);
+    }
+
+    /**
+     * The update pipeline computing the expiration from the creation date of the identifier and the duration.
+     */
+    static List<Bson> expirationBackfill() {
+        return List.of(Updates.set(
+                "expiration",
+                new BsonDocument(
+                        "$add",
+                        new BsonArray(List.of(
+                                new BsonDocument("$toDate", new BsonString("$" + MongoEntityManager.ID_FIELD)),
+                                new BsonDocument(
+                                        "$multiply",
+                                        new BsonArray(List.of(new BsonString("$duration"), new BsonInt64(1000L)))))))));
+    }
+}
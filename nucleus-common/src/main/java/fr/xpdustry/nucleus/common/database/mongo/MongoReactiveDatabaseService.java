@@ -0,0 +1,88 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import fr.xpdustry.nucleus.common.annotation.NucleusExecutor;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.configuration.NucleusConfiguration;
+import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.model.PunishmentManager;
+import fr.xpdustry.nucleus.common.database.model.UserManager;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+import org.bson.BsonDocument;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DatabaseService} using the reactive streams driver, the queries don't occupy a thread of the executor while
+ * waiting for the server.
+ */
+public final class MongoReactiveDatabaseService implements DatabaseService, NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoReactiveDatabaseService.class);
+
+    private final MongoClientSettings settings;
+    private final String databaseName;
+    private final Executor executor;
+    private @MonotonicNonNull MongoClient client = null;
+    private @MonotonicNonNull UserManager userManager = null;
+    private @MonotonicNonNull PunishmentManager punishmentManager = null;
+
+    @Inject
+    public MongoReactiveDatabaseService(
+            final NucleusConfiguration configuration, final @NucleusExecutor Executor executor) {
+        this.settings = MongoDatabaseService.createSettings(configuration);
+        this.databaseName = configuration.getMongoDatabase();
+        this.executor = executor;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        this.client = MongoClients.create(this.settings);
+        final var database = this.client.getDatabase(this.databaseName);
+        this.userManager =
+                new MongoReactiveUserManager(database.getCollection("users", BsonDocument.class), this.executor);
+        final var punishments = new MongoReactivePunishmentManager(
+                database.getCollection("punishments", BsonDocument.class), this.executor);
+        punishments.createIndexes().exceptionally(throwable -> {
+            logger.error("Failed to create the punishment indexes.", throwable);
+            return null;
+        });
+        this.punishmentManager = punishments;
+    }
+
+    @Override
+    public void onNucleusExit() {
+        this.client.close();
+    }
+
+    @Override
+    public UserManager getUserManager() {
+        return this.userManager;
+    }
+
+    @Override
+    public PunishmentManager getPunishmentManager() {
+        return this.punishmentManager;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityField;
+import fr.xpdustry.nucleus.common.database.EntityManager;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import org.bson.BsonDocument;
+
+/**
+ * An {@link EntityManager} backed by the reactive streams driver. Unlike {@link MongoEntityManager}, no thread is
+ * blocked while a query is in flight, the executor is only used to run the continuations.
+ */
+public class MongoReactiveEntityManager<E extends Entity<I>, I> implements EntityManager<I, E> {
+
+    protected static final String ID_FIELD = MongoEntityManager.ID_FIELD;
+
+    protected final MongoCollection<BsonDocument> collection;
+    protected final MongoEntityCodec<E> codec;
+    protected final Executor executor;
+    private final Function<I, E> factory;
+
+    protected MongoReactiveEntityManager(
+            final MongoCollection<BsonDocument> collection,
+            final Executor executor,
+            final MongoEntityCodec<E> codec,
+            final Function<I, E> factory) {
+        this.collection = collection;
+        this.codec = codec;
+        this.executor = executor;
+        this.factory = factory;
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final E entity) {
+        return MongoPublishers.drain(
+                this.collection.replaceOne(
+                        Filters.eq(ID_FIELD, entity.getIdentifier()),
+                        this.codec.encode(entity),
+                        new ReplaceOptions().upsert(true)),
+                this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAll(final Iterable<E> entities) {
+        final List<WriteModel<BsonDocument>> writes = new ArrayList<>();
+        for (final var entity : entities) {
+            final var document = this.codec.encode(entity);
+            writes.add(new ReplaceOneModel<>(
+                    Filters.eq(ID_FIELD, document.get(ID_FIELD)), document, new ReplaceOptions().upsert(true)));
+        }
+        if (writes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return MongoPublishers.drain(this.collection.bulkWrite(writes), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<E>> findById(final I id) {
+        return MongoPublishers.first(this.collection.find(Filters.eq(ID_FIELD, id)).first(), this.executor)
+                .thenApply(result -> result.map(this.codec::decode));
+    }
+
+    @Override
+    public CompletableFuture<Iterable<E>> findAll() {
+        return MongoPublishers.collect(this.collection.find(), this.executor)
+                .thenApply(documents -> documents.stream().map(this.codec::decode).toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entities are emitted on the threads of the driver.
+     */
+    @Override
+    public Flow.Publisher<E> streamAll(final int batchSize, final Collection<EntityField<E, ?>> projection) {
+        final var fields = MongoProjections.encode(projection);
+        return MongoPublishers.map(
+                this.collection.find().projection(fields).batchSize(batchSize),
+                document -> this.codec.decode(
+                        fields == null ? document : MongoProjections.fill(document, this.codec, this.factory)));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(final E entity) {
+        return MongoPublishers.first(
+                        this.collection.countDocuments(Filters.eq(ID_FIELD, entity.getIdentifier())), this.executor)
+                .thenApply(count -> count.orElse(0L) > 0);
+    }
+
+    @Override
+    public CompletableFuture<Long> count() {
+        return MongoPublishers.first(this.collection.countDocuments(), this.executor)
+                .thenApply(count -> count.orElse(0L));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteById(final I id) {
+        return MongoPublishers.drain(this.collection.deleteOne(Filters.eq(ID_FIELD, id)), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll() {
+        return MongoPublishers.drain(this.collection.deleteMany(Filters.empty()), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(final Iterable<E> entities) {
+        final List<Object> ids = new ArrayList<>();
+        for (final var entity : entities) {
+            ids.add(entity.getIdentifier());
+        }
+        return MongoPublishers.drain(this.collection.deleteMany(Filters.in(ID_FIELD, ids)), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> update(final I id, final EntityUpdate<E> update) {
+        if (update.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return MongoPublishers.drain(
+                this.collection.updateOne(
+                        Filters.eq(ID_FIELD, id),
+                        MongoUpdates.encode(this.codec, this.factory, id, update),
+                        new UpdateOptions().upsert(true)),
+                this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAll(final Map<I, EntityUpdate<E>> updates) {
+        final List<WriteModel<BsonDocument>> writes = new ArrayList<>();
+        for (final var entry : updates.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                writes.add(new UpdateOneModel<>(
+                        Filters.eq(ID_FIELD, entry.getKey()),
+                        MongoUpdates.encode(this.codec, this.factory, entry.getKey(), entry.getValue()),
+                        new UpdateOptions().upsert(true)));
+            }
+        }
+        if (writes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return MongoPublishers.drain(this.collection.bulkWrite(writes), this.executor);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import fr.xpdustry.nucleus.common.database.model.Punishment;
+import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import fr.xpdustry.nucleus.common.database.model.PunishmentManager;
+import fr.xpdustry.nucleus.common.database.mongo.MongoPunishmentManager.MongoPunishmentCodec;
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+
+public final class MongoReactivePunishmentManager extends MongoReactiveEntityManager<Punishment, ObjectId>
+        implements PunishmentManager {
+
+    public MongoReactivePunishmentManager(final MongoCollection<BsonDocument> collection, final Executor executor) {
+        super(collection, executor, new MongoPunishmentCodec(), Punishment::new);
+    }
+
+    @Override
+    public CompletableFuture<List<Punishment>> findAllByTarget(final InetAddress target) {
+        return MongoPublishers.collect(
+                        this.collection.find(MongoPunishmentQueries.byTarget(target)), this.executor)
+                .thenApply(documents -> documents.stream().map(this.codec::decode).toList());
+    }
+
+    @Override
+    public CompletableFuture<List<Punishment>> findActiveByTargets(final Collection<InetAddress> targets) {
+        if (targets.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return MongoPublishers.collect(
+                        this.collection.find(MongoPunishmentQueries.activeByTargets(targets)), this.executor)
+                .thenApply(documents -> documents.stream().map(this.codec::decode).toList());
+    }
+
+    @Override
+    public CompletableFuture<Long> countByTargetAndKind(final InetAddress target, final Kind kind) {
+        return MongoPublishers.first(
+                        this.collection.countDocuments(MongoPunishmentQueries.byTargetAndKind(target, kind)),
+                        this.executor)
+                .thenApply(count -> count.orElse(0L));
+    }
+
+    /**
+     * Creates the indexes backing the target queries, after filling the expiration of the documents predating it.
+     */
+    public CompletableFuture<Void> createIndexes() {
+        return MongoPublishers.drain(
+                        this.collection.updateMany(
+                                MongoPunishmentQueries.missingExpiration(),
+                                MongoPunishmentQueries.expirationBackfill()),
+                        this.executor)
+                .thenCompose(empty -> MongoPublishers.drain(
+                        this.collection.createIndexes(MongoPunishmentQueries.INDEXES), this.executor));
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import fr.xpdustry.nucleus.common.database.model.User;
+import fr.xpdustry.nucleus.common.database.model.UserManager;
+import java.util.concurrent.Executor;
+import org.bson.BsonDocument;
+
+public final class MongoReactiveUserManager extends MongoReactiveEntityManager<User, String> implements UserManager {
+
+    public MongoReactiveUserManager(final MongoCollection<BsonDocument> collection, final Executor executor) {
+        super(collection, executor, new MongoUserManager.MongoUserCodec(), User::new);
+    }
+}
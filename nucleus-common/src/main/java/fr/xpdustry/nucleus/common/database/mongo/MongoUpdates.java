@@ -0,0 +1,102 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.mongo;
+
+import fr.xpdustry.nucleus.common.database.Entity;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Function;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+final class MongoUpdates {
+
+    private MongoUpdates() {}
+
+    /**
+     * Compiles a partial update to the update operators of MongoDB.
+     */
+    static <E extends Entity<I>, I> BsonDocument encode(
+            final MongoEntityCodec<E> codec, final Function<I, E> factory, final I id, final EntityUpdate<E> update) {
+        final var result = new BsonDocument();
+        // The untouched fields get their default value if the entity is created
+        final var defaults = codec.encode(factory.apply(id));
+        defaults.remove(MongoEntityManager.ID_FIELD);
+        for (final var operation : update.getOperations()) {
+            final var name = operation.field().getName();
+            defaults.remove(name);
+            final var value = encodeValue(operation.value());
+            switch (operation.type()) {
+                case SET -> getOperator(result, "$set").append(name, value);
+                case INCREMENT -> getOperator(result, "$inc").append(name, value);
+                case MAX -> getOperator(result, "$max").append(name, value);
+                case ADD_TO_SET -> getOperator(result, "$addToSet").append(name, new BsonDocument("$each", value));
+            }
+        }
+        if (!defaults.isEmpty()) {
+            result.append("$setOnInsert", defaults);
+        }
+        return result;
+    }
+
+    private static BsonDocument getOperator(final BsonDocument update, final String operator) {
+        if (!update.containsKey(operator)) {
+            update.append(operator, new BsonDocument());
+        }
+        return update.getDocument(operator);
+    }
+
+    /**
+     * Encodes a field value the same way the codecs do, durations are stored in seconds and addresses as strings.
+     */
+    static BsonValue encodeValue(final @Nullable Object value) {
+        if (value == null) {
+            return BsonNull.VALUE;
+        } else if (value instanceof Integer integer) {
+            return new BsonInt32(integer);
+        } else if (value instanceof Long number) {
+            return new BsonInt64(number);
+        } else if (value instanceof Boolean bool) {
+            return new BsonBoolean(bool);
+        } else if (value instanceof String string) {
+            return new BsonString(string);
+        } else if (value instanceof Duration duration) {
+            return new BsonInt64(duration.toSeconds());
+        } else if (value instanceof Instant instant) {
+            return new BsonDateTime(instant.toEpochMilli());
+        } else if (value instanceof InetAddress address) {
+            return new BsonString(address.getHostAddress());
+        } else if (value instanceof Enum<?> constant) {
+            return new BsonString(constant.name());
+        } else if (value instanceof Collection<?> collection) {
+            return new BsonArray(collection.stream().map(MongoUpdates::encodeValue).toList());
+        }
+        throw new IllegalArgumentException("Unsupported field value: " + value);
+    }
+}
@@ -36,7 +36,7 @@ import org.bson.BsonValue;
 public final class MongoUserManager extends MongoEntityManager<User, String> implements UserManager {
 
     public MongoUserManager(final MongoCollection<BsonDocument> collection, final Executor executor) {
-        super(collection, executor, new MongoUserCodec());
+        super(collection, executor, new MongoUserCodec(), User::new);
     }
 
     @Override
@@ -44,7 +44,7 @@ public final class MongoUserManager extends MongoEntityManager<User, String> imp
         return findById(id).thenApply(result -> result.orElseGet(() -> new User(id)));
     }
 
-    private static final class MongoUserCodec implements MongoEntityCodec<User> {
+    public static final class MongoUserCodec implements MongoEntityCodec<User> {
 
         @Override
         public BsonDocument encode(final User entity) {
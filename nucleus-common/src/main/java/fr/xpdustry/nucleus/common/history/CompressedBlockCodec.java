@@ -0,0 +1,198 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.history;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes and reads deflated blocks of varints, used by the cold tier of the history. The signed values are
+ * zigzag-encoded first, so the small negative deltas stay small. The varint encoding is shared with the
+ * {@link HistoryBatchCodec}.
+ */
+public final class CompressedBlockCodec {
+
+    private CompressedBlockCodec() {}
+
+    public static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static <X extends Exception> void writeVarLong(final ByteSink<X> sink, final long value) throws X {
+        var remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            sink.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        sink.write((int) remaining);
+    }
+
+    /**
+     * Reads a varint written by {@link #writeVarLong(ByteSink, long)}.
+     *
+     * @throws IllegalStateException if the varint is longer than the 10 bytes of a long
+     */
+    static <X extends Exception> long readVarLong(final ByteSource<X> source) throws X {
+        var result = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final var current = source.read();
+            result |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint, longer than a long");
+    }
+
+    @FunctionalInterface
+    interface ByteSink<X extends Exception> {
+
+        void write(final int value) throws X;
+    }
+
+    @FunctionalInterface
+    interface ByteSource<X extends Exception> {
+
+        int read() throws X;
+    }
+
+    /**
+     * A reusable block writer, it is not thread-safe.
+     */
+    public static final class Encoder {
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[4096];
+        private final ByteSink<RuntimeException> sink = this.encoded::write;
+
+        public void writeByte(final int value) {
+            this.encoded.write(value);
+        }
+
+        public void writeVarInt(final int value) {
+            this.writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        public void writeVarLong(final long value) {
+            CompressedBlockCodec.writeVarLong(this.sink, value);
+        }
+
+        public void writeSignedVarInt(final int value) {
+            this.writeVarInt(zigzag(value));
+        }
+
+        public void writeSignedVarLong(final long value) {
+            this.writeVarLong(zigzag(value));
+        }
+
+        /**
+         * Deflates the written values into a block, then resets the encoder for the next one.
+         */
+        public byte[] finish() {
+            this.deflater.reset();
+            this.deflater.setInput(this.encoded.toByteArray());
+            this.deflater.finish();
+            final var compressed = new ByteArrayOutputStream(Math.max(this.encoded.size() / 2, 16));
+            while (!this.deflater.finished()) {
+                compressed.write(this.buffer, 0, this.deflater.deflate(this.buffer));
+            }
+            this.encoded.reset();
+            return compressed.toByteArray();
+        }
+    }
+
+    public static final class Decoder {
+
+        private final byte[] bytes;
+        private final ByteSource<RuntimeException> source = this::readByte;
+        private int position = 0;
+
+        private Decoder(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Inflates a block written by an {@link Encoder}, the inflater is reset before use.
+         *
+         * @throws IllegalStateException if the block is truncated or corrupted
+         */
+        public static Decoder inflate(final byte[] block, final Inflater inflater) {
+            inflater.reset();
+            inflater.setInput(block);
+            final var output = new ByteArrayOutputStream(block.length * 4);
+            final var buffer = new byte[4096];
+            try {
+                while (!inflater.finished()) {
+                    final var length = inflater.inflate(buffer);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IllegalStateException("Truncated compressed block");
+                    }
+                    output.write(buffer, 0, length);
+                }
+            } catch (final DataFormatException exception) {
+                throw new IllegalStateException("Corrupted compressed block", exception);
+            }
+            return new Decoder(output.toByteArray());
+        }
+
+        public byte readByte() {
+            if (this.position >= this.bytes.length) {
+                throw new IllegalStateException("End of the compressed block reached");
+            }
+            return this.bytes[this.position++];
+        }
+
+        public int readVarInt() {
+            return (int) this.readVarLong();
+        }
+
+        /**
+         * @throws IllegalStateException if the end of the block is reached or if the varint is malformed
+         */
+        public long readVarLong() {
+            return CompressedBlockCodec.readVarLong(this.source);
+        }
+
+        public int readSignedVarInt() {
+            return unzigzag(this.readVarInt());
+        }
+
+        public long readSignedVarLong() {
+            return unzigzag(this.readVarLong());
+        }
+
+        public boolean hasRemaining() {
+            return this.position < this.bytes.length;
+        }
+    }
+}
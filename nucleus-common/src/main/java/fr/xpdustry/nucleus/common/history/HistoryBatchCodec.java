@@ -0,0 +1,126 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes replicated history entries into a compact payload. The uuids and block names are written once in a
+ * dictionary, the coordinates as varints and the timestamps as deltas, the whole thing is then deflated.
+ */
+public final class HistoryBatchCodec {
+
+    private static final int VERSION = 1;
+    private static final ReplicatedHistoryEntry.Type[] TYPES = ReplicatedHistoryEntry.Type.values();
+
+    private HistoryBatchCodec() {}
+
+    public static String encode(final List<ReplicatedHistoryEntry> entries) {
+        final var dictionary = new HashMap<String, Integer>();
+        final var words = new ArrayList<String>();
+        for (final var entry : entries) {
+            index(dictionary, words, entry.getUuid());
+            index(dictionary, words, entry.getBlock());
+        }
+
+        final var bytes = new ByteArrayOutputStream();
+        try (final var output =
+                new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED), true))) {
+            output.writeByte(VERSION);
+            writeVarInt(output, words.size());
+            for (final var word : words) {
+                output.writeUTF(word);
+            }
+            writeVarInt(output, entries.size());
+            var previous = 0L;
+            for (final var entry : entries) {
+                writeVarInt(output, dictionary.get(entry.getUuid()));
+                writeVarInt(output, dictionary.get(entry.getBlock()));
+                output.writeByte(entry.getType().ordinal());
+                writeVarInt(output, entry.getX());
+                writeVarInt(output, entry.getY());
+                final var timestamp = entry.getTimestamp().toEpochMilli();
+                CompressedBlockCodec.writeVarLong(output::writeByte, CompressedBlockCodec.zigzag(timestamp - previous));
+                previous = timestamp;
+            }
+        } catch (final IOException exception) {
+            throw new IllegalStateException("Failed to encode the history batch", exception);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    public static List<ReplicatedHistoryEntry> decode(final String serverIdentifier, final String payload) {
+        final var bytes = Base64.getDecoder().decode(payload);
+        try (final var input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+            final var version = input.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported history batch version " + version);
+            }
+            final var words = new String[readVarInt(input)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readUTF();
+            }
+            final var count = readVarInt(input);
+            final var entries = new ArrayList<ReplicatedHistoryEntry>(count);
+            var previous = 0L;
+            for (int i = 0; i < count; i++) {
+                final var uuid = words[readVarInt(input)];
+                final var block = words[readVarInt(input)];
+                final var type = TYPES[input.readUnsignedByte()];
+                final var x = readVarInt(input);
+                final var y = readVarInt(input);
+                previous += CompressedBlockCodec.unzigzag(CompressedBlockCodec.readVarLong(input::readUnsignedByte));
+                entries.add(ReplicatedHistoryEntry.of(
+                        serverIdentifier, uuid, type, block, x, y, Instant.ofEpochMilli(previous)));
+            }
+            return entries;
+        } catch (final IOException | ArrayIndexOutOfBoundsException | IllegalStateException exception) {
+            throw new IllegalArgumentException("Malformed history batch", exception);
+        }
+    }
+
+    private static void index(final Map<String, Integer> dictionary, final List<String> words, final String word) {
+        if (!dictionary.containsKey(word)) {
+            dictionary.put(word, words.size());
+            words.add(word);
+        }
+    }
+
+    private static void writeVarInt(final DataOutput output, final int value) throws IOException {
+        CompressedBlockCodec.writeVarLong(output::writeByte, value & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(final DataInput input) throws IOException {
+        return (int) CompressedBlockCodec.readVarLong(input::readUnsignedByte);
+    }
+}
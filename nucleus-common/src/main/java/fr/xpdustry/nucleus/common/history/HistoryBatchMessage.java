@@ -0,0 +1,40 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.history;
+
+import fr.xpdustry.nucleus.common.annotation.ImmutableNucleusStyle;
+import fr.xpdustry.nucleus.common.message.Message;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * A batch of history entries replicated by a server, the entries are encoded with {@link HistoryBatchCodec}.
+ */
+@Immutable(copy = false, builder = false)
+@ImmutableNucleusStyle
+public sealed interface HistoryBatchMessage extends Message permits ImmutableHistoryBatchMessage {
+
+    static HistoryBatchMessage of(final String serverIdentifier, final int count, final String payload) {
+        return ImmutableHistoryBatchMessage.of(serverIdentifier, count, payload);
+    }
+
+    String getServerIdentifier();
+
+    int getCount();
+
+    String getPayload();
+}
@@ -0,0 +1,268 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import com.google.common.net.InetAddresses;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of IPv4 and IPv6 address ranges, stored as sorted and merged intervals in primitive arrays. The
+ * lookups are binary searches that do not allocate.
+ */
+public final class AddressRangeSet {
+
+    private static final AddressRangeSet EMPTY = new AddressRangeSet(
+            new int[0], new int[0], new long[0], new long[0], new long[0], new long[0]);
+
+    private final int[] ipv4Starts;
+    private final int[] ipv4Ends;
+    private final long[] ipv6StartsHigh;
+    private final long[] ipv6StartsLow;
+    private final long[] ipv6EndsHigh;
+    private final long[] ipv6EndsLow;
+
+    private AddressRangeSet(
+            final int[] ipv4Starts,
+            final int[] ipv4Ends,
+            final long[] ipv6StartsHigh,
+            final long[] ipv6StartsLow,
+            final long[] ipv6EndsHigh,
+            final long[] ipv6EndsLow) {
+        this.ipv4Starts = ipv4Starts;
+        this.ipv4Ends = ipv4Ends;
+        this.ipv6StartsHigh = ipv6StartsHigh;
+        this.ipv6StartsLow = ipv6StartsLow;
+        this.ipv6EndsHigh = ipv6EndsHigh;
+        this.ipv6EndsLow = ipv6EndsLow;
+    }
+
+    public static AddressRangeSet empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean contains(final String address) {
+        return this.contains(InetAddresses.forString(address));
+    }
+
+    public boolean contains(final InetAddress address) {
+        final var bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return this.containsIpv4(readInt(bytes, 0));
+        }
+        return this.containsIpv6(readLong(bytes, 0), readLong(bytes, 8));
+    }
+
+    public boolean containsIpv4(final int address) {
+        var low = 0;
+        var high = this.ipv4Starts.length - 1;
+        var found = -1;
+        while (low <= high) {
+            final var middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(this.ipv4Starts[middle], address) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found != -1 && Integer.compareUnsigned(address, this.ipv4Ends[found]) <= 0;
+    }
+
+    public boolean containsIpv6(final long addressHigh, final long addressLow) {
+        var low = 0;
+        var high = this.ipv6StartsHigh.length - 1;
+        var found = -1;
+        while (low <= high) {
+            final var middle = (low + high) >>> 1;
+            if (compare(this.ipv6StartsHigh[middle], this.ipv6StartsLow[middle], addressHigh, addressLow) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found != -1
+                && compare(addressHigh, addressLow, this.ipv6EndsHigh[found], this.ipv6EndsLow[found]) <= 0;
+    }
+
+    /**
+     * Returns the number of disjoint ranges in this set, after merging.
+     */
+    public int size() {
+        return this.ipv4Starts.length + this.ipv6StartsHigh.length;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    private static int compare(final long aHigh, final long aLow, final long bHigh, final long bLow) {
+        final var result = Long.compareUnsigned(aHigh, bHigh);
+        return result != 0 ? result : Long.compareUnsigned(aLow, bLow);
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xFF) << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(final byte[] bytes, final int offset) {
+        return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    public static final class Builder {
+
+        // Unsigned start in the high half, unsigned end in the low half, the sign bit is flipped to sort them
+        private long[] ipv4 = new long[64];
+        private int ipv4Size = 0;
+        private final List<Ipv6Range> ipv6 = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Adds a range in the CIDR notation, such as {@code 192.168.0.0/16}, a lone address is also accepted.
+         *
+         * @throws IllegalArgumentException if the range is malformed
+         */
+        public Builder add(final String cidr) {
+            final var slash = cidr.indexOf('/');
+            final var address = InetAddresses.forString(slash == -1 ? cidr : cidr.substring(0, slash));
+            final var bits = address instanceof Inet4Address ? 32 : 128;
+            final int prefix;
+            try {
+                prefix = slash == -1 ? bits : Integer.parseInt(cidr.substring(slash + 1));
+            } catch (final NumberFormatException exception) {
+                throw new IllegalArgumentException("Invalid prefix length in " + cidr, exception);
+            }
+            return this.add(address, prefix);
+        }
+
+        public Builder add(final InetAddress address, final int prefix) {
+            final var bytes = address.getAddress();
+            if (address instanceof Inet4Address) {
+                if (prefix < 0 || prefix > 32) {
+                    throw new IllegalArgumentException("Invalid IPv4 prefix length " + prefix);
+                }
+                final var mask = prefix == 0 ? 0 : -1 << (32 - prefix);
+                final var start = readInt(bytes, 0) & mask;
+                return this.addIpv4(start, start | ~mask);
+            }
+
+            if (prefix < 0 || prefix > 128) {
+                throw new IllegalArgumentException("Invalid IPv6 prefix length " + prefix);
+            }
+            final var highMask = prefix == 0 ? 0L : prefix >= 64 ? -1L : -1L << (64 - prefix);
+            final var lowMask = prefix <= 64 ? 0L : prefix == 128 ? -1L : -1L << (128 - prefix);
+            final var high = readLong(bytes, 0) & highMask;
+            final var low = readLong(bytes, 8) & lowMask;
+            this.ipv6.add(new Ipv6Range(high, low, high | ~highMask, low | ~lowMask));
+            return this;
+        }
+
+        public Builder addIpv4(final int start, final int end) {
+            if (Integer.compareUnsigned(start, end) > 0) {
+                throw new IllegalArgumentException("The start of the range is after its end.");
+            }
+            if (this.ipv4Size == this.ipv4.length) {
+                this.ipv4 = Arrays.copyOf(this.ipv4, this.ipv4.length * 2);
+            }
+            this.ipv4[this.ipv4Size++] = (((long) start << 32) | (end & 0xFFFFFFFFL)) ^ Long.MIN_VALUE;
+            return this;
+        }
+
+        public AddressRangeSet build() {
+            final var sorted = Arrays.copyOf(this.ipv4, this.ipv4Size);
+            Arrays.sort(sorted);
+            final var ipv4Starts = new int[sorted.length];
+            final var ipv4Ends = new int[sorted.length];
+            var ipv4Count = 0;
+            for (final var entry : sorted) {
+                final var start = (int) ((entry ^ Long.MIN_VALUE) >>> 32);
+                final var end = (int) entry;
+                if (ipv4Count > 0
+                        && (ipv4Ends[ipv4Count - 1] == -1
+                                || Integer.compareUnsigned(start, ipv4Ends[ipv4Count - 1] + 1) <= 0)) {
+                    if (Integer.compareUnsigned(end, ipv4Ends[ipv4Count - 1]) > 0) {
+                        ipv4Ends[ipv4Count - 1] = end;
+                    }
+                } else {
+                    ipv4Starts[ipv4Count] = start;
+                    ipv4Ends[ipv4Count] = end;
+                    ipv4Count++;
+                }
+            }
+
+            this.ipv6.sort((a, b) -> compare(a.startHigh(), a.startLow(), b.startHigh(), b.startLow()));
+            final var merged = new ArrayList<Ipv6Range>(this.ipv6.size());
+            for (final var range : this.ipv6) {
+                final var last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && isAdjacentOrOverlapping(last, range)) {
+                    if (compare(range.endHigh(), range.endLow(), last.endHigh(), last.endLow()) > 0) {
+                        merged.set(
+                                merged.size() - 1,
+                                new Ipv6Range(last.startHigh(), last.startLow(), range.endHigh(), range.endLow()));
+                    }
+                } else {
+                    merged.add(range);
+                }
+            }
+
+            final var ipv6StartsHigh = new long[merged.size()];
+            final var ipv6StartsLow = new long[merged.size()];
+            final var ipv6EndsHigh = new long[merged.size()];
+            final var ipv6EndsLow = new long[merged.size()];
+            for (int i = 0; i < merged.size(); i++) {
+                final var range = merged.get(i);
+                ipv6StartsHigh[i] = range.startHigh();
+                ipv6StartsLow[i] = range.startLow();
+                ipv6EndsHigh[i] = range.endHigh();
+                ipv6EndsLow[i] = range.endLow();
+            }
+
+            return new AddressRangeSet(
+                    Arrays.copyOf(ipv4Starts, ipv4Count),
+                    Arrays.copyOf(ipv4Ends, ipv4Count),
+                    ipv6StartsHigh,
+                    ipv6StartsLow,
+                    ipv6EndsHigh,
+                    ipv6EndsLow);
+        }
+
+        private static boolean isAdjacentOrOverlapping(final Ipv6Range previous, final Ipv6Range next) {
+            if (previous.endHigh() == -1L && previous.endLow() == -1L) {
+                return true;
+            }
+            // The end of the previous range plus one, with the carry
+            final var low = previous.endLow() + 1;
+            final var high = low == 0L ? previous.endHigh() + 1 : previous.endHigh();
+            return compare(next.startHigh(), next.startLow(), high, low) <= 0;
+        }
+    }
+
+    private record Ipv6Range(long startHigh, long startLow, long endHigh, long endLow) {}
+}
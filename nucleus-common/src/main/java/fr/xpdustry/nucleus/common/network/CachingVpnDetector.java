@@ -0,0 +1,159 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the verdicts of another detector, with separate lifetimes for the positive and negative verdicts. Concurrent
+ * lookups of the same address share the same request, and the failed lookups are not cached. The verdicts can be
+ * persisted in a file to survive restarts.
+ */
+public final class CachingVpnDetector implements VpnDetector, NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingVpnDetector.class);
+
+    private final VpnDetector detector;
+    private final Duration positiveTtl;
+    private final Duration negativeTtl;
+    private final @Nullable Path store;
+    private final AsyncCache<String, Verdict> verdicts;
+
+    public CachingVpnDetector(
+            final VpnDetector detector,
+            final Duration positiveTtl,
+            final Duration negativeTtl,
+            final long maximumSize,
+            final @Nullable Path store) {
+        this.detector = detector;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.store = store;
+        this.verdicts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new VerdictExpiry())
+                .buildAsync();
+    }
+
+    @Override
+    public void onNucleusInit() {
+        if (this.store == null || Files.notExists(this.store)) {
+            return;
+        }
+        final var now = System.currentTimeMillis();
+        var count = 0;
+        try (final var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.store)))) {
+            final var size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                final var address = input.readUTF();
+                final var verdict = new Verdict(input.readBoolean(), input.readLong());
+                if (verdict.expiration() > now) {
+                    this.verdicts.put(address, CompletableFuture.completedFuture(verdict));
+                    count++;
+                }
+            }
+            logger.debug("Loaded {} VPN verdicts from {}", count, this.store);
+        } catch (final IOException exception) {
+            logger.error("Failed to load the VPN verdicts from {}", this.store, exception);
+        }
+    }
+
+    @Override
+    public void onNucleusExit() {
+        if (this.store == null) {
+            return;
+        }
+        final List<Map.Entry<String, Verdict>> entries = new ArrayList<>();
+        for (final var entry : this.verdicts.asMap().entrySet()) {
+            final var verdict = entry.getValue().getNow(null);
+            if (verdict != null) {
+                entries.add(Map.entry(entry.getKey(), verdict));
+            }
+        }
+        try {
+            Files.createDirectories(this.store.getParent());
+            final var temporary = this.store.resolveSibling(this.store.getFileName() + ".tmp");
+            try (final var output =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(entries.size());
+                for (final var entry : entries) {
+                    output.writeUTF(entry.getKey());
+                    output.writeBoolean(entry.getValue().vpn());
+                    output.writeLong(entry.getValue().expiration());
+                }
+            }
+            Files.move(temporary, this.store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException exception) {
+            logger.error("Failed to save the VPN verdicts in {}", this.store, exception);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isVpn(final String address) {
+        return this.verdicts
+                .get(address, (key, executor) -> this.detector
+                        .isVpn(key)
+                        .thenApply(vpn -> new Verdict(
+                                vpn,
+                                System.currentTimeMillis()
+                                        + (vpn ? this.positiveTtl : this.negativeTtl).toMillis())))
+                .thenApply(Verdict::vpn);
+    }
+
+    private record Verdict(boolean vpn, long expiration) {}
+
+    private static final class VerdictExpiry implements Expiry<String, Verdict> {
+
+        @Override
+        public long expireAfterCreate(final String key, final Verdict value, final long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, value.expiration() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                final String key, final Verdict value, final long currentTime, final long currentDuration) {
+            return this.expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                final String key, final Verdict value, final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
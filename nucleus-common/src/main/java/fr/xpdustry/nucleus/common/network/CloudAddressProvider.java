@@ -0,0 +1,51 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A source of cloud address ranges, such as a cloud provider publishing the addresses of its machines.
+ */
+public interface CloudAddressProvider {
+
+    String getProviderName();
+
+    /**
+     * Fetches the address ranges of this provider, in the CIDR notation.
+     *
+     * @param previous the metadata of the last successful fetch
+     * @return the ranges, or an empty optional if they did not change since the last fetch
+     */
+    Optional<Result> fetch(final Metadata previous) throws IOException, InterruptedException;
+
+    /**
+     * The validators of a fetch, such as the {@code ETag} and {@code Last-Modified} headers of an HTTP response.
+     */
+    record Metadata(@Nullable String etag, @Nullable String lastModified) {
+
+        public static Metadata none() {
+            return new Metadata(null, null);
+        }
+    }
+
+    record Result(Collection<String> ranges, Metadata metadata) {}
+}
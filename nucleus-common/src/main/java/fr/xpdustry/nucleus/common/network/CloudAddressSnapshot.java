@@ -0,0 +1,136 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import com.google.common.net.InetAddresses;
+import fr.xpdustry.nucleus.common.network.CloudAddressProvider.Metadata;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The binary snapshot of the cloud address ranges, with the fetch metadata of each provider.
+ */
+public final class CloudAddressSnapshot {
+
+    private static final int MAGIC = 0x4E434153;
+    private static final int VERSION = 1;
+
+    private CloudAddressSnapshot() {}
+
+    public static Map<String, Entry> read(final Path file) throws IOException {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        if (Files.notExists(file)) {
+            return entries;
+        }
+        try (final var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+                throw new IOException("Unsupported cloud address snapshot " + file);
+            }
+            final var providers = input.readInt();
+            for (int i = 0; i < providers; i++) {
+                final var name = input.readUTF();
+                final var metadata = new Metadata(readNullableUTF(input), readNullableUTF(input));
+                final var count = input.readInt();
+                final List<Cidr> ranges = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    final var address = new byte[input.readUnsignedByte()];
+                    input.readFully(address);
+                    ranges.add(new Cidr(address, input.readUnsignedByte()));
+                }
+                entries.put(name, new Entry(metadata, ranges));
+            }
+        }
+        return entries;
+    }
+
+    public static void write(final Path file, final Map<String, Entry> entries) throws IOException {
+        Files.createDirectories(file.getParent());
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(entries.size());
+            for (final var entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                writeNullableUTF(output, entry.getValue().metadata().etag());
+                writeNullableUTF(output, entry.getValue().metadata().lastModified());
+                output.writeInt(entry.getValue().ranges().size());
+                for (final var range : entry.getValue().ranges()) {
+                    output.writeByte(range.address().length);
+                    output.write(range.address());
+                    output.writeByte(range.prefix());
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static @Nullable String readNullableUTF(final DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(final DataOutputStream output, final @Nullable String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    public record Entry(Metadata metadata, List<Cidr> ranges) {}
+
+    public record Cidr(byte[] address, int prefix) {
+
+        public static Optional<Cidr> parse(final String cidr) {
+            final var slash = cidr.indexOf('/');
+            try {
+                final var address = InetAddresses.forString(slash == -1 ? cidr : cidr.substring(0, slash));
+                final var bits = address instanceof Inet4Address ? 32 : 128;
+                final var prefix = slash == -1 ? bits : Integer.parseInt(cidr.substring(slash + 1));
+                return prefix < 0 || prefix > bits
+                        ? Optional.empty()
+                        : Optional.of(new Cidr(address.getAddress(), prefix));
+            } catch (final IllegalArgumentException exception) {
+                return Optional.empty();
+            }
+        }
+
+        public InetAddress toInetAddress() {
+            try {
+                return InetAddress.getByAddress(this.address);
+            } catch (final UnknownHostException exception) {
+                throw new IllegalStateException(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Reads the address ranges from a local file, one range per line, the lines starting with {@code #} are ignored.
+ */
+public final class FileCloudAddressProvider implements CloudAddressProvider {
+
+    private final Path file;
+
+    public FileCloudAddressProvider(final Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getProviderName() {
+        return "File " + this.file.getFileName();
+    }
+
+    @Override
+    public Optional<Result> fetch(final Metadata previous) throws IOException {
+        final var lastModified = Files.getLastModifiedTime(this.file).toString();
+        if (Objects.equals(lastModified, previous.lastModified())) {
+            return Optional.empty();
+        }
+        final var ranges = Files.readAllLines(this.file, StandardCharsets.UTF_8).stream()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        return Optional.of(new Result(ranges, new Metadata(null, lastModified)));
+    }
+}
@@ -18,17 +18,55 @@
 package fr.xpdustry.nucleus.common.network;
 
 import fr.xpdustry.nucleus.common.web.ApiServiceException;
+import fr.xpdustry.nucleus.common.web.ApiServiceRateLimitException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+/**
+ * Spreads the lookups over several detectors in a round-robin fashion, falling back to the next one on failure.
+ * <p>
+ * Each detector keeps an EWMA of its latency and error rate. The slow or failing detectors are tried last, and a
+ * rate-limited detector is skipped until its cooldown expires. Optionally, a second detector is hedged when the first
+ * one does not answer within the hedge budget.
+ */
 public final class RollingVpnDetector implements VpnDetector {
 
-    private final List<VpnDetector> detectors;
+    private static final Duration DEFAULT_COOLDOWN = Duration.ofMinutes(1L);
+    private static final Duration DEFAULT_SLOW_THRESHOLD = Duration.ofSeconds(2L);
+    private static final Duration MAX_COOLDOWN = Duration.ofHours(1L);
+    private static final double ALPHA = 0.2D;
+    private static final int MIN_SAMPLES = 5;
+    private static final double MAX_ERROR_RATE = 0.5D;
+
+    private final List<Route> routes;
     private final AtomicInteger initial = new AtomicInteger(-1);
+    private final LongAdder hedges = new LongAdder();
+    private final Duration cooldown;
+    private final Duration slowThreshold;
+    private final @Nullable Duration hedgeBudget;
+
+    public RollingVpnDetector(
+            final List<VpnDetector> detectors,
+            final Duration cooldown,
+            final Duration slowThreshold,
+            final @Nullable Duration hedgeBudget) {
+        this.routes = detectors.stream().map(Route::new).toList();
+        this.cooldown = cooldown;
+        this.slowThreshold = slowThreshold;
+        this.hedgeBudget = hedgeBudget;
+    }
 
     public RollingVpnDetector(final List<VpnDetector> detectors) {
-        this.detectors = List.copyOf(detectors);
+        this(detectors, DEFAULT_COOLDOWN, DEFAULT_SLOW_THRESHOLD, null);
     }
 
     public RollingVpnDetector(final VpnDetector... detectors) {
@@ -37,30 +75,201 @@ public final class RollingVpnDetector implements VpnDetector {
 
     @Override
     public CompletableFuture<Boolean> isVpn(final String address) {
-        if (this.detectors.size() == 0) {
+        if (this.routes.size() == 0) {
             return CompletableFuture.failedFuture(new ApiServiceException("No VPN detectors available."));
-        } else if (this.detectors.size() == 1) {
-            return this.detectors.get(0).isVpn(address);
+        } else if (this.routes.size() == 1) {
+            return this.routes.get(0).detector.isVpn(address);
+        }
+
+        final var order = this.getOrder();
+        if (order.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                    new ApiServiceRateLimitException("All VPN detectors are cooling down."));
         }
-        return tryNext(this.initial.get(), 0, address);
+        if (this.hedgeBudget == null || order.size() == 1) {
+            return this.tryNext(order, 0, address);
+        }
+        return this.tryHedged(order, address, this.hedgeBudget);
+    }
+
+    public List<Statistics> getStatistics() {
+        final var now = System.nanoTime();
+        return this.routes.stream().map(route -> route.getStatistics(now)).toList();
     }
 
-    private CompletableFuture<Boolean> tryNext(final int index, final int tries, final String address) {
-        // Ugly hack, I hate it
-        if (tries == this.detectors.size()) {
+    public long getHedgeCount() {
+        return this.hedges.sum();
+    }
+
+    /**
+     * Returns the routes in round-robin order, the unhealthy ones last and the cooling down ones excluded.
+     */
+    private List<Route> getOrder() {
+        final var now = System.nanoTime();
+        final var start = this.initial.get() + 1;
+        final List<Route> order = new ArrayList<>(this.routes.size());
+        for (int i = 0; i < this.routes.size(); i++) {
+            final var route = this.routes.get(Math.floorMod(start + i, this.routes.size()));
+            if (!route.isCoolingDown(now)) {
+                order.add(route);
+            }
+        }
+        // The sort is stable, so the round-robin order holds among detectors of the same health
+        order.sort(Comparator.comparingInt(route -> route.getPenalty(this.slowThreshold)));
+        return order;
+    }
+
+    private CompletableFuture<Boolean> tryNext(final List<Route> order, final int index, final String address) {
+        if (index == order.size()) {
             return CompletableFuture.failedFuture(new ApiServiceException("All VPN detectors have errored."));
         }
-        final var next = (index + 1) % this.detectors.size();
-        return this.detectors
-                .get(next)
-                .isVpn(address)
-                .handle((result, throwable) -> {
+        final var route = order.get(index);
+        return this.call(route, address)
+                .handle((result, throwable) -> throwable == null
+                        ? CompletableFuture.completedFuture(result)
+                        : this.tryNext(order, index + 1, address))
+                .thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Boolean> tryHedged(final List<Route> order, final String address, final Duration budget) {
+        final var result = new CompletableFuture<Boolean>();
+        final var failures = new AtomicInteger(0);
+        final var hedged = new AtomicBoolean(false);
+
+        final Runnable fallback = () -> {
+            if (hedged.compareAndSet(false, true)) {
+                this.tryNext(order, 1, address).whenComplete((value, throwable) -> {
                     if (throwable == null) {
-                        this.initial.set(next);
-                        return CompletableFuture.completedFuture(result);
+                        result.complete(value);
+                    } else if (failures.incrementAndGet() == 2) {
+                        result.completeExceptionally(unwrap(throwable));
                     }
-                    return tryNext(next, tries + 1, address);
-                })
-                .thenCompose(future -> future);
+                });
+            }
+        };
+
+        this.call(order.get(0), address).whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(unwrap(throwable));
+            } else {
+                fallback.run();
+            }
+        });
+
+        CompletableFuture.delayedExecutor(budget.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            if (!result.isDone() && !hedged.get()) {
+                this.hedges.increment();
+                fallback.run();
+            }
+        });
+
+        return result;
+    }
+
+    private CompletableFuture<Boolean> call(final Route route, final String address) {
+        final var start = System.nanoTime();
+        final CompletableFuture<Boolean> future;
+        try {
+            future = route.detector.isVpn(address);
+        } catch (final Exception exception) {
+            route.onFailure(System.nanoTime(), start, exception, this.cooldown);
+            return CompletableFuture.failedFuture(exception);
+        }
+        return future.whenComplete((result, throwable) -> {
+            final var now = System.nanoTime();
+            if (throwable == null) {
+                route.onSuccess(now, start);
+                this.initial.set(this.routes.indexOf(route));
+            } else {
+                route.onFailure(now, start, unwrap(throwable), this.cooldown);
+            }
+        });
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    public record Statistics(
+            String detector,
+            long calls,
+            long failures,
+            long rateLimits,
+            Duration averageLatency,
+            double errorRate,
+            boolean coolingDown) {}
+
+    private static final class Route {
+
+        private final VpnDetector detector;
+        private long calls = 0L;
+        private long failures = 0L;
+        private long rateLimits = 0L;
+        private int consecutiveRateLimits = 0;
+        private double latency = 0D;
+        private double errorRate = 0D;
+        private long cooldownEnd = Long.MIN_VALUE;
+
+        private Route(final VpnDetector detector) {
+            this.detector = detector;
+        }
+
+        private synchronized void onSuccess(final long now, final long start) {
+            this.record(now - start, 0D);
+            this.consecutiveRateLimits = 0;
+        }
+
+        private synchronized void onFailure(
+                final long now, final long start, final Throwable throwable, final Duration cooldown) {
+            this.record(now - start, 1D);
+            this.failures++;
+            if (throwable instanceof ApiServiceRateLimitException) {
+                this.rateLimits++;
+                // Back off exponentially while the detector keeps being rate limited
+                final var shift = Math.min(this.consecutiveRateLimits++, 16);
+                final var duration = Math.min(cooldown.toNanos() << shift, MAX_COOLDOWN.toNanos());
+                this.cooldownEnd = now + duration;
+            }
+        }
+
+        private void record(final long latency, final double error) {
+            if (this.calls++ == 0) {
+                this.latency = latency;
+                this.errorRate = error;
+            } else {
+                this.latency += ALPHA * (latency - this.latency);
+                this.errorRate += ALPHA * (error - this.errorRate);
+            }
+        }
+
+        private synchronized boolean isCoolingDown(final long now) {
+            return this.cooldownEnd != Long.MIN_VALUE && now - this.cooldownEnd < 0;
+        }
+
+        private synchronized int getPenalty(final Duration slowThreshold) {
+            if (this.calls < MIN_SAMPLES) {
+                return 0;
+            } else if (this.errorRate > MAX_ERROR_RATE) {
+                return 2;
+            } else if (this.latency > slowThreshold.toNanos()) {
+                return 1;
+            }
+            return 0;
+        }
+
+        private synchronized Statistics getStatistics(final long now) {
+            return new Statistics(
+                    this.detector.getClass().getSimpleName(),
+                    this.calls,
+                    this.failures,
+                    this.rateLimits,
+                    Duration.ofNanos((long) this.latency),
+                    this.errorRate,
+                    this.isCoolingDown(now));
+        }
     }
 }
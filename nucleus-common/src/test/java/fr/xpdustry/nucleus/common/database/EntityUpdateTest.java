@@ -0,0 +1,63 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database;
+
+import fr.xpdustry.nucleus.common.database.model.User;
+import java.time.Duration;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class EntityUpdateTest {
+
+    @Test
+    void test_apply() {
+        final var user = new User("test").setTimesJoined(2).addName("a");
+        EntityUpdate.<User>create()
+                .set(User.LAST_NAME, "b")
+                .addToSet(User.NAMES, "b")
+                .increment(User.TIMES_JOINED, 1)
+                .increment(User.PLAY_TIME, Duration.ofMinutes(1L))
+                .apply(user);
+
+        Assertions.assertEquals("b", user.getLastName().orElseThrow());
+        Assertions.assertEquals(Set.of("a", "b"), user.getNames());
+        Assertions.assertEquals(3, user.getTimesJoined());
+        Assertions.assertEquals(Duration.ofMinutes(1L), user.getPlayTime());
+    }
+
+    @Test
+    void test_merge() {
+        final var update = EntityUpdate.<User>create()
+                .increment(User.GAMES_PLAYED, 1)
+                .addToSet(User.NAMES, "a")
+                .merge(EntityUpdate.<User>create()
+                        .increment(User.GAMES_PLAYED, 2)
+                        .addToSet(User.NAMES, "b"));
+
+        Assertions.assertEquals(2, update.getOperations().size());
+        Assertions.assertEquals(3, update.getOperations().get(0).value());
+        Assertions.assertEquals(Set.of("a", "b"), update.getOperations().get(1).value());
+    }
+
+    @Test
+    void test_conflict() {
+        final var update = EntityUpdate.<User>create().increment(User.TIMES_JOINED, 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> update.set(User.TIMES_JOINED, 4));
+    }
+}
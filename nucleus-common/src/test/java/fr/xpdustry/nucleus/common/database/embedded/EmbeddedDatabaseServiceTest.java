@@ -0,0 +1,130 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.database.embedded;
+
+import com.google.common.net.InetAddresses;
+import fr.xpdustry.nucleus.common.database.EntityField;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import fr.xpdustry.nucleus.common.database.model.Punishment;
+import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import fr.xpdustry.nucleus.common.database.model.User;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class EmbeddedDatabaseServiceTest {
+
+    private static final String TEST_UUID = "Jx8F3dXoSTSqYB9nZJl6Kw==";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_reopen() {
+        final var service = this.createService();
+        final var users = service.getUserManager();
+        users.save(new User(TEST_UUID).setLastName("test")).join();
+        users.update(TEST_UUID, EntityUpdate.<User>create().increment(User.TIMES_JOINED, 2)).join();
+        users.save(new User("other")).join();
+        users.deleteById("other").join();
+        service.onNucleusExit();
+
+        final var reopened = this.createService();
+        final var user = reopened.getUserManager().findById(TEST_UUID).join().orElseThrow();
+        Assertions.assertEquals("test", user.getLastName().orElseThrow());
+        Assertions.assertEquals(2, user.getTimesJoined());
+        Assertions.assertEquals(1L, reopened.getUserManager().count().join());
+        reopened.onNucleusExit();
+    }
+
+    @Test
+    void test_update_missing() {
+        final var service = this.createService();
+        service.getUserManager()
+                .update(TEST_UUID, EntityUpdate.<User>create().increment(User.GAMES_PLAYED, 1))
+                .join();
+        final var user = service.getUserManager().findById(TEST_UUID).join().orElseThrow();
+        Assertions.assertEquals(1, user.getGamesPlayed());
+        service.onNucleusExit();
+    }
+
+    @Test
+    void test_failed_batch() {
+        final var service = this.createService();
+        final var broken = EntityField.<User, Integer>of("broken", User::getTimesJoined, (user, value) -> {
+            throw new IllegalStateException("broken");
+        });
+        final Map<String, EntityUpdate<User>> updates = new LinkedHashMap<>();
+        updates.put(TEST_UUID, EntityUpdate.<User>create().increment(User.TIMES_JOINED, 1));
+        updates.put("other", EntityUpdate.<User>create().set(broken, 1));
+        Assertions.assertThrows(
+                CompletionException.class,
+                () -> service.getUserManager().updateAll(updates).join());
+        Assertions.assertEquals(0L, service.getUserManager().count().join());
+        service.onNucleusExit();
+
+        final var reopened = this.createService();
+        Assertions.assertEquals(0L, reopened.getUserManager().count().join());
+        reopened.onNucleusExit();
+    }
+
+    @Test
+    void test_punishment_index() {
+        final var service = this.createService();
+        final var punishments = service.getPunishmentManager();
+        final var address1 = InetAddresses.forString("78.5.47.96");
+        final var address2 = InetAddresses.forString("78.5.47.97");
+
+        final var ban = new Punishment(new ObjectId())
+                .setKind(Kind.BAN)
+                .setDuration(Duration.ofDays(1L))
+                .setTargets(List.of(address1, address2));
+        final var kick = new Punishment(new ObjectId())
+                .setKind(Kind.KICK)
+                .setDuration(Duration.ofHours(1L))
+                .setTargets(List.of(address1))
+                .setPardoned(true);
+        punishments.saveAll(List.of(ban, kick)).join();
+
+        Assertions.assertEquals(2, punishments.findAllByTarget(address1).join().size());
+        Assertions.assertEquals(1, punishments.findAllByTarget(address2).join().size());
+        Assertions.assertEquals(1L, punishments.countByTargetAndKind(address1, Kind.BAN).join());
+        Assertions.assertEquals(
+                List.of(ban.getIdentifier()),
+                punishments.findActiveByTargets(List.of(address1, address2)).join().stream()
+                        .map(Punishment::getIdentifier)
+                        .toList());
+
+        punishments.save(ban.setTargets(List.of(address1))).join();
+        Assertions.assertTrue(punishments.findAllByTarget(address2).join().isEmpty());
+        service.onNucleusExit();
+    }
+
+    private EmbeddedDatabaseService createService() {
+        final var service = new EmbeddedDatabaseService(this.directory, Runnable::run);
+        service.onNucleusInit();
+        return service;
+    }
+}
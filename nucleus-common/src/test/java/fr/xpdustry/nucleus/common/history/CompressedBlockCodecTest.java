@@ -0,0 +1,138 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.history;
+
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class CompressedBlockCodecTest {
+
+    @Test
+    void test_zigzag() {
+        Assertions.assertEquals(0, CompressedBlockCodec.zigzag(0));
+        Assertions.assertEquals(1, CompressedBlockCodec.zigzag(-1));
+        Assertions.assertEquals(2, CompressedBlockCodec.zigzag(1));
+        Assertions.assertEquals(3, CompressedBlockCodec.zigzag(-2));
+        for (final var value : new int[] {0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            Assertions.assertEquals(value, CompressedBlockCodec.unzigzag(CompressedBlockCodec.zigzag(value)));
+        }
+        for (final var value : new long[] {0L, 1L, -1L, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Assertions.assertEquals(value, CompressedBlockCodec.unzigzag(CompressedBlockCodec.zigzag(value)));
+        }
+    }
+
+    @Test
+    void test_round_trip() {
+        final var ints = new int[] {0, 1, -1, 127, 128, -129, 16_384, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        final var longs = new long[] {0L, -1L, 1_666_000_000_000L, -86_400_000L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+        final var encoder = new CompressedBlockCodec.Encoder();
+        encoder.writeByte(42);
+        for (final var value : ints) {
+            encoder.writeVarInt(value);
+            encoder.writeSignedVarInt(value);
+        }
+        for (final var value : longs) {
+            encoder.writeVarLong(value);
+            encoder.writeSignedVarLong(value);
+        }
+
+        final var decoder = CompressedBlockCodec.Decoder.inflate(encoder.finish(), new Inflater());
+        Assertions.assertEquals(42, decoder.readByte());
+        for (final var value : ints) {
+            Assertions.assertEquals(value, decoder.readVarInt());
+            Assertions.assertEquals(value, decoder.readSignedVarInt());
+        }
+        for (final var value : longs) {
+            Assertions.assertEquals(value, decoder.readVarLong());
+            Assertions.assertEquals(value, decoder.readSignedVarLong());
+        }
+        Assertions.assertFalse(decoder.hasRemaining());
+    }
+
+    @Test
+    void test_small_deltas_stay_small() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        encoder.writeSignedVarInt(-3);
+        encoder.writeSignedVarLong(50L);
+        final var decoder = CompressedBlockCodec.Decoder.inflate(encoder.finish(), new Inflater());
+        Assertions.assertEquals(-3, decoder.readSignedVarInt());
+        Assertions.assertEquals(50L, decoder.readSignedVarLong());
+        Assertions.assertFalse(decoder.hasRemaining());
+    }
+
+    @Test
+    void test_encoder_is_reusable() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        final var inflater = new Inflater();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 256; j++) {
+                encoder.writeSignedVarLong(i * 1000L + j);
+            }
+            final var decoder = CompressedBlockCodec.Decoder.inflate(encoder.finish(), inflater);
+            for (int j = 0; j < 256; j++) {
+                Assertions.assertEquals(i * 1000L + j, decoder.readSignedVarLong());
+            }
+            Assertions.assertFalse(decoder.hasRemaining());
+        }
+    }
+
+    @Test
+    void test_repetitive_block_is_compressed() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        for (int i = 0; i < 1024; i++) {
+            encoder.writeSignedVarInt(1);
+            encoder.writeVarInt(12);
+        }
+        Assertions.assertTrue(encoder.finish().length < 2048);
+    }
+
+    @Test
+    void test_truncated_block() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        for (int i = 0; i < 512; i++) {
+            encoder.writeVarLong(i * 7_919L);
+        }
+        final var block = encoder.finish();
+        final var truncated = Arrays.copyOf(block, block.length / 2);
+        Assertions.assertThrows(
+                IllegalStateException.class, () -> CompressedBlockCodec.Decoder.inflate(truncated, new Inflater()));
+    }
+
+    @Test
+    void test_read_past_end() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        encoder.writeVarInt(300);
+        final var decoder = CompressedBlockCodec.Decoder.inflate(encoder.finish(), new Inflater());
+        Assertions.assertEquals(300, decoder.readVarInt());
+        Assertions.assertThrows(IllegalStateException.class, decoder::readByte);
+    }
+
+    @Test
+    void test_overlong_varint() {
+        final var encoder = new CompressedBlockCodec.Encoder();
+        for (int i = 0; i < 11; i++) {
+            encoder.writeByte(0x80);
+        }
+        encoder.writeByte(0x01);
+        final var decoder = CompressedBlockCodec.Decoder.inflate(encoder.finish(), new Inflater());
+        Assertions.assertThrows(IllegalStateException.class, decoder::readVarLong);
+    }
+}
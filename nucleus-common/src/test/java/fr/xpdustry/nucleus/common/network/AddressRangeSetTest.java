@@ -0,0 +1,161 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class AddressRangeSetTest {
+
+    @Test
+    void test_empty() {
+        final var set = AddressRangeSet.builder().build();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertFalse(set.contains("78.5.47.96"));
+        Assertions.assertFalse(set.contains("2001:db8::1"));
+    }
+
+    @Test
+    void test_ipv4_prefix() {
+        final var set = AddressRangeSet.builder().add("192.168.0.0/16").build();
+        Assertions.assertTrue(set.contains("192.168.0.0"));
+        Assertions.assertTrue(set.contains("192.168.42.1"));
+        Assertions.assertTrue(set.contains("192.168.255.255"));
+        Assertions.assertFalse(set.contains("192.169.0.0"));
+        Assertions.assertFalse(set.contains("192.167.255.255"));
+    }
+
+    @Test
+    void test_ipv4_host_bits_are_ignored() {
+        final var set = AddressRangeSet.builder().add("10.1.2.3/8").build();
+        Assertions.assertTrue(set.contains("10.0.0.0"));
+        Assertions.assertTrue(set.contains("10.255.255.255"));
+        Assertions.assertFalse(set.contains("11.0.0.0"));
+    }
+
+    @Test
+    void test_ipv4_unsigned_bounds() {
+        final var set = AddressRangeSet.builder()
+                .add("255.255.255.0/24")
+                .add("128.0.0.0/32")
+                .add("0.0.0.0/32")
+                .build();
+        Assertions.assertTrue(set.contains("255.255.255.255"));
+        Assertions.assertTrue(set.contains("128.0.0.0"));
+        Assertions.assertTrue(set.contains("0.0.0.0"));
+        Assertions.assertFalse(set.contains("127.255.255.255"));
+        Assertions.assertFalse(set.contains("128.0.0.1"));
+    }
+
+    @Test
+    void test_ipv4_merge() {
+        final var set = AddressRangeSet.builder()
+                .add("10.0.0.0/24")
+                .add("10.0.1.0/24")
+                .add("10.0.0.128/25")
+                .add("10.0.3.0/24")
+                .build();
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.contains("10.0.1.255"));
+        Assertions.assertFalse(set.contains("10.0.2.0"));
+        Assertions.assertTrue(set.contains("10.0.3.0"));
+    }
+
+    @Test
+    void test_ipv6_prefix() {
+        final var set = AddressRangeSet.builder()
+                .add("2001:db8::/32")
+                .add("2600:1f00::/100")
+                .build();
+        Assertions.assertTrue(set.contains("2001:db8::"));
+        Assertions.assertTrue(set.contains("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        Assertions.assertFalse(set.contains("2001:db9::"));
+        Assertions.assertTrue(set.contains("2600:1f00::fff:ffff"));
+        Assertions.assertFalse(set.contains("2600:1f00::1000:0"));
+    }
+
+    @Test
+    void test_ipv6_merge() {
+        final var set = AddressRangeSet.builder()
+                .add("2001:db8::/64")
+                .add("2001:db8:0:1::/64")
+                .add("2001:db8::/48")
+                .build();
+        Assertions.assertEquals(1, set.size());
+        Assertions.assertTrue(set.contains("2001:db8:0:ffff::1"));
+        Assertions.assertFalse(set.contains("2001:db8:1::"));
+    }
+
+    @Test
+    void test_families_are_separate() {
+        final var set = AddressRangeSet.builder().add("0.0.0.0/0").build();
+        Assertions.assertTrue(set.contains("1.2.3.4"));
+        Assertions.assertFalse(set.contains("::1"));
+    }
+
+    @Test
+    void test_invalid() {
+        final var builder = AddressRangeSet.builder();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add("10.0.0.0/33"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add("10.0.0.0/a"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add("not an address"));
+    }
+
+    @Test
+    void test_cloud_prefixes_match_tree_range_set() {
+        final var prefixes = CloudPrefixFixtures.load();
+        final var builder = AddressRangeSet.builder();
+        prefixes.forEach(builder::add);
+        final var set = builder.build();
+        final var reference = CloudPrefixFixtures.createReference(prefixes);
+        Assertions.assertEquals(reference.asRanges().size(), set.size());
+
+        // The bounds of every merged range and their neighbours, then random addresses around the ranges
+        final List<BigInteger> candidates = new ArrayList<>();
+        final var random = new Random(42L);
+        for (final var range : reference.asRanges()) {
+            final var lower = range.lowerEndpoint();
+            final var upper = range.upperEndpoint();
+            candidates.add(lower.subtract(BigInteger.ONE));
+            candidates.add(lower);
+            candidates.add(upper.subtract(BigInteger.ONE));
+            candidates.add(upper);
+            final var span = upper.subtract(lower);
+            for (int i = 0; i < 64; i++) {
+                final var offset = new BigInteger(span.bitLength() + 1, random).subtract(span.shiftRight(1));
+                candidates.add(lower.add(offset));
+            }
+        }
+
+        var checked = 0;
+        for (final var candidate : candidates) {
+            final var address = CloudPrefixFixtures.toAddress(candidate);
+            if (address == null) {
+                continue;
+            }
+            Assertions.assertEquals(
+                    reference.contains(candidate), set.contains(address), address.getHostAddress());
+            checked++;
+        }
+        Assertions.assertTrue(checked > reference.asRanges().size() * 64);
+    }
+}
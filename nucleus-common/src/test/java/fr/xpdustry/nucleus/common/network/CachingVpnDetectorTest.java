@@ -0,0 +1,125 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import fr.xpdustry.nucleus.common.web.ApiServiceException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class CachingVpnDetectorTest {
+
+    private static final String TEST_ADDRESS = "78.5.47.96";
+    private static final String OTHER_ADDRESS = "78.5.47.97";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_single_flight() {
+        final var detector = new TestVpnDetector();
+        detector.setHanging(true);
+        final var caching = this.createDetector(detector, null);
+
+        final var first = caching.isVpn(TEST_ADDRESS);
+        final var second = caching.isVpn(TEST_ADDRESS);
+        Assertions.assertFalse(first.isDone());
+        Assertions.assertFalse(second.isDone());
+        Assertions.assertEquals(1, detector.getCalls());
+
+        detector.getPending().complete(true);
+        Assertions.assertTrue(first.join());
+        Assertions.assertTrue(second.join());
+        Assertions.assertTrue(caching.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(1, detector.getCalls());
+    }
+
+    @Test
+    void test_failure_not_cached() {
+        final var detector = new TestVpnDetector();
+        detector.setError(true);
+        final var caching = this.createDetector(detector, null);
+
+        Assertions.assertThrows(ApiServiceException.class, () -> {
+            try {
+                caching.isVpn(TEST_ADDRESS).join();
+            } catch (final CompletionException exception) {
+                throw exception.getCause();
+            }
+        });
+        Assertions.assertEquals(1, detector.getCalls());
+
+        detector.setError(false);
+        detector.setOutput(true);
+        Assertions.assertTrue(caching.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(2, detector.getCalls());
+    }
+
+    @Test
+    void test_positive_negative_ttl() {
+        final var detector = new TestVpnDetector();
+        final var caching = this.createDetector(detector, null);
+
+        // The negative verdicts expire right away
+        detector.setOutput(false);
+        Assertions.assertFalse(caching.isVpn(TEST_ADDRESS).join());
+        Assertions.assertFalse(caching.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(2, detector.getCalls());
+
+        // While the positive ones are kept
+        detector.setOutput(true);
+        Assertions.assertTrue(caching.isVpn(TEST_ADDRESS).join());
+        detector.setOutput(false);
+        Assertions.assertTrue(caching.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(3, detector.getCalls());
+    }
+
+    @Test
+    void test_persistence() {
+        final var store = this.directory.resolve("vpn").resolve("verdicts.bin");
+        final var detector = new TestVpnDetector();
+        final var caching = this.createDetector(detector, store);
+        caching.onNucleusInit();
+
+        detector.setOutput(true);
+        Assertions.assertTrue(caching.isVpn(TEST_ADDRESS).join());
+        detector.setOutput(false);
+        Assertions.assertFalse(caching.isVpn(OTHER_ADDRESS).join());
+        caching.onNucleusExit();
+
+        final var reloadedDetector = new TestVpnDetector();
+        final var reloaded = this.createDetector(reloadedDetector, store);
+        reloaded.onNucleusInit();
+
+        Assertions.assertTrue(reloaded.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(0, reloadedDetector.getCalls());
+
+        // The expired verdicts are not restored
+        reloadedDetector.setOutput(true);
+        Assertions.assertTrue(reloaded.isVpn(OTHER_ADDRESS).join());
+        Assertions.assertEquals(1, reloadedDetector.getCalls());
+    }
+
+    private CachingVpnDetector createDetector(final TestVpnDetector detector, final @Nullable Path store) {
+        return new CachingVpnDetector(detector, Duration.ofHours(1L), Duration.ZERO, 100L, store);
+    }
+}
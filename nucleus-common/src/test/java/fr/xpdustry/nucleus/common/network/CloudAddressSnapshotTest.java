@@ -0,0 +1,115 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import fr.xpdustry.nucleus.common.network.CloudAddressProvider.Metadata;
+import fr.xpdustry.nucleus.common.network.CloudAddressSnapshot.Cidr;
+import fr.xpdustry.nucleus.common.network.CloudAddressSnapshot.Entry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class CloudAddressSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_cidr_parse() {
+        final var ipv4 = Cidr.parse("192.168.0.0/16").orElseThrow();
+        Assertions.assertArrayEquals(new byte[] {(byte) 192, (byte) 168, 0, 0}, ipv4.address());
+        Assertions.assertEquals(16, ipv4.prefix());
+        Assertions.assertEquals(128, Cidr.parse("2001:db8::1").orElseThrow().prefix());
+        Assertions.assertTrue(Cidr.parse("10.0.0.0/33").isEmpty());
+        Assertions.assertTrue(Cidr.parse("not an address").isEmpty());
+    }
+
+    @Test
+    void test_round_trip() throws IOException {
+        final var file = this.directory.resolve("snapshot").resolve("cloud-addresses.bin");
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        entries.put(
+                "Provider",
+                new Entry(
+                        new Metadata("\"etag\"", "Tue, 15 Nov 1994 12:45:26 GMT"),
+                        List.of(Cidr.parse("78.5.47.0/24").orElseThrow(), Cidr.parse("2001:db8::/32").orElseThrow())));
+        entries.put("Empty", new Entry(Metadata.none(), List.of()));
+        CloudAddressSnapshot.write(file, entries);
+
+        final var read = CloudAddressSnapshot.read(file);
+        Assertions.assertEquals(List.of("Provider", "Empty"), List.copyOf(read.keySet()));
+        Assertions.assertEquals(entries.get("Provider").metadata(), read.get("Provider").metadata());
+        Assertions.assertEquals(Metadata.none(), read.get("Empty").metadata());
+        Assertions.assertTrue(read.get("Empty").ranges().isEmpty());
+
+        final var expected = entries.get("Provider").ranges();
+        final var actual = read.get("Provider").ranges();
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertArrayEquals(expected.get(i).address(), actual.get(i).address());
+            Assertions.assertEquals(expected.get(i).prefix(), actual.get(i).prefix());
+        }
+    }
+
+    @Test
+    void test_read_missing() throws IOException {
+        Assertions.assertTrue(
+                CloudAddressSnapshot.read(this.directory.resolve("missing.bin")).isEmpty());
+    }
+
+    @Test
+    void test_read_invalid() throws IOException {
+        final var file = this.directory.resolve("invalid.bin");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5});
+        Assertions.assertThrows(IOException.class, () -> CloudAddressSnapshot.read(file));
+    }
+
+    @Test
+    void test_file_provider() throws IOException {
+        final var file = this.directory.resolve("ranges.txt");
+        Files.writeString(file, "# Comment\n78.5.47.0/24\n\n  2001:db8::/32  \n");
+        final var provider = new FileCloudAddressProvider(file);
+
+        final var result = provider.fetch(Metadata.none()).orElseThrow();
+        Assertions.assertEquals(List.of("78.5.47.0/24", "2001:db8::/32"), List.copyOf(result.ranges()));
+        Assertions.assertNotNull(result.metadata().lastModified());
+
+        // Not modified since the last fetch
+        Assertions.assertTrue(provider.fetch(result.metadata()).isEmpty());
+
+        Files.writeString(file, "# Nothing left\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60L)));
+        final var empty = provider.fetch(result.metadata()).orElseThrow();
+        Assertions.assertTrue(empty.ranges().isEmpty());
+        Assertions.assertNotEquals(result.metadata(), empty.metadata());
+    }
+
+    @Test
+    void test_file_provider_missing() {
+        final var provider = new FileCloudAddressProvider(this.directory.resolve("missing.txt"));
+        Assertions.assertThrows(IOException.class, () -> provider.fetch(Metadata.none()));
+    }
+}
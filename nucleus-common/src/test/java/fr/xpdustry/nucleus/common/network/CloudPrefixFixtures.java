@@ -0,0 +1,105 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.common.net.InetAddresses;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Loads the sample of cloud prefixes in {@code cloud-prefixes.txt}, shared by the tests and the benchmarks. It also
+ * builds the {@link TreeRangeSet} the cloud prefixes were stored in before {@link AddressRangeSet}, as a reference.
+ */
+final class CloudPrefixFixtures {
+
+    private CloudPrefixFixtures() {}
+
+    static List<String> load() {
+        final var stream = Objects.requireNonNull(
+                CloudPrefixFixtures.class.getResourceAsStream("cloud-prefixes.txt"), "cloud-prefixes.txt");
+        try (final var reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            final List<String> prefixes = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    prefixes.add(line);
+                }
+            }
+            return prefixes;
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Returns the prefixes as half-open ranges of integers, so the adjacent prefixes are merged like in
+     * {@link AddressRangeSet}. The IPv6 addresses are offset by {@code 2^128} to keep the address families apart.
+     */
+    static RangeSet<BigInteger> createReference(final List<String> prefixes) {
+        final RangeSet<BigInteger> reference = TreeRangeSet.create();
+        for (final var prefix : prefixes) {
+            final var slash = prefix.indexOf('/');
+            final var address = InetAddresses.forString(slash == -1 ? prefix : prefix.substring(0, slash));
+            final var bits = address instanceof Inet4Address ? 32 : 128;
+            final var length = slash == -1 ? bits : Integer.parseInt(prefix.substring(slash + 1));
+            final var size = BigInteger.ONE.shiftLeft(bits - length);
+            final var start = toInteger(address).divide(size).multiply(size);
+            reference.add(Range.closedOpen(start, start.add(size)));
+        }
+        return reference;
+    }
+
+    static BigInteger toInteger(final InetAddress address) {
+        final var integer = new BigInteger(1, address.getAddress());
+        return address instanceof Inet4Address ? integer : integer.setBit(128);
+    }
+
+    /**
+     * The inverse of {@link #toInteger(InetAddress)}, returns null if the integer is not an address.
+     */
+    static @Nullable InetAddress toAddress(final BigInteger integer) {
+        if (integer.signum() < 0 || integer.bitLength() > 129 || (integer.bitLength() > 32 && !integer.testBit(128))) {
+            return null;
+        }
+        final var bytes = integer.clearBit(128).toByteArray();
+        final var length = integer.testBit(128) ? 16 : 4;
+        final var address = new byte[length];
+        final var copied = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copied, address, length - copied, copied);
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (final UnknownHostException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
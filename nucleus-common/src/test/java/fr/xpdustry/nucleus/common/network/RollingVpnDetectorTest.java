@@ -18,7 +18,9 @@
 package fr.xpdustry.nucleus.common.network;
 
 import fr.xpdustry.nucleus.common.web.ApiServiceException;
-import java.util.concurrent.CompletableFuture;
+import fr.xpdustry.nucleus.common.web.ApiServiceRateLimitException;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletionException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -155,31 +157,87 @@ public final class RollingVpnDetectorTest {
         Assertions.assertEquals(2, detector3.getCalls());
     }
 
-    private static final class TestVpnDetector implements VpnDetector {
+    @Test
+    void test_rate_limit_cooldown() {
+        final var detector1 = new TestVpnDetector();
+        detector1.setRateLimited(true);
+        final var detector2 = new TestVpnDetector();
+        detector2.setOutput(false);
+
+        final var rolling = new RollingVpnDetector(detector1, detector2);
+
+        Assertions.assertFalse(rolling.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(1, detector1.getCalls());
+        Assertions.assertEquals(1, detector2.getCalls());
 
-        private boolean output = false;
-        private boolean error = false;
-        private int calls = 0;
+        // The first detector is cooling down, so it is skipped even when it is its turn
+        Assertions.assertFalse(rolling.isVpn(TEST_ADDRESS).join());
+        Assertions.assertFalse(rolling.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(1, detector1.getCalls());
+        Assertions.assertEquals(3, detector2.getCalls());
+    }
 
-        @Override
-        public CompletableFuture<Boolean> isVpn(final String address) {
-            this.calls++;
-            if (this.error) {
-                return CompletableFuture.failedFuture(new ApiServiceException());
+    @Test
+    void test_rate_limit_all() {
+        final var detector1 = new TestVpnDetector();
+        detector1.setRateLimited(true);
+        final var detector2 = new TestVpnDetector();
+        detector2.setRateLimited(true);
+
+        final var rolling = new RollingVpnDetector(detector1, detector2);
+
+        Assertions.assertThrows(ApiServiceException.class, () -> {
+            try {
+                rolling.isVpn(TEST_ADDRESS).join();
+            } catch (final CompletionException exception) {
+                throw exception.getCause();
+            }
+        });
+        Assertions.assertThrows(ApiServiceRateLimitException.class, () -> {
+            try {
+                rolling.isVpn(TEST_ADDRESS).join();
+            } catch (final CompletionException exception) {
+                throw exception.getCause();
             }
-            return CompletableFuture.completedFuture(this.output);
-        }
+        });
+
+        Assertions.assertEquals(1, detector1.getCalls());
+        Assertions.assertEquals(1, detector2.getCalls());
+    }
+
+    @Test
+    void test_hedging() {
+        final var detector1 = new TestVpnDetector();
+        detector1.setHanging(true);
+        final var detector2 = new TestVpnDetector();
+        detector2.setOutput(true);
 
-        public void setOutput(final boolean output) {
-            this.output = output;
-        }
+        final var rolling = new RollingVpnDetector(
+                List.of(detector1, detector2), Duration.ofMinutes(1L), Duration.ofSeconds(2L), Duration.ofMillis(10L));
 
-        public void setError(final boolean error) {
-            this.error = error;
-        }
+        Assertions.assertTrue(rolling.isVpn(TEST_ADDRESS).join());
+        Assertions.assertEquals(1, detector1.getCalls());
+        Assertions.assertEquals(1, detector2.getCalls());
+        Assertions.assertEquals(1, rolling.getHedgeCount());
+    }
+
+    @Test
+    void test_statistics() {
+        final var detector1 = new TestVpnDetector();
+        detector1.setError(true);
+        final var detector2 = new TestVpnDetector();
+        detector2.setOutput(true);
+
+        final var rolling = new RollingVpnDetector(detector1, detector2);
+        Assertions.assertTrue(rolling.isVpn(TEST_ADDRESS).join());
 
-        public int getCalls() {
-            return this.calls;
-        }
+        final var statistics = rolling.getStatistics();
+        Assertions.assertEquals(2, statistics.size());
+        Assertions.assertEquals(1, statistics.get(0).calls());
+        Assertions.assertEquals(1, statistics.get(0).failures());
+        Assertions.assertEquals(1D, statistics.get(0).errorRate());
+        Assertions.assertEquals(1, statistics.get(1).calls());
+        Assertions.assertEquals(0, statistics.get(1).failures());
+        Assertions.assertEquals(0D, statistics.get(1).errorRate());
     }
 }
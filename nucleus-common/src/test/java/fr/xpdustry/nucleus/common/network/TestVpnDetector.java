@@ -0,0 +1,80 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.common.network;
+
+import fr.xpdustry.nucleus.common.web.ApiServiceException;
+import fr.xpdustry.nucleus.common.web.ApiServiceRateLimitException;
+import java.util.concurrent.CompletableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A controllable detector for the tests, counting its calls.
+ */
+final class TestVpnDetector implements VpnDetector {
+
+    private boolean output = false;
+    private boolean error = false;
+    private boolean rateLimited = false;
+    private boolean hanging = false;
+    private int calls = 0;
+    private @Nullable CompletableFuture<Boolean> pending = null;
+
+    @Override
+    public CompletableFuture<Boolean> isVpn(final String address) {
+        this.calls++;
+        if (this.hanging) {
+            this.pending = new CompletableFuture<>();
+            return this.pending;
+        } else if (this.rateLimited) {
+            return CompletableFuture.failedFuture(new ApiServiceRateLimitException());
+        } else if (this.error) {
+            return CompletableFuture.failedFuture(new ApiServiceException());
+        }
+        return CompletableFuture.completedFuture(this.output);
+    }
+
+    public void setOutput(final boolean output) {
+        this.output = output;
+    }
+
+    public void setError(final boolean error) {
+        this.error = error;
+    }
+
+    public void setRateLimited(final boolean rateLimited) {
+        this.rateLimited = rateLimited;
+    }
+
+    public void setHanging(final boolean hanging) {
+        this.hanging = hanging;
+    }
+
+    public int getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Returns the result of the last call made while hanging.
+     */
+    public CompletableFuture<Boolean> getPending() {
+        if (this.pending == null) {
+            throw new IllegalStateException("No hanging call");
+        }
+        return this.pending;
+    }
+}
@@ -27,10 +27,12 @@ import fr.xpdustry.nucleus.common.version.NucleusVersion;
 import fr.xpdustry.nucleus.discord.interaction.InteractionManager;
 import fr.xpdustry.nucleus.discord.interaction.command.EchoCommand;
 import fr.xpdustry.nucleus.discord.interaction.command.ExitCommand;
+import fr.xpdustry.nucleus.discord.interaction.command.HistoryCommand;
 import fr.xpdustry.nucleus.discord.interaction.command.JavelinCommand;
 import fr.xpdustry.nucleus.discord.interaction.command.PingCommand;
 import fr.xpdustry.nucleus.discord.interaction.command.PunishmentCommand;
 import fr.xpdustry.nucleus.discord.interaction.command.UpdateCommand;
+import fr.xpdustry.nucleus.discord.listener.HistoryReplicationListener;
 import fr.xpdustry.nucleus.discord.listener.MindustryChatBridgeListener;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -63,12 +65,14 @@ public final class NucleusDiscordApplication extends AbstractNucleusApplication
 
         // Listeners
 
+        application.injectAndRegister(HistoryReplicationListener.class);
         application.injectAndRegister(MindustryChatBridgeListener.class);
 
         // Interactions
 
         application.injectAndRegister(EchoCommand.class);
         application.injectAndRegister(ExitCommand.class);
+        application.injectAndRegister(HistoryCommand.class);
         application.injectAndRegister(JavelinCommand.class);
         application.injectAndRegister(PingCommand.class);
         application.injectAndRegister(PunishmentCommand.class);
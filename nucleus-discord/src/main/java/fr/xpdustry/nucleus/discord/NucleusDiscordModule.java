@@ -30,6 +30,7 @@ import fr.xpdustry.nucleus.common.network.DiscoveryService;
 import fr.xpdustry.nucleus.discord.configuration.NucleusDiscordConfiguration;
 import fr.xpdustry.nucleus.discord.interaction.InteractionManager;
 import fr.xpdustry.nucleus.discord.interaction.SimpleInteractionManager;
+import fr.xpdustry.nucleus.discord.listener.HistoryReplicationListener;
 import fr.xpdustry.nucleus.discord.network.VersionControlDiscoveryService;
 import fr.xpdustry.nucleus.discord.service.DiscordService;
 import fr.xpdustry.nucleus.discord.service.SimpleDiscordService;
@@ -47,6 +48,7 @@ public final class NucleusDiscordModule extends AbstractModule {
         bind(InteractionManager.class).to(SimpleInteractionManager.class).in(Singleton.class);
         bind(Executor.class).annotatedWith(NucleusExecutor.class).toInstance(Executors.newCachedThreadPool());
         bind(DiscoveryService.class).to(VersionControlDiscoveryService.class).in(Singleton.class);
+        bind(HistoryReplicationListener.class).in(Singleton.class);
         // TODO bindListener does not work... WHY?
         bind(Logger.class).toProvider(() -> LoggerFactory.getLogger("Nucleus"));
     }
@@ -0,0 +1,82 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.discord.interaction.command;
+
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.discord.interaction.InteractionContext;
+import fr.xpdustry.nucleus.discord.interaction.InteractionDescription;
+import fr.xpdustry.nucleus.discord.interaction.InteractionPermission;
+import fr.xpdustry.nucleus.discord.interaction.Option;
+import fr.xpdustry.nucleus.discord.interaction.SlashInteraction;
+import fr.xpdustry.nucleus.discord.listener.HistoryReplicationListener;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import javax.inject.Inject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.javacord.api.entity.permission.PermissionType;
+
+@SlashInteraction("history")
+@InteractionDescription("Look up the history of the network.")
+@InteractionPermission(PermissionType.MODERATE_MEMBERS)
+public final class HistoryCommand implements NucleusListener {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_CONTENT_LENGTH = 1900;
+
+    private final HistoryReplicationListener replication;
+
+    @Inject
+    public HistoryCommand(final HistoryReplicationListener replication) {
+        this.replication = replication;
+    }
+
+    @SlashInteraction.Handler(subcommand = "player")
+    public void onHistoryPlayer(
+            final InteractionContext context,
+            final @Option("uuid") String uuid,
+            final @Option(value = "limit", required = false) @Nullable Integer limit) {
+        final var entries = this.replication.getHistory(
+                uuid, limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT)));
+        if (entries.isEmpty()) {
+            context.sendEphemeralMessage("No history found for the player %s.", uuid);
+            return;
+        }
+
+        final var builder = new StringBuilder("```\n");
+        for (final var entry : entries) {
+            final var line = String.format(
+                    "%s [%s] %s %s at (%d, %d)%n",
+                    DATE_TIME_FORMATTER.format(
+                            LocalDateTime.ofInstant(entry.getTimestamp(), Clock.systemUTC().getZone())),
+                    entry.getServerIdentifier(),
+                    entry.getType().name().toLowerCase(Locale.ROOT),
+                    entry.getBlock(),
+                    entry.getX(),
+                    entry.getY());
+            if (builder.length() + line.length() > MAX_CONTENT_LENGTH) {
+                break;
+            }
+            builder.append(line);
+        }
+        context.sendEphemeralMessage("%s", builder.append("```"));
+    }
+}
@@ -22,6 +22,8 @@ import com.google.common.net.InetAddresses;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
 import fr.xpdustry.nucleus.common.database.DatabaseService;
 import fr.xpdustry.nucleus.common.database.model.Punishment;
+import fr.xpdustry.nucleus.common.database.model.PunishmentMessage;
+import fr.xpdustry.nucleus.common.message.MessageService;
 import fr.xpdustry.nucleus.discord.interaction.InteractionContext;
 import fr.xpdustry.nucleus.discord.interaction.InteractionDescription;
 import fr.xpdustry.nucleus.discord.interaction.InteractionPermission;
@@ -50,10 +52,12 @@ public final class PunishmentCommand implements NucleusListener {
     private static final Logger logger = LoggerFactory.getLogger(PunishmentCommand.class);
 
     private final DatabaseService databaseService;
+    private final MessageService messageService;
 
     @Inject
-    public PunishmentCommand(final DatabaseService databaseService) {
+    public PunishmentCommand(final DatabaseService databaseService, final MessageService messageService) {
         this.databaseService = databaseService;
+        this.messageService = messageService;
     }
 
     @SlashInteraction.Handler(subcommand = "list")
@@ -104,7 +108,10 @@ public final class PunishmentCommand implements NucleusListener {
             return;
         }
 
-        databaseService.getPunishmentManager().save(punishment.get().setPardoned(true));
+        databaseService
+                .getPunishmentManager()
+                .save(punishment.get().setPardoned(true))
+                .thenRun(() -> this.messageService.publish(PunishmentMessage.of(punishment.get())));
         context.sendEphemeralMessage("The punishment %s has been pardoned.", identifier);
     }
 
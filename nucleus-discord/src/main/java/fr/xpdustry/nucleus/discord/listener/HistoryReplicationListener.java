@@ -0,0 +1,94 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.discord.listener;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.history.HistoryBatchCodec;
+import fr.xpdustry.nucleus.common.history.HistoryBatchMessage;
+import fr.xpdustry.nucleus.common.history.ReplicatedHistoryEntry;
+import fr.xpdustry.nucleus.common.message.MessageService;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the history batches replicated by the servers of the network.
+ */
+public final class HistoryReplicationListener implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryReplicationListener.class);
+    private static final int PLAYER_LIMIT = 500;
+
+    private final Cache<String, Deque<ReplicatedHistoryEntry>> players = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofHours(12L))
+            .build();
+    private final MessageService messageService;
+
+    @Inject
+    public HistoryReplicationListener(final MessageService messageService) {
+        this.messageService = messageService;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        this.messageService.subscribe(HistoryBatchMessage.class, this::onHistoryBatch);
+    }
+
+    public List<ReplicatedHistoryEntry> getHistory(final String uuid, final int limit) {
+        final var history = this.players.getIfPresent(uuid);
+        if (history == null) {
+            return List.of();
+        }
+        final List<ReplicatedHistoryEntry> entries;
+        synchronized (history) {
+            entries = new ArrayList<>(history);
+        }
+        // Each server publishes in order, but the batches of different servers interleave
+        entries.sort(Comparator.comparing(ReplicatedHistoryEntry::getTimestamp).reversed());
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    private void onHistoryBatch(final HistoryBatchMessage message) {
+        final List<ReplicatedHistoryEntry> entries;
+        try {
+            entries = HistoryBatchCodec.decode(message.getServerIdentifier(), message.getPayload());
+        } catch (final IllegalArgumentException exception) {
+            logger.error("Received a malformed history batch from {}", message.getServerIdentifier(), exception);
+            return;
+        }
+
+        for (final var entry : entries) {
+            final var history = this.players.get(entry.getUuid(), uuid -> new ArrayDeque<>());
+            synchronized (history) {
+                if (history.size() == PLAYER_LIMIT) {
+                    history.removeFirst();
+                }
+                history.addLast(entry);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ plugins {
     id("nucleus.publishing-conventions")
     id("com.github.johnrengelman.shadow")
     id("fr.xpdustry.toxopid")
+    id("me.champeau.jmh")
 }
 
 val metadata = fr.xpdustry.toxopid.spec.ModMetadata.fromJson(project.file("plugin.json"))
@@ -54,6 +55,20 @@ dependencies {
     annotationProcessor(libs.immutables.value.processor)
 }
 
+// The tests and the benchmarks run against the game classes, which are only provided by the server at runtime
+configurations.testImplementation {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+configurations.jmhImplementation {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+jmh {
+    // Reports the allocation rate next to the throughput
+    profilers.add("gc")
+}
+
 tasks.shadowJar {
     archiveFileName.set("NucleusMindustry.jar")
     archiveClassifier.set("plugin")
@@ -76,6 +91,8 @@ tasks.shadowJar {
     relocatePackage("org.bson")
     relocatePackage("com.mongodb")
     relocatePackage("org.mongodb")
+    relocatePackage("org.reactivestreams")
+    relocatePackage("reactor")
     relocatePackage("com.password4j")
     relocatePackage("com.deepl.api", "deepl")
     relocatePackage("org.ocpsoft.prettytime")
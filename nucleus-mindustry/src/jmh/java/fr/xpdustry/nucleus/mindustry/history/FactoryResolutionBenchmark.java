@@ -0,0 +1,134 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration.Factory;
+import fr.xpdustry.nucleus.mindustry.history.factory.CanvasConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.CommonConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.ItemBridgeConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.LightBlockConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.LogicProcessorConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.MassDriverConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.MessageBlockConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.PayloadMassDriverConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.PowerNodeConfigurationFactory;
+import fr.xpdustry.nucleus.mindustry.history.factory.UnitFactoryConfigurationFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import mindustry.gen.Building;
+import mindustry.world.blocks.distribution.BufferedItemBridge.BufferedItemBridgeBuild;
+import mindustry.world.blocks.distribution.ItemBridge.ItemBridgeBuild;
+import mindustry.world.blocks.distribution.MassDriver.MassDriverBuild;
+import mindustry.world.blocks.distribution.Sorter.SorterBuild;
+import mindustry.world.blocks.logic.CanvasBlock.CanvasBuild;
+import mindustry.world.blocks.logic.LogicBlock.LogicBuild;
+import mindustry.world.blocks.logic.MessageBlock.MessageBuild;
+import mindustry.world.blocks.payloads.PayloadMassDriver.PayloadDriverBuild;
+import mindustry.world.blocks.power.LightBlock.LightBuild;
+import mindustry.world.blocks.power.PowerNode.PowerNodeBuild;
+import mindustry.world.blocks.storage.Unloader.UnloaderBuild;
+import mindustry.world.blocks.units.UnitFactory.UnitFactoryBuild;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the factory resolution of the configuration events, the walk of the class hierarchy done on every event
+ * before, with the cache of the resolved factories of {@link SimpleHistoryService}. The events mostly come from sorters
+ * and unloaders, which have no factory of their own, so they walk up to {@link Building} every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FactoryResolutionBenchmark {
+
+    // Weighted like a busy server, the sorters and unloaders are configured far more often than the other blocks
+    private static final Class<?>[] EVENTS = {
+        SorterBuild.class,
+        UnloaderBuild.class,
+        SorterBuild.class,
+        UnloaderBuild.class,
+        SorterBuild.class,
+        UnloaderBuild.class,
+        PowerNodeBuild.class,
+        LogicBuild.class,
+        BufferedItemBridgeBuild.class,
+        UnitFactoryBuild.class,
+    };
+
+    private final Map<Class<? extends Building>, Factory<?>> factories = new HashMap<>();
+    private final Map<Class<?>, Optional<Factory<?>>> resolved = new ConcurrentHashMap<>();
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.factories.put(CanvasBuild.class, new CanvasConfigurationFactory());
+        this.factories.put(Building.class, new CommonConfigurationFactory());
+        this.factories.put(ItemBridgeBuild.class, new ItemBridgeConfigurationFactory());
+        this.factories.put(LightBuild.class, new LightBlockConfigurationFactory());
+        this.factories.put(LogicBuild.class, new LogicProcessorConfigurationFactory());
+        this.factories.put(MassDriverBuild.class, new MassDriverConfigurationFactory());
+        this.factories.put(MessageBuild.class, new MessageBlockConfigurationFactory());
+        this.factories.put(PayloadDriverBuild.class, new PayloadMassDriverConfigurationFactory());
+        this.factories.put(PowerNodeBuild.class, new PowerNodeConfigurationFactory());
+        this.factories.put(UnitFactoryBuild.class, new UnitFactoryConfigurationFactory());
+        this.resolved.clear();
+    }
+
+    @Benchmark
+    public Optional<Factory<?>> resolveWalk() {
+        return this.walk(this.next());
+    }
+
+    @Benchmark
+    public Optional<Factory<?>> resolveCached() {
+        return this.resolved.computeIfAbsent(this.next(), this::walk);
+    }
+
+    private Optional<Factory<?>> walk(final Class<?> type) {
+        Class<?> clazz = type;
+        while (Building.class.isAssignableFrom(clazz)) {
+            final var factory = this.factories.get(clazz);
+            if (factory != null) {
+                return Optional.of(factory);
+            }
+            clazz = clazz.getSuperclass();
+        }
+        return Optional.empty();
+    }
+
+    private Class<?> next() {
+        final var type = EVENTS[this.cursor];
+        this.cursor = (this.cursor + 1) % EVENTS.length;
+        return type;
+    }
+}
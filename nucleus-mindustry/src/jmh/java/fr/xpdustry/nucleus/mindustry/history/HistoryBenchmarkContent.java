@@ -0,0 +1,46 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.Core;
+import arc.util.I18NBundle;
+import java.util.Optional;
+import mindustry.Vars;
+import mindustry.core.ContentLoader;
+import mindustry.game.Team;
+import mindustry.type.UnitType;
+import mindustry.world.Block;
+
+/**
+ * The game content shared by the history benchmarks, created once without loading the whole game.
+ */
+final class HistoryBenchmarkContent {
+
+    static final Block BLOCK;
+    static final HistoryAuthor AUTHOR;
+
+    static {
+        Core.bundle = I18NBundle.createEmptyBundle();
+        Vars.content = new ContentLoader();
+        BLOCK = new Block("nucleus-benchmark-block");
+        AUTHOR = ImmutableHistoryAuthor.of(
+                Optional.of("Jx8F3dXoSTSqYB9nZJl6Kw=="), Team.sharded, new UnitType("nucleus-benchmark-unit"));
+    }
+
+    private HistoryBenchmarkContent() {}
+}
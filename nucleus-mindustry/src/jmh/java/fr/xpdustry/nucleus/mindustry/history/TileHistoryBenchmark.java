@@ -0,0 +1,141 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the columnar {@link TileHistoryStore} with the previous storage, a map of boxed positions to linked lists
+ * of entries, on a 500x500 map. Both are filled before the measurements, so the writes overwrite full rings like on a
+ * long running server. The gc profiler reports the allocated bytes per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TileHistoryBenchmark {
+
+    private static final int MAP_SIZE = 500;
+    private static final int CAPACITY = 10;
+    private static final int EVENTS = 1 << 20;
+    private static final Type[] TYPES = {Type.PLACING, Type.PLACE, Type.BREAKING, Type.BREAK};
+
+    private final int[] positions = new int[EVENTS];
+    private final Map<Integer, LinkedList<HistoryEntry>> legacy = new HashMap<>();
+    private TileHistoryStore store = new TileHistoryStore(CAPACITY, TileHistoryBenchmark::discard);
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var random = new Random(42L);
+        for (int i = 0; i < EVENTS; i++) {
+            this.positions[i] = Point2.pack(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE));
+        }
+        this.store = new TileHistoryStore(CAPACITY, TileHistoryBenchmark::discard);
+        this.legacy.clear();
+        for (int i = 0; i < MAP_SIZE * MAP_SIZE * CAPACITY / 4; i++) {
+            this.addColumnar();
+            this.addLegacy();
+        }
+    }
+
+    @Benchmark
+    public void addColumnar() {
+        final var position = this.next();
+        this.store.add(
+                Point2.x(position),
+                Point2.y(position),
+                TYPES[this.cursor & 3],
+                HistoryBenchmarkContent.BLOCK,
+                0,
+                HistoryBenchmarkContent.AUTHOR,
+                null,
+                this.cursor);
+    }
+
+    @Benchmark
+    public void addLegacy() {
+        final var position = this.next();
+        final var entries = this.legacy.computeIfAbsent(position, key -> new LinkedList<>());
+        if (entries.size() >= CAPACITY) {
+            entries.removeFirst();
+        }
+        entries.add(HistoryEntry.builder()
+                .setX(Point2.x(position))
+                .setBuildX(Point2.x(position))
+                .setY(Point2.y(position))
+                .setBuildY(Point2.y(position))
+                .setAuthor(HistoryBenchmarkContent.AUTHOR)
+                .setBlock(HistoryBenchmarkContent.BLOCK)
+                .setConfiguration(Optional.empty())
+                .setType(TYPES[this.cursor & 3])
+                .setTimestamp(Instant.ofEpochMilli(this.cursor))
+                .build());
+    }
+
+    @Benchmark
+    public List<HistoryEntry> getColumnar() {
+        final var position = this.next();
+        return this.store.getHistory(Point2.x(position), Point2.y(position));
+    }
+
+    @Benchmark
+    public List<HistoryEntry> getLegacy() {
+        final var entries = this.legacy.get(this.next());
+        return entries == null ? Collections.emptyList() : Collections.unmodifiableList(entries);
+    }
+
+    private int next() {
+        final var position = this.positions[this.cursor & (EVENTS - 1)];
+        this.cursor++;
+        return position;
+    }
+
+    @SuppressWarnings("unused")
+    private static void discard(
+            final int build,
+            final byte type,
+            final short block,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {}
+}
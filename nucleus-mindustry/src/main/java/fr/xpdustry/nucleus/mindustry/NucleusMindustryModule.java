@@ -34,11 +34,19 @@ import fr.xpdustry.nucleus.mindustry.annotation.ServerSide;
 import fr.xpdustry.nucleus.mindustry.chat.ChatManager;
 import fr.xpdustry.nucleus.mindustry.chat.ChatManagerImpl;
 import fr.xpdustry.nucleus.mindustry.command.NucleusPluginCommandManager;
+import fr.xpdustry.nucleus.mindustry.history.HistoryAnomalyDetector;
+import fr.xpdustry.nucleus.mindustry.history.HistoryReplicator;
 import fr.xpdustry.nucleus.mindustry.history.HistoryService;
 import fr.xpdustry.nucleus.mindustry.history.SimpleHistoryService;
 import fr.xpdustry.nucleus.mindustry.moderation.ModerationService;
+import fr.xpdustry.nucleus.mindustry.moderation.PunishmentCache;
 import fr.xpdustry.nucleus.mindustry.moderation.SimpleModerationService;
+import fr.xpdustry.nucleus.mindustry.network.AdmissionPipeline;
 import fr.xpdustry.nucleus.mindustry.network.BroadcastingDiscoveryService;
+import fr.xpdustry.nucleus.mindustry.network.ConnectionRateLimiter;
+import fr.xpdustry.nucleus.mindustry.rollback.RollbackService;
+import fr.xpdustry.nucleus.mindustry.rollback.SimpleRollbackService;
+import fr.xpdustry.nucleus.mindustry.user.UserSessionManager;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import javax.inject.Singleton;
@@ -62,6 +70,13 @@ public final class NucleusMindustryModule extends AbstractModule {
         bind(NucleusPluginCommandManager.class).annotatedWith(ServerSide.class).toInstance(plugin.serverCommands);
         bind(ModerationService.class).to(SimpleModerationService.class).in(Singleton.class);
         bind(HistoryService.class).to(SimpleHistoryService.class).in(Singleton.class);
+        bind(RollbackService.class).to(SimpleRollbackService.class).in(Singleton.class);
+        bind(PunishmentCache.class).in(Singleton.class);
+        bind(AdmissionPipeline.class).in(Singleton.class);
+        bind(ConnectionRateLimiter.class).in(Singleton.class);
+        bind(UserSessionManager.class).in(Singleton.class);
+        bind(HistoryReplicator.class).in(Singleton.class);
+        bind(HistoryAnomalyDetector.class).in(Singleton.class);
         // TODO
         //  Fix the blocking update task queue of distributor, this produces blocks when calling join on the main thread
         //  Aaaaaaaaaaaaaaaaah, this is URGENT
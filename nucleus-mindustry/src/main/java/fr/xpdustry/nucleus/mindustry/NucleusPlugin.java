@@ -34,6 +34,8 @@ import fr.xpdustry.nucleus.common.version.NucleusVersion;
 import fr.xpdustry.nucleus.mindustry.command.NucleusPluginCommandManager;
 import fr.xpdustry.nucleus.mindustry.commands.HistoryCommand;
 import fr.xpdustry.nucleus.mindustry.commands.ModerationCommands;
+import fr.xpdustry.nucleus.mindustry.commands.RateLimitCommand;
+import fr.xpdustry.nucleus.mindustry.commands.RollbackCommand;
 import fr.xpdustry.nucleus.mindustry.commands.SaveCommand;
 import fr.xpdustry.nucleus.mindustry.commands.StandardPlayerCommands;
 import fr.xpdustry.nucleus.mindustry.commands.SwitchCommand;
@@ -97,6 +99,8 @@ public final class NucleusPlugin extends AbstractMindustryPlugin {
         // Commands
         this.injectAndRegister(HistoryCommand.class);
         this.injectAndRegister(ModerationCommands.class);
+        this.injectAndRegister(RateLimitCommand.class);
+        this.injectAndRegister(RollbackCommand.class);
         this.injectAndRegister(SaveCommand.class);
         this.injectAndRegister(StandardPlayerCommands.class);
         this.injectAndRegister(SwitchCommand.class);
@@ -18,6 +18,7 @@
 package fr.xpdustry.nucleus.mindustry;
 
 import fr.xpdustry.nucleus.common.configuration.NucleusConfiguration;
+import fr.xpdustry.nucleus.mindustry.history.HistoryOverflowPolicy;
 import java.net.URL;
 import java.util.List;
 import org.aeonbits.owner.Config;
@@ -50,11 +51,127 @@ public interface NucleusPluginConfiguration extends NucleusConfiguration {
     @Config.Key("fr.xpdustry.nucleus.mindustry.hub.enabled")
     boolean isHubEnabled();
 
-    @Config.DefaultValue("10")
+    @Config.DefaultValue("100")
     @Config.Key("fr.xpdustry.nucleus.mindustry.history.limit.tile")
     int getHistoryTileLimit();
 
-    @Config.DefaultValue("200")
+    @Config.DefaultValue("2000")
     @Config.Key("fr.xpdustry.nucleus.mindustry.history.limit.player")
     int getHistoryPlayerLimit();
+
+    @Config.DefaultValue("10")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.hot.limit.tile")
+    int getHistoryHotTileLimit();
+
+    @Config.DefaultValue("200")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.hot.limit.player")
+    int getHistoryHotPlayerLimit();
+
+    @Config.DefaultValue("4096")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.cold.block-limit")
+    int getHistoryColdBlockLimit();
+
+    @Config.DefaultValue("512")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.limit.region")
+    int getHistoryRegionLimit();
+
+    @Config.DefaultValue("8192")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.queue.capacity")
+    int getHistoryQueueCapacity();
+
+    @Config.DefaultValue("COALESCE")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.queue.overflow-policy")
+    HistoryOverflowPolicy getHistoryQueueOverflowPolicy();
+
+    @Config.DefaultValue("true")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.journal.enabled")
+    boolean isHistoryJournalEnabled();
+
+    @Config.DefaultValue("262144")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.journal.segment-size")
+    int getHistoryJournalSegmentSize();
+
+    @Config.DefaultValue("50")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.journal.retention")
+    int getHistoryJournalRetention();
+
+    @Config.DefaultValue("false")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.replication.enabled")
+    boolean isHistoryReplicationEnabled();
+
+    @Config.DefaultValue("4096")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.replication.buffer-capacity")
+    int getHistoryReplicationBufferCapacity();
+
+    @Config.DefaultValue("512")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.replication.batch-size")
+    int getHistoryReplicationBatchSize();
+
+    @Config.DefaultValue("12")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.replication.rate-limit")
+    int getHistoryReplicationRateLimit();
+
+    @Config.DefaultValue("false")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.enabled")
+    boolean isHistoryAnomalyEnabled();
+
+    @Config.DefaultValue("false")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.punish")
+    boolean isHistoryAnomalyPunishEnabled();
+
+    @Config.DefaultValue("40")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.break.threshold")
+    int getHistoryAnomalyBreakThreshold();
+
+    @Config.DefaultValue("10")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.break.window")
+    int getHistoryAnomalyBreakWindow();
+
+    @Config.DefaultValue("15")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.power.threshold")
+    int getHistoryAnomalyPowerThreshold();
+
+    @Config.DefaultValue("10")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.power.window")
+    int getHistoryAnomalyPowerWindow();
+
+    @Config.DefaultValue("8")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.processor.threshold")
+    int getHistoryAnomalyProcessorThreshold();
+
+    @Config.DefaultValue("10")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.history.anomaly.processor.window")
+    int getHistoryAnomalyProcessorWindow();
+
+    @Config.DefaultValue("")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.cloud.files")
+    List<String> getCloudAddressFiles();
+
+    @Config.DefaultValue("16")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.admission.concurrency")
+    int getAdmissionConcurrency();
+
+    @Config.DefaultValue("5000")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.admission.timeout")
+    long getAdmissionTimeout();
+
+    @Config.DefaultValue("3")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.connection.rate.sketch-threshold")
+    int getConnectionRateSketchThreshold();
+
+    @Config.DefaultValue("5")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.connection.rate.capacity")
+    int getConnectionRateCapacity();
+
+    @Config.DefaultValue("10")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.connection.rate.refill")
+    int getConnectionRateRefill();
+
+    @Config.DefaultValue("300")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.connection.rate.blackhole-duration")
+    int getConnectionRateBlackholeDuration();
+
+    @Config.DefaultValue("50")
+    @Config.Key("fr.xpdustry.nucleus.mindustry.rollback.tick-budget")
+    int getRollbackTickBudget();
 }
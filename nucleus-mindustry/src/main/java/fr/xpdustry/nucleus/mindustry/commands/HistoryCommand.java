@@ -20,9 +20,12 @@ package fr.xpdustry.nucleus.mindustry.commands;
 import arc.graphics.Colors;
 import arc.util.Strings;
 import cloud.commandframework.arguments.standard.IntegerArgument;
+import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.meta.CommandMeta;
+import com.google.common.collect.Lists;
 import fr.xpdustry.distributor.api.command.argument.PlayerInfoArgument;
 import fr.xpdustry.distributor.api.command.sender.CommandSender;
+import fr.xpdustry.distributor.api.plugin.MindustryPlugin;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
 import fr.xpdustry.nucleus.mindustry.annotation.ClientSide;
 import fr.xpdustry.nucleus.mindustry.annotation.ServerSide;
@@ -40,10 +43,16 @@ import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration.Text;
 import fr.xpdustry.nucleus.mindustry.history.HistoryEntry;
 import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
 import fr.xpdustry.nucleus.mindustry.history.HistoryService;
-import java.util.Comparator;
+import fr.xpdustry.nucleus.mindustry.testing.ui.menu.ListTransformer;
+import fr.xpdustry.nucleus.mindustry.testing.ui.menu.MenuInterface;
+import fr.xpdustry.nucleus.mindustry.testing.ui.state.StateKey;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Locale;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import mindustry.Vars;
@@ -56,6 +65,11 @@ import org.slf4j.LoggerFactory;
 public final class HistoryCommand implements NucleusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(HistoryCommand.class);
+    private static final int MAX_AREA_SIZE = 100;
+    private static final int MAX_LIMIT = 500;
+    private static final int CONSOLE_CHUNK_SIZE = 10;
+    private static final int MENU_PAGE_HEIGHT = 6;
+    private static final StateKey<HistoryView> HISTORY = StateKey.of("nucleus:history-view", HistoryView.class);
 
     static {
         // TODO PR to load Vars.ui colors in server ?
@@ -65,15 +79,31 @@ public final class HistoryCommand implements NucleusListener {
     private final HistoryService history;
     private final NucleusPluginCommandManager clientCommandManager;
     private final NucleusPluginCommandManager serverCommandManager;
+    private final MenuInterface menu;
 
     @Inject
     public HistoryCommand(
+            final MindustryPlugin plugin,
             final HistoryService history,
             final @ClientSide NucleusPluginCommandManager clientCommandManager,
             final @ServerSide NucleusPluginCommandManager serverCommandManager) {
         this.history = history;
         this.clientCommandManager = clientCommandManager;
         this.serverCommandManager = serverCommandManager;
+
+        this.menu = MenuInterface.create(plugin)
+                .addTransformer((view, pane) -> pane.setTitle(
+                                view.getState().get(HISTORY).map(HistoryView::title).orElse("History"))
+                        .setContent("Newest entries first."))
+                .addTransformer((view, pane) -> {
+                    final var current = view.getState().get(HISTORY).orElseThrow();
+                    // The entries are only rendered when their page is displayed
+                    new ListTransformer<HistoryEntry>()
+                            .setElementProvider(() -> Lists.reverse(current.entries()))
+                            .setElementRenderer(current.renderer())
+                            .setPageHeight(MENU_PAGE_HEIGHT)
+                            .transform(view, pane);
+                });
     }
 
     @Override
@@ -84,34 +114,25 @@ public final class HistoryCommand implements NucleusListener {
                 .argument(PlayerInfoArgument.of("player"))
                 .argument(IntegerArgument.<CommandSender>builder("limit")
                         .withMin(1)
-                        .withMax(50)
+                        .withMax(MAX_LIMIT)
                         .asOptionalWithDefault(10))
                 .handler(ctx -> {
                     final PlayerInfo info = ctx.get("player");
-                    final var entries = normalize(history.getHistory(info.id), ctx.get("limit"));
-
-                    if (entries.isEmpty()) {
-                        ctx.getSender().sendWarning("No history found.");
-                        return;
-                    }
+                    final int limit = ctx.get("limit");
 
-                    final var builder =
+                    final var title =
                             new StringBuilder("[accent]History of player [white]").append(info.plainLastName());
                     if (this.canSeeUuid(ctx.getSender())) {
-                        builder.append(" [accent](").append(info.id).append(")");
-                    }
-                    builder.append(":");
-
-                    for (final var entry : entries) {
-                        builder.append("\n[accent] > ").append(renderEntry(entry, false, false, true, 3));
+                        title.append(" [accent](").append(info.id).append(")");
                     }
+                    title.append(":");
 
-                    // TODO I really need this Component API
-                    ctx.getSender()
-                            .sendMessage(
-                                    ctx.getSender().isConsole()
-                                            ? Strings.stripColors(builder.toString())
-                                            : builder.toString());
+                    this.query(
+                            manager,
+                            ctx,
+                            () -> normalize(this.history.getHistory(info.id), limit),
+                            title.toString(),
+                            entry -> renderEntry(entry, false, false, true, 3));
                 })));
 
         this.withCommandManagers(manager -> manager.command(manager.commandBuilder("history")
@@ -121,37 +142,97 @@ public final class HistoryCommand implements NucleusListener {
                 .argument(IntegerArgument.<CommandSender>builder("y").withMin(0).withMax(Short.MAX_VALUE))
                 .argument(IntegerArgument.<CommandSender>builder("limit")
                         .withMin(1)
-                        .withMax(50)
+                        .withMax(MAX_LIMIT)
                         .asOptionalWithDefault(10))
                 .handler(ctx -> {
                     final int x = ctx.get("x");
                     final int y = ctx.get("y");
-                    final var entries = normalize(history.getHistory(x, y), ctx.get("limit"));
+                    final int limit = ctx.get("limit");
+                    final var uuid = this.canSeeUuid(ctx.getSender());
 
-                    if (entries.isEmpty()) {
-                        ctx.getSender().sendWarning("No history found.");
-                        return;
-                    }
+                    this.query(
+                            manager,
+                            ctx,
+                            () -> normalize(this.history.getHistory(x, y), limit),
+                            "[accent]History of tile [white](" + x + ", " + y + ")[]:",
+                            entry -> renderEntry(entry, true, uuid, false, 3));
+                })));
 
-                    final var builder = new StringBuilder("[accent]History of tile [white]")
-                            .append("(")
-                            .append(x)
-                            .append(", ")
-                            .append(y)
-                            .append(")[]:");
+        this.withCommandManagers(manager -> manager.command(manager.commandBuilder("history")
+                .literal("area")
+                .meta(CommandMeta.DESCRIPTION, "Show the history of an area over the last minutes.")
+                .argument(IntegerArgument.<CommandSender>builder("x").withMin(0).withMax(Short.MAX_VALUE))
+                .argument(IntegerArgument.<CommandSender>builder("y").withMin(0).withMax(Short.MAX_VALUE))
+                .argument(IntegerArgument.<CommandSender>builder("width").withMin(1).withMax(MAX_AREA_SIZE))
+                .argument(IntegerArgument.<CommandSender>builder("height").withMin(1).withMax(MAX_AREA_SIZE))
+                .argument(IntegerArgument.<CommandSender>builder("minutes")
+                        .withMin(1)
+                        .withMax(1440)
+                        .asOptionalWithDefault(5))
+                .argument(IntegerArgument.<CommandSender>builder("limit")
+                        .withMin(1)
+                        .withMax(MAX_LIMIT)
+                        .asOptionalWithDefault(10))
+                .handler(ctx -> {
+                    final int x = ctx.get("x");
+                    final int y = ctx.get("y");
+                    final int width = ctx.get("width");
+                    final int height = ctx.get("height");
+                    final int minutes = ctx.get("minutes");
+                    final int limit = ctx.get("limit");
+                    final var since = Instant.now().minus(minutes, ChronoUnit.MINUTES);
+                    final var uuid = this.canSeeUuid(ctx.getSender());
+
+                    this.query(
+                            manager,
+                            ctx,
+                            () -> normalize(this.history.getHistory(x, y, width, height, since), limit),
+                            "[accent]History of area [white](" + x + ", " + y + ") to (" + (x + width - 1) + ", "
+                                    + (y + height - 1) + ")[accent] in the last [white]" + minutes
+                                    + "[accent] minutes:",
+                            entry -> renderEntry(entry, true, uuid, true, 3));
+                })));
+    }
 
-                    for (final var entry : entries) {
-                        builder.append("\n[accent] > ")
-                                .append(renderEntry(entry, true, this.canSeeUuid(ctx.getSender()), false, 3));
+    // The query runs off the game thread, then the entries are rendered page by page, only when displayed
+    private void query(
+            final NucleusPluginCommandManager manager,
+            final CommandContext<CommandSender> ctx,
+            final Supplier<List<HistoryEntry>> query,
+            final String title,
+            final Function<HistoryEntry, String> renderer) {
+        manager.recipe(ctx)
+                .thenApplyAsync(result -> query.get())
+                .thenAccept(entries -> {
+                    if (entries.isEmpty()) {
+                        ctx.getSender().sendWarning("No history found.");
+                    } else if (ctx.getSender().isConsole()) {
+                        this.stream(ctx.getSender(), title, entries, renderer);
+                    } else {
+                        this.menu.open(
+                                ctx.getSender().getPlayer(),
+                                state -> state.set(HISTORY, new HistoryView(title, entries, renderer)));
                     }
+                })
+                .execute();
+    }
 
-                    // TODO I really need this Component API
-                    ctx.getSender()
-                            .sendMessage(
-                                    ctx.getSender().isConsole()
-                                            ? Strings.stripColors(builder.toString())
-                                            : builder.toString());
-                })));
+    private void stream(
+            final CommandSender sender,
+            final String title,
+            final List<HistoryEntry> entries,
+            final Function<HistoryEntry, String> renderer) {
+        sender.sendMessage(Strings.stripColors(title));
+        for (int i = 0; i < entries.size(); i += CONSOLE_CHUNK_SIZE) {
+            final var builder = new StringBuilder();
+            for (int j = i; j < Math.min(i + CONSOLE_CHUNK_SIZE, entries.size()); j++) {
+                if (j != i) {
+                    builder.append('\n');
+                }
+                builder.append(" > ").append(renderer.apply(entries.get(j)));
+            }
+            sender.sendMessage(Strings.stripColors(builder.toString()));
+        }
     }
 
     private String renderEntry(
@@ -286,17 +367,14 @@ public final class HistoryCommand implements NucleusListener {
     }
 
     private List<HistoryEntry> normalize(final List<HistoryEntry> entries, final int limit) {
-        // First we sort by timestamp from latest to earliest, then we take the first N elements,
-        // then we reverse the list so the latest entries are at the end
-        return entries.stream()
-                .sorted(Comparator.comparing(HistoryEntry::getTimestamp).reversed())
-                .limit(limit)
-                .sorted(Comparator.comparing(HistoryEntry::getTimestamp))
-                .toList();
+        // The history is already sorted from the oldest to the newest entry, the view avoids materializing it
+        return entries.subList(Math.max(0, entries.size() - limit), entries.size());
     }
 
     private String toHex(final java.awt.Color color) {
         // https://stackoverflow.com/a/3607942
         return String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
     }
+
+    private record HistoryView(String title, List<HistoryEntry> entries, Function<HistoryEntry, String> renderer) {}
 }
@@ -0,0 +1,50 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.commands;
+
+import cloud.commandframework.meta.CommandMeta;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.mindustry.annotation.ServerSide;
+import fr.xpdustry.nucleus.mindustry.command.NucleusPluginCommandManager;
+import fr.xpdustry.nucleus.mindustry.network.ConnectionRateLimiter;
+import javax.inject.Inject;
+
+public final class RateLimitCommand implements NucleusListener {
+
+    private final ConnectionRateLimiter limiter;
+    private final NucleusPluginCommandManager serverCommandManager;
+
+    @Inject
+    public RateLimitCommand(
+            final ConnectionRateLimiter limiter, final @ServerSide NucleusPluginCommandManager serverCommandManager) {
+        this.limiter = limiter;
+        this.serverCommandManager = serverCommandManager;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        this.serverCommandManager.command(this.serverCommandManager
+                .commandBuilder("ratelimit")
+                .literal("status")
+                .meta(CommandMeta.DESCRIPTION, "Show the connections shed by the rate limiter.")
+                .handler(ctx -> ctx.getSender()
+                        .sendMessage("Rate limiter: " + this.limiter.getShedCount() + " connections shed, "
+                                + this.limiter.getBlackholedCount() + " subnets blackholed since the start, "
+                                + this.limiter.getBlackholedSubnetCount() + " currently blackholed.")));
+    }
+}
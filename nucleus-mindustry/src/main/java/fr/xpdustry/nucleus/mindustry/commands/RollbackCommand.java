@@ -0,0 +1,181 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.commands;
+
+import arc.util.Strings;
+import cloud.commandframework.arguments.standard.IntegerArgument;
+import cloud.commandframework.context.CommandContext;
+import cloud.commandframework.meta.CommandMeta;
+import fr.xpdustry.distributor.api.command.argument.PlayerInfoArgument;
+import fr.xpdustry.distributor.api.command.sender.CommandSender;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.mindustry.annotation.ClientSide;
+import fr.xpdustry.nucleus.mindustry.annotation.ServerSide;
+import fr.xpdustry.nucleus.mindustry.command.NucleusPluginCommandManager;
+import fr.xpdustry.nucleus.mindustry.rollback.RollbackAction;
+import fr.xpdustry.nucleus.mindustry.rollback.RollbackPlan;
+import fr.xpdustry.nucleus.mindustry.rollback.RollbackService;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.function.Consumer;
+import javax.inject.Inject;
+import mindustry.net.Administration.PlayerInfo;
+
+public final class RollbackCommand implements NucleusListener {
+
+    private static final int MAX_AREA_SIZE = 100;
+    private static final int MAX_DISPLAYED_ACTIONS = 20;
+
+    private final RollbackService rollback;
+    private final NucleusPluginCommandManager clientCommandManager;
+    private final NucleusPluginCommandManager serverCommandManager;
+
+    @Inject
+    public RollbackCommand(
+            final RollbackService rollback,
+            final @ClientSide NucleusPluginCommandManager clientCommandManager,
+            final @ServerSide NucleusPluginCommandManager serverCommandManager) {
+        this.rollback = rollback;
+        this.clientCommandManager = clientCommandManager;
+        this.serverCommandManager = serverCommandManager;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        this.withCommandManagers(manager -> manager.command(manager.commandBuilder("rollback")
+                .literal("player")
+                .permission("nucleus.rollback")
+                .meta(CommandMeta.DESCRIPTION, "Revert the actions of a player.")
+                .argument(PlayerInfoArgument.of("player"))
+                .flag(manager.flagBuilder("dry-run"))
+                .handler(ctx -> {
+                    final PlayerInfo info = ctx.get("player");
+                    this.handle(ctx, this.rollback.planPlayerRollback(info.id));
+                })));
+
+        this.withCommandManagers(manager -> manager.command(manager.commandBuilder("rollback")
+                .literal("area")
+                .permission("nucleus.rollback")
+                .meta(CommandMeta.DESCRIPTION, "Revert the actions in an area over the last minutes.")
+                .argument(IntegerArgument.<CommandSender>builder("x").withMin(0).withMax(Short.MAX_VALUE))
+                .argument(IntegerArgument.<CommandSender>builder("y").withMin(0).withMax(Short.MAX_VALUE))
+                .argument(IntegerArgument.<CommandSender>builder("width").withMin(1).withMax(MAX_AREA_SIZE))
+                .argument(IntegerArgument.<CommandSender>builder("height").withMin(1).withMax(MAX_AREA_SIZE))
+                .argument(IntegerArgument.<CommandSender>builder("minutes").withMin(1).withMax(1440))
+                .flag(manager.flagBuilder("dry-run"))
+                .handler(ctx -> {
+                    final int x = ctx.get("x");
+                    final int y = ctx.get("y");
+                    final int width = ctx.get("width");
+                    final int height = ctx.get("height");
+                    final int minutes = ctx.get("minutes");
+                    final var since = Instant.now().minus(minutes, ChronoUnit.MINUTES);
+                    this.handle(ctx, this.rollback.planAreaRollback(x, y, width, height, since));
+                })));
+
+        this.withCommandManagers(manager -> manager.command(manager.commandBuilder("rollback")
+                .literal("status")
+                .permission("nucleus.rollback")
+                .meta(CommandMeta.DESCRIPTION, "Show the progress of the running rollback.")
+                .handler(ctx -> this.rollback
+                        .getCurrentTask()
+                        .ifPresentOrElse(
+                                task -> ctx.getSender()
+                                        .sendMessage("Rollback in progress: " + task.getProgress() + "/"
+                                                + task.getTotal() + " actions applied."),
+                                () -> ctx.getSender().sendWarning("No rollback in progress.")))));
+
+        this.withCommandManagers(manager -> manager.command(manager.commandBuilder("rollback")
+                .literal("cancel")
+                .permission("nucleus.rollback")
+                .meta(CommandMeta.DESCRIPTION, "Cancel the running rollback.")
+                .handler(ctx -> this.rollback
+                        .getCurrentTask()
+                        .ifPresentOrElse(
+                                task -> {
+                                    task.cancel();
+                                    ctx.getSender().sendMessage("Rollback cancelled.");
+                                },
+                                () -> ctx.getSender().sendWarning("No rollback in progress.")))));
+    }
+
+    private void handle(final CommandContext<CommandSender> ctx, final RollbackPlan plan) {
+        if (plan.getActions().isEmpty()) {
+            ctx.getSender().sendWarning("Nothing to rollback (" + plan.getSkipped() + " skipped).");
+            return;
+        }
+
+        if (ctx.flags().isPresent("dry-run")) {
+            final var builder = new StringBuilder("[accent]Rollback preview, [white]")
+                    .append(plan.getActions().size())
+                    .append("[accent] actions, [white]")
+                    .append(plan.getSkipped())
+                    .append("[accent] skipped:");
+            plan.getActions().stream()
+                    .limit(MAX_DISPLAYED_ACTIONS)
+                    .forEach(action -> builder.append("\n[accent] > ").append(renderAction(action)));
+            if (plan.getActions().size() > MAX_DISPLAYED_ACTIONS) {
+                builder.append("\n[accent] > [white]...and ")
+                        .append(plan.getActions().size() - MAX_DISPLAYED_ACTIONS)
+                        .append(" more");
+            }
+            this.send(ctx.getSender(), builder.toString());
+            return;
+        }
+
+        if (this.rollback.getCurrentTask().isPresent()) {
+            ctx.getSender().sendMessage("Another rollback is in progress, this one has been queued.");
+        }
+        this.rollback.execute(plan, task -> {
+            if (task.isDone()) {
+                ctx.getSender()
+                        .sendMessage((task.isCancelled() ? "Rollback cancelled after " : "Rollback done, ")
+                                + task.getProgress() + "/" + task.getTotal() + " actions applied.");
+            } else {
+                ctx.getSender()
+                        .sendMessage("Rollback progress: " + (task.getProgress() * 100 / task.getTotal()) + "%");
+            }
+        });
+    }
+
+    private String renderAction(final RollbackAction action) {
+        final var builder = new StringBuilder("[white]")
+                .append(Strings.capitalize(action.getType().name().toLowerCase(Locale.ROOT)))
+                .append(" [accent]")
+                .append(action.getBlock().name)
+                .append("[white] at [accent](")
+                .append(action.getX())
+                .append(", ")
+                .append(action.getY())
+                .append(")");
+        if (action.getType() == RollbackAction.Type.PLACE) {
+            builder.append("[white] for team [accent]").append(action.getTeam().name);
+        }
+        return builder.toString();
+    }
+
+    private void send(final CommandSender sender, final String message) {
+        sender.sendMessage(sender.isConsole() ? Strings.stripColors(message) : message);
+    }
+
+    private void withCommandManagers(final Consumer<NucleusPluginCommandManager> consumer) {
+        consumer.accept(this.clientCommandManager);
+        consumer.accept(this.serverCommandManager);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import arc.struct.IntMap;
+import arc.struct.IntSet;
+import arc.struct.ObjectIntMap;
+import arc.struct.Seq;
+import fr.xpdustry.nucleus.common.history.CompressedBlockCodec;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.Inflater;
+import mindustry.Vars;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Compressed tier of the history, it receives the entries evicted from the hot tier, either from the rings of the
+ * {@link TileHistoryStore} or from the player histories, each with its own store. The entries are grouped by region,
+ * and once a region has accumulated {@link #BLOCK_SIZE} entries, they are delta-encoded with varints,
+ * dictionary-coded and deflated in a block by the {@link CompressedBlockCodec}.
+ * <p>
+ * The blocks keep their time range and their authors uncompressed, so the queries only inflate the blocks that can
+ * contain what they are looking for. The configurations are not compressed, they are kept as references to the
+ * interned payloads.
+ */
+final class ColdHistoryStore {
+
+    private static final int REGION_SHIFT = 5;
+    private static final int BLOCK_SIZE = 256;
+
+    private final IntMap<Region> regions = new IntMap<>();
+    private final List<Region> regionList = new ArrayList<>();
+    private final Deque<ColdBlock> blocks = new ArrayDeque<>();
+    private final Seq<HistoryAuthor> authors = new Seq<>();
+    private final ObjectIntMap<HistoryAuthor> authorIndices = new ObjectIntMap<>();
+    private final CompressedBlockCodec.Encoder encoder = new CompressedBlockCodec.Encoder();
+    private final int blockLimit;
+    // Buildings are indexed by their origin, so the queried tile is extended by the largest building radius
+    private int margin = -1;
+
+    ColdHistoryStore(final int blockLimit) {
+        this.blockLimit = Math.max(blockLimit, 1);
+    }
+
+    void add(
+            final int build,
+            final byte type,
+            final short block,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {
+        final var key = Point2.pack(Point2.x(build) >> REGION_SHIFT, Point2.y(build) >> REGION_SHIFT);
+        var region = this.regions.get(key);
+        if (region == null) {
+            region = new Region();
+            this.regions.put(key, region);
+            this.regionList.add(region);
+        }
+
+        var index = this.authorIndices.get(author, -1);
+        if (index == -1) {
+            index = this.authors.size;
+            this.authors.add(author);
+            this.authorIndices.put(author, index);
+        }
+
+        final var size = region.size;
+        region.builds[size] = build;
+        region.timestamps[size] = timestamp;
+        region.types[size] = type;
+        region.blocks[size] = block;
+        region.authors[size] = index;
+        region.configurations[size] = configuration;
+        region.size++;
+
+        if (region.size == BLOCK_SIZE) {
+            this.seal(region);
+        }
+    }
+
+    /**
+     * Returns the last entries of a tile that happened before the given timestamp, from the oldest to the newest.
+     */
+    List<HistoryEntry> getHistory(final int x, final int y, final long before, final int limit) {
+        final var margin = this.getMargin();
+        final List<Region> candidates = new ArrayList<>();
+        for (int rx = Math.max(0, x - margin) >> REGION_SHIFT; rx <= (x + margin) >> REGION_SHIFT; rx++) {
+            for (int ry = Math.max(0, y - margin) >> REGION_SHIFT; ry <= (y + margin) >> REGION_SHIFT; ry++) {
+                final var region = this.regions.get(Point2.pack(rx, ry));
+                if (region != null) {
+                    candidates.add(region);
+                }
+            }
+        }
+        return this.query(
+                Point2.pack(x, y),
+                candidates,
+                before,
+                limit,
+                block -> true,
+                (build, block, author) -> TileHistoryStore.covers(build, block, x, y));
+    }
+
+    /**
+     * Returns the last entries of a player that happened before the given timestamp, from the oldest to the newest.
+     */
+    List<HistoryEntry> getHistory(final String uuid, final long before, final int limit) {
+        final var indices = new IntSet();
+        for (int i = 0; i < this.authors.size; i++) {
+            if (this.authors.get(i).getUuid().filter(uuid::equals).isPresent()) {
+                indices.add(i);
+            }
+        }
+        if (indices.isEmpty()) {
+            return List.of();
+        }
+
+        return this.query(
+                -1,
+                this.regionList,
+                before,
+                limit,
+                block -> Arrays.stream(block.authors).anyMatch(indices::contains),
+                (build, block, author) -> indices.contains(author));
+    }
+
+    void clear() {
+        this.regions.clear();
+        this.regionList.clear();
+        this.blocks.clear();
+        this.authors.clear();
+        this.authorIndices.clear();
+    }
+
+    private List<HistoryEntry> query(
+            final int position,
+            final List<Region> candidates,
+            final long before,
+            final int limit,
+            final BlockFilter blockFilter,
+            final EntryFilter entryFilter) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        final List<Match> matches = new ArrayList<>();
+        final List<ColdBlock> sealed = new ArrayList<>();
+        for (final var region : candidates) {
+            for (int i = 0; i < region.size; i++) {
+                if (region.timestamps[i] < before
+                        && entryFilter.test(region.builds[i], region.blocks[i], region.authors[i])) {
+                    matches.add(new Match(
+                            region.builds[i],
+                            region.timestamps[i],
+                            region.types[i],
+                            region.blocks[i],
+                            region.authors[i],
+                            region.configurations[i]));
+                }
+            }
+            for (final var block : region.sealed) {
+                if (block.minTimestamp < before && blockFilter.test(block)) {
+                    sealed.add(block);
+                }
+            }
+        }
+
+        // The newest blocks are inflated first, the others only when they can still contain one of the last entries
+        sealed.sort(Comparator.comparingLong((ColdBlock block) -> block.maxTimestamp).reversed());
+        final var inflater = new Inflater();
+        try {
+            var threshold = this.trim(matches, limit);
+            for (final var block : sealed) {
+                if (block.maxTimestamp <= threshold) {
+                    break;
+                }
+                this.inflate(block, inflater, before, entryFilter, matches);
+                threshold = this.trim(matches, limit);
+            }
+        } finally {
+            inflater.end();
+        }
+
+        matches.sort(Comparator.comparingLong(Match::timestamp));
+        final var snapshot = new HistorySnapshot(matches.size());
+        for (final var match : matches) {
+            snapshot.add(
+                    position == -1 ? match.build() : position,
+                    match.build(),
+                    match.type(),
+                    match.block(),
+                    this.authors.get(match.author()),
+                    match.timestamp(),
+                    match.configuration());
+        }
+        return snapshot;
+    }
+
+    // Keeps the newest matches, returns the timestamp an entry must exceed to be kept
+    private long trim(final List<Match> matches, final int limit) {
+        if (matches.size() < limit) {
+            return Long.MIN_VALUE;
+        }
+        matches.sort(Comparator.comparingLong(Match::timestamp).reversed());
+        matches.subList(limit, matches.size()).clear();
+        return matches.get(limit - 1).timestamp();
+    }
+
+    private void seal(final Region region) {
+        final var size = region.size;
+        final var authors = new IntSet();
+        final var blocks = new Seq<Short>();
+        var minTimestamp = Long.MAX_VALUE;
+        var maxTimestamp = Long.MIN_VALUE;
+        var configurations = 0;
+        for (int i = 0; i < size; i++) {
+            authors.add(region.authors[i]);
+            if (!blocks.contains(region.blocks[i])) {
+                blocks.add(region.blocks[i]);
+            }
+            minTimestamp = Math.min(minTimestamp, region.timestamps[i]);
+            maxTimestamp = Math.max(maxTimestamp, region.timestamps[i]);
+            if (region.configurations[i] != null) {
+                configurations++;
+            }
+        }
+
+        final var authorArray = new int[authors.size];
+        final var iterator = authors.iterator();
+        var cursor = 0;
+        while (iterator.hasNext) {
+            authorArray[cursor++] = iterator.next();
+        }
+        Arrays.sort(authorArray);
+
+        this.encoder.writeVarInt(blocks.size);
+        for (final var block : blocks) {
+            this.encoder.writeVarInt(block);
+        }
+
+        final var configurationIndices = new int[configurations];
+        final var configurationValues = new HistoryConfiguration[configurations];
+        var previousX = 0;
+        var previousY = 0;
+        var previousTimestamp = minTimestamp;
+        cursor = 0;
+        for (int i = 0; i < size; i++) {
+            final var x = Point2.x(region.builds[i]);
+            final var y = Point2.y(region.builds[i]);
+            this.encoder.writeSignedVarInt(x - previousX);
+            this.encoder.writeSignedVarInt(y - previousY);
+            this.encoder.writeSignedVarLong(region.timestamps[i] - previousTimestamp);
+            this.encoder.writeByte(region.types[i]);
+            this.encoder.writeVarInt(blocks.indexOf(region.blocks[i]));
+            this.encoder.writeVarInt(Arrays.binarySearch(authorArray, region.authors[i]));
+            previousX = x;
+            previousY = y;
+            previousTimestamp = region.timestamps[i];
+            if (region.configurations[i] != null) {
+                configurationIndices[cursor] = i;
+                configurationValues[cursor] = region.configurations[i];
+                cursor++;
+            }
+        }
+
+        final var block = new ColdBlock(
+                region,
+                size,
+                minTimestamp,
+                maxTimestamp,
+                authorArray,
+                this.encoder.finish(),
+                configurationIndices,
+                configurationValues);
+        region.sealed.add(block);
+        this.blocks.add(block);
+        Arrays.fill(region.configurations, null);
+        region.size = 0;
+
+        while (this.blocks.size() > this.blockLimit) {
+            final var oldest = this.blocks.poll();
+            oldest.region.sealed.remove(oldest);
+        }
+    }
+
+    private void inflate(
+            final ColdBlock block,
+            final Inflater inflater,
+            final long before,
+            final EntryFilter filter,
+            final List<Match> matches) {
+        final var input = CompressedBlockCodec.Decoder.inflate(block.data, inflater);
+        final var blocks = new short[input.readVarInt()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (short) input.readVarInt();
+        }
+
+        var x = 0;
+        var y = 0;
+        var timestamp = block.minTimestamp;
+        var configuration = 0;
+        for (int i = 0; i < block.size; i++) {
+            x += input.readSignedVarInt();
+            y += input.readSignedVarInt();
+            timestamp += input.readSignedVarLong();
+            final var type = input.readByte();
+            final var blockId = blocks[input.readVarInt()];
+            final var author = block.authors[input.readVarInt()];
+
+            @Nullable HistoryConfiguration value = null;
+            if (configuration < block.configurationIndices.length && block.configurationIndices[configuration] == i) {
+                value = block.configurationValues[configuration++];
+            }
+
+            final var build = Point2.pack(x, y);
+            if (timestamp < before && filter.test(build, blockId, author)) {
+                matches.add(new Match(build, timestamp, type, blockId, author, value));
+            }
+        }
+    }
+
+    private int getMargin() {
+        if (this.margin == -1) {
+            // Indexed loop, the shared iterator of the content list isn't safe to use off the game thread
+            final var blocks = Vars.content.blocks();
+            var size = 1;
+            for (int i = 0; i < blocks.size; i++) {
+                size = Math.max(size, blocks.get(i).size);
+            }
+            this.margin = size / 2;
+        }
+        return this.margin;
+    }
+
+    @FunctionalInterface
+    private interface BlockFilter {
+
+        boolean test(final ColdBlock block);
+    }
+
+    @FunctionalInterface
+    private interface EntryFilter {
+
+        boolean test(final int build, final short block, final int author);
+    }
+
+    private record Match(
+            int build,
+            long timestamp,
+            byte type,
+            short block,
+            int author,
+            @Nullable HistoryConfiguration configuration) {}
+
+    private static final class Region {
+
+        private final int[] builds = new int[BLOCK_SIZE];
+        private final long[] timestamps = new long[BLOCK_SIZE];
+        private final byte[] types = new byte[BLOCK_SIZE];
+        private final short[] blocks = new short[BLOCK_SIZE];
+        private final int[] authors = new int[BLOCK_SIZE];
+        private final @Nullable HistoryConfiguration[] configurations = new HistoryConfiguration[BLOCK_SIZE];
+        private final Deque<ColdBlock> sealed = new ArrayDeque<>();
+        private int size = 0;
+    }
+
+    private static final class ColdBlock {
+
+        private final Region region;
+        private final int size;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final int[] authors;
+        private final byte[] data;
+        private final int[] configurationIndices;
+        private final @Nullable HistoryConfiguration[] configurationValues;
+
+        private ColdBlock(
+                final Region region,
+                final int size,
+                final long minTimestamp,
+                final long maxTimestamp,
+                final int[] authors,
+                final byte[] data,
+                final int[] configurationIndices,
+                final HistoryConfiguration[] configurationValues) {
+            this.region = region;
+            this.size = size;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.authors = authors;
+            this.data = data;
+            this.configurationIndices = configurationIndices;
+            this.configurationValues = configurationValues;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.Core;
+import arc.math.geom.Point2;
+import fr.xpdustry.distributor.api.event.EventHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import fr.xpdustry.nucleus.mindustry.moderation.ModerationService;
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import mindustry.game.EventType;
+import mindustry.gen.Groups;
+import mindustry.world.Block;
+import mindustry.world.blocks.logic.LogicBlock;
+import mindustry.world.blocks.power.PowerNode;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects griefing patterns in the history of the players, with sliding windows backed by timestamp rings. The
+ * detector is fed by the history ingest thread, so it costs nothing on the main thread until an anomaly is found.
+ */
+public final class HistoryAnomalyDetector implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryAnomalyDetector.class);
+    // Deconstructing what was just built isn't griefing, the buildings of a player are remembered for a while
+    private static final int OWN_BUILD_LIMIT = 1024;
+    private static final long OWN_BUILD_DURATION = TimeUnit.MINUTES.toMillis(10L);
+
+    private final Map<String, PlayerWindows> players = new ConcurrentHashMap<>();
+    private final Set<String> online = ConcurrentHashMap.newKeySet();
+    private final NucleusPluginConfiguration configuration;
+    private final ModerationService moderation;
+    private final boolean enabled;
+
+    @Inject
+    public HistoryAnomalyDetector(final NucleusPluginConfiguration configuration, final ModerationService moderation) {
+        this.configuration = configuration;
+        this.moderation = moderation;
+        this.enabled = configuration.isHistoryAnomalyEnabled();
+    }
+
+    @EventHandler
+    public void onPlayerJoin(final EventType.PlayerJoin event) {
+        this.online.add(event.player.uuid());
+    }
+
+    @EventHandler
+    public void onPlayerLeave(final EventType.PlayerLeave event) {
+        this.online.remove(event.player.uuid());
+        this.players.remove(event.player.uuid());
+    }
+
+    /**
+     * Records an entry of a player, must be called from a single thread.
+     */
+    public void observe(
+            final String uuid,
+            final HistoryEntry.Type type,
+            final Block block,
+            final int x,
+            final int y,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {
+        if (!this.enabled) {
+            return;
+        }
+        final var windows = this.players.computeIfAbsent(uuid, key -> new PlayerWindows(this.configuration));
+        // The entries can be observed after the player left, checked after the windows are created so they can't
+        // outlive a player leaving in the meantime
+        if (!this.online.contains(uuid)) {
+            this.players.remove(uuid);
+            return;
+        }
+        final var position = Point2.pack(x, y);
+        final Anomaly anomaly;
+        if (type == HistoryEntry.Type.PLACE) {
+            windows.builds.remove(position);
+            windows.builds.put(position, timestamp);
+            return;
+        } else if (type == HistoryEntry.Type.BREAK) {
+            final var built = windows.builds.remove(position);
+            if (built != null && timestamp - built <= OWN_BUILD_DURATION) {
+                return;
+            }
+            anomaly = Anomaly.BREAKS;
+        } else if (type == HistoryEntry.Type.CONFIGURE
+                && block instanceof PowerNode
+                && configuration instanceof HistoryConfiguration.Link link
+                && link.getType() != HistoryConfiguration.Link.Type.CONNECT) {
+            anomaly = Anomaly.POWER_DISCONNECTS;
+        } else if (type == HistoryEntry.Type.CONFIGURE
+                && block instanceof LogicBlock
+                && configuration instanceof HistoryConfiguration.Text text
+                && text.getType() == HistoryConfiguration.Text.Type.CODE) {
+            anomaly = Anomaly.PROCESSOR_REWRITES;
+        } else {
+            return;
+        }
+
+        final var window = windows.windows[anomaly.ordinal()];
+        if (window.record(timestamp)) {
+            window.reset();
+            this.report(uuid, anomaly, window);
+        }
+    }
+
+    private void report(final String uuid, final Anomaly anomaly, final SlidingWindow window) {
+        Core.app.post(() -> {
+            final var player = Groups.player.find(p -> p.uuid().equals(uuid));
+            if (player == null) {
+                return;
+            }
+
+            final var reason = String.format(
+                    "%d %s in %d seconds",
+                    window.threshold,
+                    anomaly.description,
+                    TimeUnit.MILLISECONDS.toSeconds(window.duration));
+            logger.warn("Anomaly detected for {} ({}): {}", player.plainName(), uuid, reason);
+            Groups.player.each(
+                    p -> p.admin,
+                    p -> p.sendMessage("[scarlet]Anomaly detected for [white]" + player.name() + "[scarlet]: "
+                            + reason + "."));
+
+            if (this.configuration.isHistoryAnomalyPunishEnabled()) {
+                this.moderation
+                        .punish(null, player, Kind.KICK, "Automatic grief detection: " + reason)
+                        .exceptionally(throwable -> {
+                            logger.error("Failed to punish {} ({})", player.plainName(), uuid, throwable);
+                            return null;
+                        });
+            }
+        });
+    }
+
+    private enum Anomaly {
+        BREAKS("blocks broken"),
+        POWER_DISCONNECTS("power nodes disconnected"),
+        PROCESSOR_REWRITES("processors rewritten");
+
+        private final String description;
+
+        Anomaly(final String description) {
+            this.description = description;
+        }
+    }
+
+    private static final class PlayerWindows {
+
+        private final SlidingWindow[] windows = new SlidingWindow[Anomaly.values().length];
+        // Last buildings placed by the player, from the oldest to the newest
+        private final Map<Integer, Long> builds = new LinkedHashMap<>() {
+
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Long> eldest) {
+                return this.size() > OWN_BUILD_LIMIT;
+            }
+        };
+
+        private PlayerWindows(final NucleusPluginConfiguration configuration) {
+            this.windows[Anomaly.BREAKS.ordinal()] = new SlidingWindow(
+                    configuration.getHistoryAnomalyBreakThreshold(), configuration.getHistoryAnomalyBreakWindow());
+            this.windows[Anomaly.POWER_DISCONNECTS.ordinal()] = new SlidingWindow(
+                    configuration.getHistoryAnomalyPowerThreshold(), configuration.getHistoryAnomalyPowerWindow());
+            this.windows[Anomaly.PROCESSOR_REWRITES.ordinal()] = new SlidingWindow(
+                    configuration.getHistoryAnomalyProcessorThreshold(),
+                    configuration.getHistoryAnomalyProcessorWindow());
+        }
+    }
+
+    /**
+     * Keeps the timestamps of the last {@code threshold} events, the threshold is crossed when the oldest of them is
+     * still within the window.
+     */
+    private static final class SlidingWindow {
+
+        private final long[] timestamps;
+        private final int threshold;
+        private final long duration;
+        private int cursor = 0;
+
+        private SlidingWindow(final int threshold, final int seconds) {
+            // The current event is not stored, only the ones preceding it
+            this.timestamps = new long[Math.max(1, threshold - 1)];
+            this.threshold = this.timestamps.length + 1;
+            this.duration = TimeUnit.SECONDS.toMillis(seconds);
+        }
+
+        private boolean record(final long timestamp) {
+            final var oldest = this.timestamps[this.cursor];
+            this.timestamps[this.cursor] = timestamp;
+            this.cursor = (this.cursor + 1) % this.timestamps.length;
+            return oldest != 0L && timestamp - oldest <= this.duration;
+        }
+
+        private void reset() {
+            Arrays.fill(this.timestamps, 0L);
+            this.cursor = 0;
+        }
+    }
+}
@@ -167,7 +167,20 @@ public sealed interface HistoryConfiguration permits Content, Enable, Link, Text
     @FunctionalInterface
     interface Factory<B extends Building> {
 
+        /**
+         * Called on the ingestion worker with the value returned by {@link #capture}, it must not read the mutable
+         * state of the building.
+         */
         Optional<HistoryConfiguration> create(
                 final B building, final HistoryEntry.Type type, final @Nullable Object config);
+
+        /**
+         * Called on the game thread to copy the building state the configuration depends on before it changes again,
+         * the returned value is passed to {@link #create} in place of the config. It must stay cheap.
+         */
+        default @Nullable Object capture(
+                final B building, final HistoryEntry.Type type, final @Nullable Object config) {
+            return config;
+        }
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.util.io.Reads;
+import arc.util.io.Writes;
+import fr.xpdustry.nucleus.mindustry.util.ImmutablePoint;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import mindustry.Vars;
+import mindustry.ctype.ContentType;
+import mindustry.ctype.UnlockableContent;
+import mindustry.io.TypeIO;
+
+/**
+ * Binary codec of the {@link HistoryConfiguration}, used to store them in the history journal.
+ */
+final class HistoryConfigurationCodec {
+
+    private static final byte SIMPLE_EMPTY = 0;
+    private static final byte SIMPLE = 1;
+    private static final byte ENABLE = 2;
+    private static final byte CONTENT = 3;
+    private static final byte LINK = 4;
+    private static final byte COMPOSITE = 5;
+    private static final byte TEXT = 6;
+    private static final byte COLOR = 7;
+    private static final byte CANVAS = 8;
+
+    private static final HistoryConfiguration.Link.Type[] LINK_TYPES = HistoryConfiguration.Link.Type.values();
+    private static final HistoryConfiguration.Text.Type[] TEXT_TYPES = HistoryConfiguration.Text.Type.values();
+
+    private HistoryConfigurationCodec() {}
+
+    static void encode(final DataOutput output, final HistoryConfiguration configuration) throws IOException {
+        if (configuration instanceof HistoryConfiguration.Simple simple) {
+            if (simple.getValue().isEmpty()) {
+                output.writeByte(SIMPLE_EMPTY);
+            } else {
+                output.writeByte(SIMPLE);
+                TypeIO.writeObject(new Writes(output), simple.getValue().get());
+            }
+        } else if (configuration instanceof HistoryConfiguration.Enable enable) {
+            output.writeByte(ENABLE);
+            output.writeBoolean(enable.getValue());
+        } else if (configuration instanceof HistoryConfiguration.Content content) {
+            output.writeByte(CONTENT);
+            if (content.getValue().isEmpty()) {
+                output.writeByte(-1);
+            } else {
+                output.writeByte(content.getValue().get().getContentType().ordinal());
+                output.writeShort(content.getValue().get().id);
+            }
+        } else if (configuration instanceof HistoryConfiguration.Link link) {
+            output.writeByte(LINK);
+            output.writeByte(link.getType().ordinal());
+            output.writeInt(link.getPositions().size());
+            for (final var position : link.getPositions()) {
+                output.writeInt(position.getX());
+                output.writeInt(position.getY());
+            }
+        } else if (configuration instanceof HistoryConfiguration.Composite composite) {
+            output.writeByte(COMPOSITE);
+            output.writeInt(composite.getConfigurations().size());
+            for (final var child : composite.getConfigurations()) {
+                encode(output, child);
+            }
+        } else if (configuration instanceof HistoryConfiguration.Text text) {
+            output.writeByte(TEXT);
+            output.writeByte(text.getType().ordinal());
+            // Not writeUTF since logic code can go beyond its 64KB limit
+            final var bytes = text.getText().getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else if (configuration instanceof HistoryConfiguration.Color color) {
+            output.writeByte(COLOR);
+            output.writeInt(color.getColor().getRGB());
+        } else if (configuration instanceof HistoryConfiguration.Canvas canvas) {
+            output.writeByte(CANVAS);
+            final var bytes = canvas.getBytes().duplicate();
+            output.writeInt(bytes.remaining());
+            while (bytes.hasRemaining()) {
+                output.writeByte(bytes.get());
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown configuration: " + configuration);
+        }
+    }
+
+    static HistoryConfiguration decode(final DataInput input) throws IOException {
+        final var tag = input.readByte();
+        return switch (tag) {
+            case SIMPLE_EMPTY -> HistoryConfiguration.Simple.empty();
+            case SIMPLE -> {
+                final var value = TypeIO.readObject(new Reads(input));
+                yield value == null ? HistoryConfiguration.Simple.empty() : HistoryConfiguration.Simple.of(value);
+            }
+            case ENABLE -> HistoryConfiguration.Enable.of(input.readBoolean());
+            case CONTENT -> {
+                final var type = input.readByte();
+                if (type == -1) {
+                    yield HistoryConfiguration.Content.empty();
+                }
+                final var content = Vars.content.getByID(ContentType.all[type], input.readShort());
+                yield content instanceof UnlockableContent unlockable
+                        ? HistoryConfiguration.Content.of(unlockable)
+                        : HistoryConfiguration.Content.empty();
+            }
+            case LINK -> {
+                final var type = LINK_TYPES[input.readByte()];
+                final var size = input.readInt();
+                final var positions = new ArrayList<ImmutablePoint>(size);
+                for (int i = 0; i < size; i++) {
+                    positions.add(ImmutablePoint.of(input.readInt(), input.readInt()));
+                }
+                yield type == HistoryConfiguration.Link.Type.RESET
+                        ? HistoryConfiguration.Link.reset()
+                        : HistoryConfiguration.Link.of(positions, type == HistoryConfiguration.Link.Type.CONNECT);
+            }
+            case COMPOSITE -> {
+                final var size = input.readInt();
+                final var configurations = new ArrayList<HistoryConfiguration>(size);
+                for (int i = 0; i < size; i++) {
+                    configurations.add(decode(input));
+                }
+                yield HistoryConfiguration.Composite.of(configurations);
+            }
+            case TEXT -> {
+                final var type = TEXT_TYPES[input.readByte()];
+                final var bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                yield HistoryConfiguration.Text.of(new String(bytes, StandardCharsets.UTF_8), type);
+            }
+            case COLOR -> HistoryConfiguration.Color.of(new java.awt.Color(input.readInt(), true));
+            case CANVAS -> {
+                final var bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                yield HistoryConfiguration.Canvas.of(bytes);
+            }
+            default -> throw new IOException("Unknown configuration tag: " + tag);
+        };
+    }
+}
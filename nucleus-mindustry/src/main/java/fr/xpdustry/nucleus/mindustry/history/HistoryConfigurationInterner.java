@@ -0,0 +1,43 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.util.ArrayList;
+
+/**
+ * Content-addressed pool of configurations, so identical payloads such as the code of copied processors or the
+ * content of canvases are only stored once. The pool is weak, the payloads are collected with their last entry.
+ */
+final class HistoryConfigurationInterner {
+
+    private final Interner<HistoryConfiguration> configurations = Interners.newWeakInterner();
+
+    HistoryConfiguration intern(final HistoryConfiguration configuration) {
+        if (configuration instanceof HistoryConfiguration.Composite composite) {
+            // The components are interned first, so processors that only differ by their links still share the code
+            final var components = new ArrayList<HistoryConfiguration>(composite.getConfigurations().size());
+            for (final var component : composite.getConfigurations()) {
+                components.add(this.configurations.intern(component));
+            }
+            return this.configurations.intern(HistoryConfiguration.Composite.of(components));
+        }
+        return this.configurations.intern(configuration);
+    }
+}
@@ -49,6 +49,11 @@ public interface HistoryEntry {
 
     Type getType();
 
+    @Value.Default
+    default int getRotation() {
+        return 0;
+    }
+
     @Value.Default
     default boolean isVirtual() {
         return false;
@@ -82,6 +87,8 @@ public interface HistoryEntry {
 
         Builder setType(final Type type);
 
+        Builder setRotation(final int rotation);
+
         HistoryEntry build();
     }
 
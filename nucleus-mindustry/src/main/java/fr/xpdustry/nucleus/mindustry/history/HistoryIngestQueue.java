@@ -0,0 +1,204 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import mindustry.gen.Building;
+import mindustry.world.Block;
+import mindustry.world.blocks.logic.LogicBlock;
+import mindustry.world.blocks.power.PowerNode;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A bounded, lock-free queue of raw history events, filled by the game thread and drained by the ingestion worker.
+ * The producer never blocks, when the queue is full the {@link HistoryOverflowPolicy} decides what is discarded.
+ */
+final class HistoryIngestQueue {
+
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final Map<Building, Event> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final AtomicLong coalesced = new AtomicLong(0L);
+    private final int capacity;
+    private final HistoryOverflowPolicy policy;
+
+    HistoryIngestQueue(final int capacity, final HistoryOverflowPolicy policy) {
+        this.capacity = Math.max(capacity, 1);
+        this.policy = policy;
+    }
+
+    void offer(final Event event) {
+        if (this.size.get() >= this.capacity) {
+            switch (this.policy) {
+                case DROP_NEWEST -> {
+                    this.dropped.incrementAndGet();
+                    return;
+                }
+                case DROP_OLDEST -> {
+                    if (this.poll() != null) {
+                        this.dropped.incrementAndGet();
+                    }
+                }
+                case COALESCE -> {
+                    if (this.coalesce(event)) {
+                        this.coalesced.incrementAndGet();
+                    } else {
+                        this.dropped.incrementAndGet();
+                    }
+                    return;
+                }
+            }
+        }
+
+        if (this.policy == HistoryOverflowPolicy.COALESCE && event.type == HistoryEntry.Type.CONFIGURE) {
+            if (event.isValueConfiguration()) {
+                this.pending.put(event.building, event);
+            } else {
+                // A later value can't be merged before this toggle without changing the outcome
+                this.pending.remove(event.building);
+            }
+        }
+        this.size.incrementAndGet();
+        this.queue.add(event);
+    }
+
+    @Nullable Event poll() {
+        final var event = this.queue.poll();
+        if (event == null) {
+            return null;
+        }
+        this.size.decrementAndGet();
+        event.claim();
+        this.pending.remove(event.building, event);
+        return event;
+    }
+
+    boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    long getCoalescedCount() {
+        return this.coalesced.get();
+    }
+
+    private boolean coalesce(final Event event) {
+        if (event.type != HistoryEntry.Type.CONFIGURE || !event.isValueConfiguration()) {
+            return false;
+        }
+        final var previous = this.pending.get(event.building);
+        return previous != null && previous.merge(event);
+    }
+
+    static final class Event {
+
+        private final Building building;
+        private final Block block;
+        private final HistoryEntry.Type type;
+        private final int rotation;
+        private final long generation;
+        private HistoryAuthor author;
+        private @Nullable Object config;
+        private long timestamp;
+        private boolean claimed = false;
+
+        Event(
+                final Building building,
+                final Block block,
+                final HistoryAuthor author,
+                final HistoryEntry.Type type,
+                final @Nullable Object config,
+                final long generation) {
+            this.building = building;
+            this.block = block;
+            this.author = author;
+            this.type = type;
+            // Rebuilding a block in a rollback needs its rotation
+            this.rotation = building.rotation;
+            this.config = config;
+            this.generation = generation;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        Building getBuilding() {
+            return this.building;
+        }
+
+        Block getBlock() {
+            return this.block;
+        }
+
+        HistoryEntry.Type getType() {
+            return this.type;
+        }
+
+        int getRotation() {
+            return this.rotation;
+        }
+
+        long getGeneration() {
+            return this.generation;
+        }
+
+        synchronized HistoryAuthor getAuthor() {
+            return this.author;
+        }
+
+        synchronized @Nullable Object getConfig() {
+            return this.config;
+        }
+
+        synchronized long getTimestamp() {
+            return this.timestamp;
+        }
+
+        /**
+         * Returns whether the configuration replaces the state of the building. A link toggle of a power node or a
+         * logic processor depends on the links before it, so it can't be merged into another configuration.
+         */
+        private boolean isValueConfiguration() {
+            return !((this.block instanceof PowerNode || this.block instanceof LogicBlock)
+                    && (this.config instanceof Integer || this.config instanceof Point2));
+        }
+
+        private synchronized void claim() {
+            this.claimed = true;
+        }
+
+        // Fails if the worker already took the event, in which case the newer one can't be merged anymore
+        private synchronized boolean merge(final Event event) {
+            if (this.claimed || this.block != event.block) {
+                return false;
+            }
+            this.author = event.author;
+            this.config = event.config;
+            this.timestamp = event.timestamp;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import arc.struct.IntSet;
+import arc.struct.ObjectIntMap;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Stream;
+import mindustry.Vars;
+import mindustry.game.Team;
+import mindustry.world.Block;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Append-only history journal, stored on disk so the history survives map reloads, restarts and crashes.
+ * <p>
+ * Each session (a map being played) gets its own directory, split in segments of fixed-width records. The records
+ * are written through a memory-mapped file, so they reach the page cache immediately. The variable-length parts are
+ * stored on the side: the configurations in a payload file and the player uuids in a dictionary per session.
+ * <p>
+ * Every {@link #INDEX_BLOCK_SIZE} records, the chunks and authors they touch are written to a sparse index, which lets
+ * the queries skip most of the records of a segment without reading them.
+ */
+final class HistoryJournal implements Closeable {
+
+    private static final int MAGIC = 0x4E48534A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int RECORD_SIZE = 32;
+    private static final int INDEX_BLOCK_SIZE = 1024;
+    private static final int CHUNK_SHIFT = 4;
+    private static final int NO_AUTHOR = -1;
+    private static final int NO_POSITION = -1;
+    private static final int ANY_CHUNK = -1;
+    private static final long NO_PAYLOAD = -1L;
+
+    private static final String SESSION_FILE = "session.properties";
+    private static final String AUTHORS_FILE = "authors.txt";
+    private static final String RECORDS_EXTENSION = ".records";
+    private static final String PAYLOAD_EXTENSION = ".payload";
+    private static final String INDEX_EXTENSION = ".index";
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final int retention;
+    private @Nullable SessionWriter writer = null;
+
+    HistoryJournal(final Path directory, final int segmentCapacity, final int retention) {
+        this.directory = directory;
+        this.segmentCapacity = Math.max(segmentCapacity, INDEX_BLOCK_SIZE);
+        this.retention = Math.max(retention, 1);
+    }
+
+    HistorySession startSession(final String map, final long timestamp) throws IOException {
+        this.close();
+        Files.createDirectories(this.directory);
+
+        final var sessions = this.getSessions();
+        final var identifier = sessions.isEmpty() ? 0L : sessions.get(sessions.size() - 1).getIdentifier() + 1L;
+        final var session = HistorySession.of(identifier, map, Instant.ofEpochMilli(timestamp));
+        this.writer = new SessionWriter(session, this.getSessionDirectory(identifier));
+
+        // Sessions are sorted from the oldest to the newest
+        for (int i = 0; i < sessions.size() + 1 - this.retention; i++) {
+            this.delete(this.getSessionDirectory(sessions.get(i).getIdentifier()));
+        }
+
+        return session;
+    }
+
+    Optional<HistorySession> getCurrentSession() {
+        return Optional.ofNullable(this.writer).map(writer -> writer.session);
+    }
+
+    void append(
+            final int buildX,
+            final int buildY,
+            final HistoryEntry.Type type,
+            final Block block,
+            final int rotation,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp)
+            throws IOException {
+        if (this.writer != null) {
+            this.writer.append(buildX, buildY, type, block, rotation, author, configuration, timestamp);
+        }
+    }
+
+    List<HistorySession> getSessions() throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return List.of();
+        }
+        final List<HistorySession> sessions = new ArrayList<>();
+        try (final Stream<Path> stream = Files.list(this.directory)) {
+            for (final var path : (Iterable<Path>) stream::iterator) {
+                final var file = path.resolve(SESSION_FILE);
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                final var properties = new Properties();
+                try (final var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                sessions.add(HistorySession.of(
+                        Long.parseLong(path.getFileName().toString()),
+                        properties.getProperty("map", "unknown"),
+                        Instant.ofEpochMilli(Long.parseLong(properties.getProperty("start", "0")))));
+            }
+        }
+        sessions.sort(Comparator.comparingLong(HistorySession::getIdentifier));
+        return sessions;
+    }
+
+    List<HistoryEntry> getHistory(final HistorySession session, final int x, final int y, final int limit)
+            throws IOException {
+        final var position = Point2.pack(x, y);
+        final var chunk = Point2.pack(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        return this.query(session, limit, position, chunk, NO_AUTHOR, (build, block, author) ->
+                TileHistoryStore.covers(build, block, x, y));
+    }
+
+    List<HistoryEntry> getHistory(final HistorySession session, final String uuid, final int limit)
+            throws IOException {
+        final var target = this.readAuthors(this.getSessionDirectory(session.getIdentifier())).indexOf(uuid);
+        if (target == NO_AUTHOR) {
+            return List.of();
+        }
+        return this.query(
+                session, limit, NO_POSITION, ANY_CHUNK, target, (build, block, author) -> author == target);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+
+    private List<HistoryEntry> query(
+            final HistorySession session,
+            final int limit,
+            final int position,
+            final int chunk,
+            final int author,
+            final RecordFilter filter)
+            throws IOException {
+        final var directory = this.getSessionDirectory(session.getIdentifier());
+        if (!Files.isDirectory(directory) || limit <= 0) {
+            return List.of();
+        }
+
+        final var authors = this.readAuthors(directory);
+        final var readers = new ArrayList<SegmentReader>();
+        // Ring of the last matches, segment in the high bits and record in the low bits
+        final var matches = new long[limit];
+        var head = 0;
+        var size = 0;
+
+        try {
+            for (int segment = 0; ; segment++) {
+                final var path = directory.resolve(segment + RECORDS_EXTENSION);
+                if (!Files.isRegularFile(path)) {
+                    break;
+                }
+                final var reader = new SegmentReader(directory, segment);
+                readers.add(reader);
+
+                for (int start = 0; start < reader.count; start += INDEX_BLOCK_SIZE) {
+                    if (!reader.mayContain(start / INDEX_BLOCK_SIZE, chunk, author)) {
+                        continue;
+                    }
+                    final var end = Math.min(start + INDEX_BLOCK_SIZE, reader.count);
+                    for (int record = start; record < end; record++) {
+                        final var offset = HEADER_SIZE + (record * RECORD_SIZE);
+                        if (filter.test(
+                                reader.records.getInt(offset),
+                                reader.records.getShort(offset + 12),
+                                reader.records.getInt(offset + 20))) {
+                            matches[(head + size) % limit] = ((long) segment << 32) | record;
+                            if (size < limit) {
+                                size++;
+                            } else {
+                                head = (head + 1) % limit;
+                            }
+                        }
+                    }
+                }
+            }
+
+            final var snapshot = new HistorySnapshot(size);
+            for (int i = 0; i < size; i++) {
+                final var match = matches[(head + i) % limit];
+                final var reader = readers.get((int) (match >>> 32));
+                final var offset = HEADER_SIZE + ((int) match * RECORD_SIZE);
+                final var build = reader.records.getInt(offset);
+                final var index = reader.records.getInt(offset + 20);
+                // The segments written before the rotation was recorded have zeros there, so the blocks face east
+                final var type = HistorySnapshot.packType(
+                        reader.records.get(offset + 16), reader.records.getShort(offset + 18));
+                snapshot.add(
+                        position == NO_POSITION ? build : position,
+                        build,
+                        type,
+                        reader.records.getShort(offset + 12),
+                        ImmutableHistoryAuthor.of(
+                                index == NO_AUTHOR ? Optional.empty() : Optional.of(authors.get(index)),
+                                Team.get(reader.records.get(offset + 17) & 0xFF),
+                                Vars.content.unit(reader.records.getShort(offset + 14))),
+                        reader.records.getLong(offset + 4),
+                        reader.readPayload(reader.records.getLong(offset + 24)));
+            }
+            return snapshot;
+        } finally {
+            for (final var reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private List<String> readAuthors(final Path directory) throws IOException {
+        final var file = directory.resolve(AUTHORS_FILE);
+        return Files.isRegularFile(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : List.of();
+    }
+
+    private Path getSessionDirectory(final long identifier) {
+        return this.directory.resolve(Long.toString(identifier));
+    }
+
+    private void delete(final Path directory) throws IOException {
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            for (final var path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static int[] toSortedArray(final IntSet set) {
+        final var values = new int[set.size];
+        final var iterator = set.iterator();
+        var i = 0;
+        while (iterator.hasNext) {
+            values[i++] = iterator.next();
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    @FunctionalInterface
+    private interface RecordFilter {
+
+        boolean test(final int build, final short block, final int author);
+    }
+
+    private final class SessionWriter implements Closeable {
+
+        private final HistorySession session;
+        private final Path directory;
+        private final ObjectIntMap<String> authors = new ObjectIntMap<>();
+        private final BufferedWriter authorsOutput;
+        private final IntSet blockChunks = new IntSet();
+        private final IntSet blockAuthors = new IntSet();
+        private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+        private int identifier = -1;
+        private @Nullable Segment segment = null;
+
+        private SessionWriter(final HistorySession session, final Path directory) throws IOException {
+            this.session = session;
+            this.directory = Files.createDirectories(directory);
+
+            final var properties = new Properties();
+            properties.setProperty("map", session.getMap());
+            properties.setProperty("start", Long.toString(session.getStart().toEpochMilli()));
+            try (final var writer = Files.newBufferedWriter(directory.resolve(SESSION_FILE), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+
+            this.authorsOutput = Files.newBufferedWriter(
+                    directory.resolve(AUTHORS_FILE),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+
+        private void append(
+                final int buildX,
+                final int buildY,
+                final HistoryEntry.Type type,
+                final Block block,
+                final int rotation,
+                final HistoryAuthor author,
+                final @Nullable HistoryConfiguration configuration,
+                final long timestamp)
+                throws IOException {
+            var segment = this.segment;
+            if (segment == null || segment.count == HistoryJournal.this.segmentCapacity) {
+                segment = this.rotate();
+            }
+
+            final var authorIndex = author.getUuid().isPresent() ? this.getAuthorIndex(author.getUuid().get()) : -1;
+            final var payloadOffset = configuration == null ? NO_PAYLOAD : this.writePayload(segment, configuration);
+
+            final var offset = HEADER_SIZE + (segment.count * RECORD_SIZE);
+            final var records = segment.records;
+            records.putInt(offset, Point2.pack(buildX, buildY));
+            records.putLong(offset + 4, timestamp);
+            records.putShort(offset + 12, block.id);
+            records.putShort(offset + 14, author.getUnit().id);
+            records.put(offset + 16, (byte) type.ordinal());
+            records.put(offset + 17, (byte) author.getTeam().id);
+            records.putShort(offset + 18, (short) rotation);
+            records.putInt(offset + 20, authorIndex);
+            records.putLong(offset + 24, payloadOffset);
+            // The count is updated last, so a crash can't expose a partially written record
+            records.putInt(COUNT_OFFSET, ++segment.count);
+
+            final var offsetXY = -(block.size - 1) / 2;
+            final var minX = (buildX + offsetXY) >> CHUNK_SHIFT;
+            final var minY = (buildY + offsetXY) >> CHUNK_SHIFT;
+            final var maxX = (buildX + offsetXY + block.size - 1) >> CHUNK_SHIFT;
+            final var maxY = (buildY + offsetXY + block.size - 1) >> CHUNK_SHIFT;
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    this.blockChunks.add(Point2.pack(x, y));
+                }
+            }
+            if (authorIndex != NO_AUTHOR) {
+                this.blockAuthors.add(authorIndex);
+            }
+
+            if (segment.count % INDEX_BLOCK_SIZE == 0) {
+                this.writeIndexBlock(segment);
+            }
+        }
+
+        private int getAuthorIndex(final String uuid) throws IOException {
+            var index = this.authors.get(uuid, NO_AUTHOR);
+            if (index == NO_AUTHOR) {
+                index = this.authors.size;
+                this.authors.put(uuid, index);
+                this.authorsOutput.write(uuid);
+                this.authorsOutput.newLine();
+                this.authorsOutput.flush();
+            }
+            return index;
+        }
+
+        private long writePayload(final Segment segment, final HistoryConfiguration configuration) throws IOException {
+            this.payloadBuffer.reset();
+            final var output = new DataOutputStream(this.payloadBuffer);
+            output.writeInt(0);
+            HistoryConfigurationCodec.encode(output, configuration);
+
+            final var buffer = ByteBuffer.wrap(this.payloadBuffer.toByteArray());
+            buffer.putInt(0, buffer.remaining() - Integer.BYTES);
+            final var position = segment.payloadPosition;
+            while (buffer.hasRemaining()) {
+                segment.payloadPosition += segment.payload.write(buffer);
+            }
+            return position;
+        }
+
+        private void writeIndexBlock(final Segment segment) throws IOException {
+            final var chunks = toSortedArray(this.blockChunks);
+            final var authors = toSortedArray(this.blockAuthors);
+
+            final var buffer = ByteBuffer.allocate((2 + chunks.length + authors.length) * Integer.BYTES);
+            buffer.putInt(chunks.length);
+            for (final var chunk : chunks) {
+                buffer.putInt(chunk);
+            }
+            buffer.putInt(authors.length);
+            for (final var author : authors) {
+                buffer.putInt(author);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                segment.index.write(buffer);
+            }
+
+            this.blockChunks.clear();
+            this.blockAuthors.clear();
+        }
+
+        private Segment rotate() throws IOException {
+            this.closeSegment();
+            this.identifier++;
+            final var segment = new Segment(this.directory, this.identifier, HistoryJournal.this.segmentCapacity);
+            this.segment = segment;
+            return segment;
+        }
+
+        private void closeSegment() throws IOException {
+            final var segment = this.segment;
+            if (segment == null) {
+                return;
+            }
+            this.segment = null;
+            try {
+                // Seals the last block, so the readers don't have to scan it
+                if (segment.count % INDEX_BLOCK_SIZE != 0) {
+                    this.writeIndexBlock(segment);
+                }
+            } finally {
+                segment.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.closeSegment();
+            } finally {
+                this.authorsOutput.close();
+            }
+        }
+    }
+
+    // The files of the segment being written, opened together so the writer only has one state to check
+    private static final class Segment implements Closeable {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer records;
+        private final FileChannel payload;
+        private final FileChannel index;
+        private int count = 0;
+        private long payloadPosition = 0L;
+
+        private Segment(final Path directory, final int segment, final int capacity) throws IOException {
+            this.channel = FileChannel.open(
+                    directory.resolve(segment + RECORDS_EXTENSION),
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                this.records = this.channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long) capacity * RECORD_SIZE));
+                this.records.putInt(0, MAGIC);
+                this.records.putInt(4, VERSION);
+                this.records.putInt(COUNT_OFFSET, 0);
+                this.payload = FileChannel.open(
+                        directory.resolve(segment + PAYLOAD_EXTENSION),
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+            } catch (final IOException exception) {
+                this.channel.close();
+                throw exception;
+            }
+            try {
+                this.index = FileChannel.open(
+                        directory.resolve(segment + INDEX_EXTENSION),
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+            } catch (final IOException exception) {
+                this.channel.close();
+                this.payload.close();
+                throw exception;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.records.force();
+            } finally {
+                this.channel.close();
+                this.payload.close();
+                this.index.close();
+            }
+        }
+    }
+
+    private static final class SegmentReader implements Closeable {
+
+        private final FileChannel channel;
+        private final FileChannel payload;
+        private final MappedByteBuffer records;
+        private final int count;
+        private final List<int[]> chunks = new ArrayList<>();
+        private final List<int[]> authors = new ArrayList<>();
+
+        private SegmentReader(final Path directory, final int segment) throws IOException {
+            this.channel = FileChannel.open(directory.resolve(segment + RECORDS_EXTENSION), StandardOpenOption.READ);
+            this.payload = FileChannel.open(directory.resolve(segment + PAYLOAD_EXTENSION), StandardOpenOption.READ);
+            this.records = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+            if (this.records.getInt(0) != MAGIC || this.records.getInt(4) != VERSION) {
+                this.close();
+                throw new IOException("Invalid history segment " + segment + " in " + directory);
+            }
+            this.count = this.records.getInt(COUNT_OFFSET);
+
+            // A crash can leave the last block unindexed, it will be scanned like the others
+            final var index = directory.resolve(segment + INDEX_EXTENSION);
+            if (Files.isRegularFile(index)) {
+                try (final var input = new DataInputStream(Files.newInputStream(index))) {
+                    while (true) {
+                        final var chunks = this.readInts(input);
+                        final var authors = this.readInts(input);
+                        if (chunks == null || authors == null) {
+                            break;
+                        }
+                        this.chunks.add(chunks);
+                        this.authors.add(authors);
+                    }
+                }
+            }
+        }
+
+        private boolean mayContain(final int block, final int chunk, final int author) {
+            if (block >= this.chunks.size()) {
+                return true;
+            }
+            return (chunk == ANY_CHUNK || Arrays.binarySearch(this.chunks.get(block), chunk) >= 0)
+                    && (author == NO_AUTHOR || Arrays.binarySearch(this.authors.get(block), author) >= 0);
+        }
+
+        private @Nullable HistoryConfiguration readPayload(final long position) throws IOException {
+            if (position == NO_PAYLOAD) {
+                return null;
+            }
+            final var length = ByteBuffer.allocate(Integer.BYTES);
+            this.readFully(length, position);
+            final var bytes = ByteBuffer.allocate(length.getInt(0));
+            this.readFully(bytes, position + Integer.BYTES);
+            return HistoryConfigurationCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes.array())));
+        }
+
+        private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (this.payload.read(buffer, position + buffer.position()) == -1) {
+                    throw new EOFException("Truncated history payload at " + position);
+                }
+            }
+        }
+
+        private int @Nullable [] readInts(final DataInputStream input) throws IOException {
+            final int length;
+            try {
+                length = input.readInt();
+            } catch (final EOFException exception) {
+                return null;
+            }
+            final var values = new int[length];
+            try {
+                for (int i = 0; i < length; i++) {
+                    values[i] = input.readInt();
+                }
+            } catch (final EOFException exception) {
+                return null;
+            }
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+            this.payload.close();
+        }
+    }
+}
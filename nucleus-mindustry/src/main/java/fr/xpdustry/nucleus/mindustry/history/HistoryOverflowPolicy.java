@@ -0,0 +1,30 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+public enum HistoryOverflowPolicy {
+    /** Discards the incoming event. */
+    DROP_NEWEST,
+    /** Discards the oldest pending event to make room for the incoming one. */
+    DROP_OLDEST,
+    /**
+     * Merges an incoming configuration into the pending one of the same building, otherwise discards it. Link toggles
+     * are never merged since they depend on the previous links.
+     */
+    COALESCE
+}
@@ -0,0 +1,124 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.history.HistoryBatchCodec;
+import fr.xpdustry.nucleus.common.history.HistoryBatchMessage;
+import fr.xpdustry.nucleus.common.history.ReplicatedHistoryEntry;
+import fr.xpdustry.nucleus.common.message.MessageService;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import mindustry.world.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replicates the player history of this server to the rest of the network. The entries are buffered, then published
+ * in batches, no more than the configured amount of batches per minute.
+ */
+public final class HistoryReplicator implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryReplicator.class);
+
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final NucleusPluginConfiguration configuration;
+    private final MessageService messageService;
+    private final BlockingQueue<ReplicatedHistoryEntry> buffer;
+    private final boolean enabled;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    @Inject
+    public HistoryReplicator(final NucleusPluginConfiguration configuration, final MessageService messageService) {
+        this.configuration = configuration;
+        this.messageService = messageService;
+        this.enabled = configuration.isHistoryReplicationEnabled();
+        this.buffer = new ArrayBlockingQueue<>(configuration.getHistoryReplicationBufferCapacity());
+        this.tokens = configuration.getHistoryReplicationRateLimit();
+    }
+
+    public void offer(
+            final String uuid,
+            final HistoryEntry.Type type,
+            final Block block,
+            final int x,
+            final int y,
+            final long timestamp) {
+        if (!this.enabled) {
+            return;
+        }
+        // The intermediate construction states are not worth the bandwidth
+        final var replicated =
+                switch (type) {
+                    case PLACE -> ReplicatedHistoryEntry.Type.PLACE;
+                    case BREAK -> ReplicatedHistoryEntry.Type.BREAK;
+                    case CONFIGURE -> ReplicatedHistoryEntry.Type.CONFIGURE;
+                    case PLACING, BREAKING -> null;
+                };
+        if (replicated == null) {
+            return;
+        }
+        final var entry = ReplicatedHistoryEntry.of(
+                this.configuration.getServerName(),
+                uuid,
+                replicated,
+                block.name,
+                x,
+                y,
+                Instant.ofEpochMilli(timestamp));
+        if (!this.buffer.offer(entry)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    @TaskHandler(interval = 5L, unit = MindustryTimeUnit.SECONDS, async = true)
+    public synchronized void onReplicationFlush() {
+        if (!this.enabled || !this.messageService.isOperational()) {
+            return;
+        }
+
+        final var now = System.nanoTime();
+        final var limit = this.configuration.getHistoryReplicationRateLimit();
+        this.tokens = Math.min(
+                limit, this.tokens + (limit * (double) (now - this.lastRefill) / TimeUnit.MINUTES.toNanos(1L)));
+        this.lastRefill = now;
+
+        final var batch = new ArrayList<ReplicatedHistoryEntry>();
+        while (this.tokens >= 1D && !this.buffer.isEmpty()) {
+            this.buffer.drainTo(batch, this.configuration.getHistoryReplicationBatchSize());
+            this.messageService.publish(HistoryBatchMessage.of(
+                    this.configuration.getServerName(), batch.size(), HistoryBatchCodec.encode(batch)));
+            this.tokens -= 1D;
+            batch.clear();
+        }
+
+        final var count = this.dropped.getAndSet(0L);
+        if (count > 0) {
+            logger.warn("Dropped {} history entries, the replication buffer is full", count);
+        }
+    }
+}
@@ -17,7 +17,9 @@
  */
 package fr.xpdustry.nucleus.mindustry.history;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import mindustry.gen.Building;
 import mindustry.gen.Player;
 import mindustry.world.Tile;
@@ -38,4 +40,21 @@ public interface HistoryService {
     default List<HistoryEntry> getHistory(final Tile tile) {
         return this.getHistory(tile.x, tile.y);
     }
+
+    /**
+     * Returns the entries of the buildings overlapping the given region, that happened after {@code since}, sorted
+     * from the oldest to the newest.
+     */
+    List<HistoryEntry> getHistory(final int x, final int y, final int width, final int height, final Instant since);
+
+    /**
+     * Returns the sessions stored in the history journal, from the oldest to the newest.
+     */
+    List<HistorySession> getSessions();
+
+    Optional<HistorySession> getCurrentSession();
+
+    List<HistoryEntry> getHistory(final HistorySession session, final String uuid);
+
+    List<HistoryEntry> getHistory(final HistorySession session, final int x, final int y);
 }
@@ -0,0 +1,129 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import mindustry.Vars;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A read-only list of history entries backed by primitive columns. The entries are only materialized when accessed,
+ * which keeps queries cheap when the caller only needs a few of them.
+ */
+final class HistorySnapshot extends AbstractList<HistoryEntry> implements RandomAccess {
+
+    private static final HistoryEntry.Type[] TYPES = HistoryEntry.Type.values();
+
+    private int size = 0;
+    private int[] positions;
+    private int[] builds;
+    private byte[] types;
+    private short[] blocks;
+    private HistoryAuthor[] authors;
+    private long[] timestamps;
+    private @Nullable HistoryConfiguration[] configurations;
+    private @Nullable HistoryEntry[] entries;
+
+    HistorySnapshot(final int capacity) {
+        final var initial = Math.max(capacity, 1);
+        this.positions = new int[initial];
+        this.builds = new int[initial];
+        this.types = new byte[initial];
+        this.blocks = new short[initial];
+        this.authors = new HistoryAuthor[initial];
+        this.timestamps = new long[initial];
+        this.configurations = new HistoryConfiguration[initial];
+        this.entries = new HistoryEntry[initial];
+    }
+
+    void add(
+            final int position,
+            final int build,
+            final byte type,
+            final short block,
+            final HistoryAuthor author,
+            final long timestamp,
+            final @Nullable HistoryConfiguration configuration) {
+        if (this.size == this.positions.length) {
+            this.grow();
+        }
+        this.positions[this.size] = position;
+        this.builds[this.size] = build;
+        this.types[this.size] = type;
+        this.blocks[this.size] = block;
+        this.authors[this.size] = author;
+        this.timestamps[this.size] = timestamp;
+        this.configurations[this.size] = configuration;
+        this.size++;
+    }
+
+    // The rotation only needs two bits, so it is stored in the high bits of the type instead of another column
+    static byte packType(final int type, final int rotation) {
+        return (byte) (type | ((rotation & 0x3) << 4));
+    }
+
+    @Override
+    public HistoryEntry get(final int index) {
+        Objects.checkIndex(index, this.size);
+        var entry = this.entries[index];
+        if (entry == null) {
+            entry = this.materialize(index);
+            this.entries[index] = entry;
+        }
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    private HistoryEntry materialize(final int index) {
+        return HistoryEntry.builder()
+                .setX(Point2.x(this.positions[index]))
+                .setY(Point2.y(this.positions[index]))
+                .setBuildX(Point2.x(this.builds[index]))
+                .setBuildY(Point2.y(this.builds[index]))
+                .setAuthor(this.authors[index])
+                .setBlock(Vars.content.block(this.blocks[index]))
+                .setVirtual(this.positions[index] != this.builds[index])
+                .setConfiguration(Optional.ofNullable(this.configurations[index]))
+                .setType(TYPES[this.types[index] & 0xF])
+                .setRotation((this.types[index] >> 4) & 0x3)
+                .setTimestamp(Instant.ofEpochMilli(this.timestamps[index]))
+                .build();
+    }
+
+    private void grow() {
+        final var capacity = this.positions.length * 2;
+        this.positions = Arrays.copyOf(this.positions, capacity);
+        this.builds = Arrays.copyOf(this.builds, capacity);
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.blocks = Arrays.copyOf(this.blocks, capacity);
+        this.authors = Arrays.copyOf(this.authors, capacity);
+        this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+        this.configurations = Arrays.copyOf(this.configurations, capacity);
+        this.entries = Arrays.copyOf(this.entries, capacity);
+    }
+}
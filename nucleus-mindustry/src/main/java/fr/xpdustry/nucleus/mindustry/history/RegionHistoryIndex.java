@@ -0,0 +1,271 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import arc.struct.IntMap;
+import arc.struct.IntSeq;
+import arc.struct.LongSeq;
+import java.util.ArrayList;
+import java.util.List;
+import mindustry.Vars;
+import mindustry.world.Block;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Spatial index of the history, the map is divided in square chunks, each one keeping a chronological ring of the
+ * entries of the buildings whose origin is inside it. Region queries only visit the chunks overlapping the region,
+ * and stop reading a chunk as soon as its entries are older than the time window.
+ */
+final class RegionHistoryIndex {
+
+    private static final int CHUNK_SHIFT = 4;
+
+    private final IntMap<Bucket> buckets = new IntMap<>();
+    private final int capacity;
+    // Buildings are indexed by their origin, so the queried region is extended by the largest building radius
+    private int margin = -1;
+
+    RegionHistoryIndex(final int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    void add(
+            final int buildX,
+            final int buildY,
+            final HistoryEntry.Type type,
+            final Block block,
+            final int rotation,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {
+        final var key = Point2.pack(buildX >> CHUNK_SHIFT, buildY >> CHUNK_SHIFT);
+        var bucket = this.buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket(this.capacity);
+            this.buckets.put(key, bucket);
+        }
+        bucket.add(Point2.pack(buildX, buildY), type, block, rotation, author, configuration, timestamp);
+    }
+
+    List<HistoryEntry> getHistory(final int x, final int y, final int width, final int height, final long since) {
+        if (width <= 0 || height <= 0) {
+            return List.of();
+        }
+        final var margin = this.getMargin();
+        final var minChunkX = Math.max(0, x - margin) >> CHUNK_SHIFT;
+        final var minChunkY = Math.max(0, y - margin) >> CHUNK_SHIFT;
+        final var maxChunkX = (x + width - 1 + margin) >> CHUNK_SHIFT;
+        final var maxChunkY = (y + height - 1 + margin) >> CHUNK_SHIFT;
+
+        // Matches are encoded as the bucket in the high bits and the ring index in the low bits
+        final var matches = new LongSeq();
+        final var runs = new IntSeq();
+        final List<Bucket> found = new ArrayList<>();
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cy = minChunkY; cy <= maxChunkY; cy++) {
+                final var bucket = this.buckets.get(Point2.pack(cx, cy));
+                if (bucket == null) {
+                    continue;
+                }
+                final var id = found.size();
+                found.add(bucket);
+                runs.add(matches.size);
+                // Newest first, so the scan stops at the first entry out of the time window
+                for (int i = bucket.size - 1; i >= 0; i--) {
+                    final var index = bucket.index(i);
+                    if (bucket.timestamps[index] < since) {
+                        break;
+                    }
+                    if (intersects(bucket.builds[index], bucket.blocks[index], x, y, width, height)) {
+                        matches.add(((long) id << 32) | index);
+                    }
+                }
+            }
+        }
+
+        final var unsorted = matches.toArray();
+        final var timestamps = new long[unsorted.length];
+        for (int i = 0; i < unsorted.length; i++) {
+            timestamps[i] = found.get((int) (unsorted[i] >>> 32)).timestamps[(int) unsorted[i]];
+        }
+        final var items = mergeByTimestamp(unsorted, timestamps, runs.toArray());
+
+        final var snapshot = new HistorySnapshot(items.length);
+        for (final var item : items) {
+            final var bucket = found.get((int) (item >>> 32));
+            final var index = (int) item;
+            snapshot.add(
+                    bucket.builds[index],
+                    bucket.builds[index],
+                    bucket.types[index],
+                    bucket.blocks[index],
+                    bucket.authors[index],
+                    bucket.timestamps[index],
+                    bucket.configurations[index]);
+        }
+        return snapshot;
+    }
+
+    void clear() {
+        this.buckets.clear();
+    }
+
+    private int getMargin() {
+        if (this.margin == -1) {
+            // Indexed loop, the shared iterator of the content list isn't safe to use off the game thread
+            final var blocks = Vars.content.blocks();
+            var size = 1;
+            for (int i = 0; i < blocks.size; i++) {
+                size = Math.max(size, blocks.get(i).size);
+            }
+            this.margin = size / 2;
+        }
+        return this.margin;
+    }
+
+    private static boolean intersects(
+            final int origin, final short block, final int x, final int y, final int width, final int height) {
+        final var size = Vars.content.block(block).size;
+        final var offset = -(size - 1) / 2;
+        final var minX = Point2.x(origin) + offset;
+        final var minY = Point2.y(origin) + offset;
+        return minX < x + width && minX + size > x && minY < y + height && minY + size > y;
+    }
+
+    /**
+     * Merges the runs of matches of each bucket into a single chronological array with a k-way merge, the runs are
+     * newest first, so they are consumed from their end.
+     */
+    private static long[] mergeByTimestamp(final long[] items, final long[] timestamps, final int[] starts) {
+        final var count = starts.length;
+        final var ends = new int[count];
+        final var cursors = new int[count];
+        final var heap = new int[count];
+        var size = 0;
+        for (int run = 0; run < count; run++) {
+            ends[run] = run + 1 < count ? starts[run + 1] : items.length;
+            if (starts[run] == ends[run]) {
+                continue;
+            }
+            sortRun(items, timestamps, starts[run], ends[run]);
+            cursors[run] = ends[run] - 1;
+            heap[size++] = run;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, size, i, timestamps, cursors);
+        }
+
+        final var result = new long[items.length];
+        for (int i = 0; i < result.length; i++) {
+            final var run = heap[0];
+            result[i] = items[cursors[run]--];
+            if (cursors[run] < starts[run]) {
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, size, 0, timestamps, cursors);
+        }
+        return result;
+    }
+
+    private static void siftDown(
+            final int[] heap, final int size, final int start, final long[] timestamps, final int[] cursors) {
+        var index = start;
+        while (true) {
+            final var left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            var child = left;
+            if (left + 1 < size && timestamps[cursors[heap[left + 1]]] < timestamps[cursors[heap[left]]]) {
+                child = left + 1;
+            }
+            if (timestamps[cursors[heap[index]]] <= timestamps[cursors[heap[child]]]) {
+                return;
+            }
+            final var swap = heap[index];
+            heap[index] = heap[child];
+            heap[child] = swap;
+            index = child;
+        }
+    }
+
+    // The coalesced events of the ingest queue can slightly break the order of a bucket, this fixes the few inversions
+    private static void sortRun(final long[] items, final long[] timestamps, final int start, final int end) {
+        for (int i = start + 1; i < end; i++) {
+            final var item = items[i];
+            final var timestamp = timestamps[i];
+            var j = i - 1;
+            while (j >= start && timestamps[j] < timestamp) {
+                items[j + 1] = items[j];
+                timestamps[j + 1] = timestamps[j];
+                j--;
+            }
+            items[j + 1] = item;
+            timestamps[j + 1] = timestamp;
+        }
+    }
+
+    private static final class Bucket {
+
+        private final int[] builds;
+        private final byte[] types;
+        private final short[] blocks;
+        private final HistoryAuthor[] authors;
+        private final long[] timestamps;
+        private final @Nullable HistoryConfiguration[] configurations;
+        private int head = 0;
+        private int size = 0;
+
+        private Bucket(final int capacity) {
+            this.builds = new int[capacity];
+            this.types = new byte[capacity];
+            this.blocks = new short[capacity];
+            this.authors = new HistoryAuthor[capacity];
+            this.timestamps = new long[capacity];
+            this.configurations = new HistoryConfiguration[capacity];
+        }
+
+        private void add(
+                final int build,
+                final HistoryEntry.Type type,
+                final Block block,
+                final int rotation,
+                final HistoryAuthor author,
+                final @Nullable HistoryConfiguration configuration,
+                final long timestamp) {
+            final int index;
+            if (this.size < this.builds.length) {
+                index = this.index(this.size++);
+            } else {
+                index = this.head;
+                this.head = (this.head + 1) % this.builds.length;
+            }
+            this.builds[index] = build;
+            this.types[index] = HistorySnapshot.packType(type.ordinal(), rotation);
+            this.blocks[index] = block.id;
+            this.authors[index] = author;
+            this.timestamps[index] = timestamp;
+            this.configurations[index] = configuration;
+        }
+
+        private int index(final int offset) {
+            return (this.head + offset) % this.builds.length;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package fr.xpdustry.nucleus.mindustry.history;
 
 import arc.math.geom.Point2;
 import fr.xpdustry.distributor.api.event.EventHandler;
+import fr.xpdustry.nucleus.common.application.NucleusApplication;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
 import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
 import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration.Factory;
@@ -34,14 +35,26 @@ import fr.xpdustry.nucleus.mindustry.history.factory.MessageBlockConfigurationFa
 import fr.xpdustry.nucleus.mindustry.history.factory.PayloadMassDriverConfigurationFactory;
 import fr.xpdustry.nucleus.mindustry.history.factory.PowerNodeConfigurationFactory;
 import fr.xpdustry.nucleus.mindustry.history.factory.UnitFactoryConfigurationFactory;
+import java.io.IOException;
 import java.io.Serial;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import javax.inject.Inject;
+import mindustry.Vars;
 import mindustry.game.EventType;
 import mindustry.gen.Building;
 import mindustry.gen.Unit;
@@ -57,18 +70,60 @@ import mindustry.world.blocks.power.LightBlock.LightBuild;
 import mindustry.world.blocks.power.PowerNode.PowerNodeBuild;
 import mindustry.world.blocks.units.UnitFactory.UnitFactoryBuild;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 // TODO Hide this class since the event listeners are exposed
 public final class SimpleHistoryService implements HistoryService, NucleusListener {
 
-    private final Map<Integer, LimitedList<HistoryEntry>> positions = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(SimpleHistoryService.class);
+    private static final int INGEST_BATCH_SIZE = 256;
+
     private final Map<String, LimitedList<HistoryEntry>> players = new HashMap<>();
-    private final Map<Class<? extends Building>, Factory<?>> factories = new HashMap<>();
+    private final Map<Class<? extends Building>, Factory<?>> factories = new ConcurrentHashMap<>();
+    // Factory of each concrete building class, resolved from the class hierarchy on first use
+    private final Map<Class<?>, Optional<Factory<?>>> resolved = new ConcurrentHashMap<>();
+    private final HistoryConfigurationInterner interner = new HistoryConfigurationInterner();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong generation = new AtomicLong(0L);
+    // Session to start by the worker, opening the journal files is too slow for the game thread
+    private final AtomicReference<@Nullable SessionRequest> pendingSession = new AtomicReference<>(null);
     private final NucleusPluginConfiguration configuration;
+    private final TileHistoryStore tiles;
+    private final ColdHistoryStore coldTiles;
+    private final ColdHistoryStore coldPlayers;
+    private final RegionHistoryIndex regions;
+    private final HistoryIngestQueue queue;
+    private final @Nullable HistoryJournal journal;
+    private final HistoryReplicator replicator;
+    private final HistoryAnomalyDetector detector;
+    private final Thread worker;
+    private volatile boolean running = false;
 
     @Inject
-    public SimpleHistoryService(final NucleusPluginConfiguration configuration) {
+    public SimpleHistoryService(
+            final NucleusPluginConfiguration configuration,
+            final NucleusApplication application,
+            final HistoryReplicator replicator,
+            final HistoryAnomalyDetector detector) {
         this.configuration = configuration;
+        this.replicator = replicator;
+        this.detector = detector;
+        this.coldTiles = new ColdHistoryStore(configuration.getHistoryColdBlockLimit());
+        this.coldPlayers = new ColdHistoryStore(configuration.getHistoryColdBlockLimit());
+        // Each cold store only receives what its hot tier evicts, so the queries never see an entry twice
+        this.tiles = new TileHistoryStore(configuration.getHistoryHotTileLimit(), this.coldTiles::add);
+        this.regions = new RegionHistoryIndex(configuration.getHistoryRegionLimit());
+        this.queue = new HistoryIngestQueue(
+                configuration.getHistoryQueueCapacity(), configuration.getHistoryQueueOverflowPolicy());
+        this.journal = configuration.isHistoryJournalEnabled()
+                ? new HistoryJournal(
+                        application.getDataDirectory().resolve("history"),
+                        configuration.getHistoryJournalSegmentSize(),
+                        configuration.getHistoryJournalRetention())
+                : null;
+        this.worker = new Thread(this::ingest, "nucleus-history-ingest");
+        this.worker.setDaemon(true);
 
         // TODO I don't like to have this much classes here, maybe we can find a way to avoid this
         this.setConfigurationFactory(CanvasBuild.class, new CanvasConfigurationFactory());
@@ -83,21 +138,114 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
         this.setConfigurationFactory(UnitFactoryBuild.class, new UnitFactoryConfigurationFactory());
     }
 
+    @Override
+    public void onNucleusInit() {
+        this.running = true;
+        this.worker.start();
+    }
+
+    @Override
+    public void onNucleusExit() {
+        this.running = false;
+        LockSupport.unpark(this.worker);
+        try {
+            this.worker.join(TimeUnit.SECONDS.toMillis(1L));
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.journal != null) {
+            this.lock.writeLock().lock();
+            try {
+                this.journal.close();
+            } catch (final IOException exception) {
+                logger.error("Failed to close the history journal", exception);
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
     @Override
     public <B extends Building> void setConfigurationFactory(final Class<B> clazz, final Factory<B> factory) {
         this.factories.put(clazz, factory);
+        this.resolved.clear();
     }
 
     @Override
     public List<HistoryEntry> getHistory(final int x, final int y) {
-        final var history = this.positions.get(Point2.pack(x, y));
-        return history == null ? Collections.emptyList() : Collections.unmodifiableList(history);
+        this.lock.readLock().lock();
+        try {
+            return this.withColdHistory(
+                    this.tiles.getHistory(x, y),
+                    this.configuration.getHistoryTileLimit(),
+                    (before, limit) -> this.coldTiles.getHistory(x, y, before, limit));
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
     @Override
     public List<HistoryEntry> getHistory(final String uuid) {
-        final var history = this.players.get(uuid);
-        return history == null ? Collections.emptyList() : Collections.unmodifiableList(history);
+        this.lock.readLock().lock();
+        try {
+            final var history = this.players.get(uuid);
+            return this.withColdHistory(
+                    history == null ? Collections.emptyList() : List.copyOf(history),
+                    this.configuration.getHistoryPlayerLimit(),
+                    (before, limit) -> this.coldPlayers.getHistory(uuid, before, limit));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<HistoryEntry> getHistory(
+            final int x, final int y, final int width, final int height, final Instant since) {
+        this.lock.readLock().lock();
+        try {
+            return this.regions.getHistory(x, y, width, height, since.toEpochMilli());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<HistorySession> getSessions() {
+        if (this.journal == null) {
+            return List.of();
+        }
+        try {
+            return this.journal.getSessions();
+        } catch (final IOException exception) {
+            logger.error("Failed to list the history sessions", exception);
+            return List.of();
+        }
+    }
+
+    @Override
+    public Optional<HistorySession> getCurrentSession() {
+        if (this.journal == null) {
+            return Optional.empty();
+        }
+        this.lock.readLock().lock();
+        try {
+            return this.journal.getCurrentSession();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<HistoryEntry> getHistory(final HistorySession session, final String uuid) {
+        return this.readJournal(
+                session, journal -> journal.getHistory(session, uuid, this.configuration.getHistoryPlayerLimit()));
+    }
+
+    @Override
+    public List<HistoryEntry> getHistory(final HistorySession session, final int x, final int y) {
+        return this.readJournal(
+                session, journal -> journal.getHistory(session, x, y, this.configuration.getHistoryTileLimit()));
     }
 
     @EventHandler
@@ -110,7 +258,7 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
         final var block =
                 event.breaking ? ((ConstructBlock.ConstructBuild) event.tile.build).current : event.tile.block();
 
-        this.addEntry(event.tile.build, block, event.unit, event.breaking ? Type.BREAK : Type.PLACE, event.config);
+        this.capture(event.tile.build, block, event.unit, event.breaking ? Type.BREAK : Type.PLACE, event.config);
     }
 
     @EventHandler
@@ -118,7 +266,7 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
         if (event.unit == null || !(event.tile.build instanceof ConstructBlock.ConstructBuild build)) {
             return;
         }
-        this.addEntry(
+        this.capture(
                 build, build.current, event.unit, event.breaking ? Type.BREAKING : Type.PLACING, build.lastConfig);
     }
 
@@ -127,13 +275,71 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
         if (event.player == null) {
             return;
         }
-        this.addEntry(event.tile, event.tile.block(), event.player.unit(), Type.CONFIGURE, event.value);
+        this.capture(event.tile, event.tile.block(), event.player.unit(), Type.CONFIGURE, event.value);
     }
 
     @EventHandler
     public void onWorldLoadEvent(final EventType.WorldLoadEvent event) {
-        this.positions.clear();
-        this.players.clear();
+        if (this.journal != null) {
+            // Requested before the generation changes, so the worker starts it before adding the events of the new map
+            this.pendingSession.set(new SessionRequest(Vars.state.map.name(), System.currentTimeMillis()));
+            LockSupport.unpark(this.worker);
+        }
+        this.lock.writeLock().lock();
+        try {
+            // The pending events of the previous map will be discarded by the worker
+            this.generation.incrementAndGet();
+            this.tiles.clear();
+            this.coldTiles.clear();
+            this.coldPlayers.clear();
+            this.regions.clear();
+            this.players.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        if (this.queue.getDroppedCount() > 0 || this.queue.getCoalescedCount() > 0) {
+            logger.info(
+                    "History queue overflowed since startup, {} events dropped and {} events coalesced.",
+                    this.queue.getDroppedCount(),
+                    this.queue.getCoalescedCount());
+        }
+    }
+
+    // The hot tier holds every entry newer than its oldest one, the older entries complete it
+    private List<HistoryEntry> withColdHistory(final List<HistoryEntry> hot, final int limit, final ColdQuery query) {
+        if (hot.size() >= limit) {
+            return hot.subList(hot.size() - limit, hot.size());
+        }
+        final var before = hot.isEmpty() ? Long.MAX_VALUE : hot.get(0).getTimestamp().toEpochMilli();
+        final var cold = query.run(before, limit - hot.size());
+        if (cold.isEmpty()) {
+            return hot;
+        }
+        final List<HistoryEntry> result = new ArrayList<>(cold.size() + hot.size());
+        result.addAll(cold);
+        result.addAll(hot);
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<HistoryEntry> readJournal(final HistorySession session, final JournalQuery query) {
+        if (this.journal == null) {
+            return List.of();
+        }
+        // The current session is still being written, so it can't be read while the worker appends to it
+        final var current = session.equals(this.getCurrentSession().orElse(null));
+        if (current) {
+            this.lock.readLock().lock();
+        }
+        try {
+            return query.run(this.journal);
+        } catch (final IOException exception) {
+            logger.error("Failed to read the history session {}", session.getIdentifier(), exception);
+            return List.of();
+        } finally {
+            if (current) {
+                this.lock.readLock().unlock();
+            }
+        }
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
@@ -143,63 +349,250 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
             return Optional.empty();
         }
 
-        Class<?> clazz = building.getClass();
+        final var factory = this.resolved.computeIfAbsent(building.getClass(), this::resolveFactory);
+        if (factory.isPresent()) {
+            return ((HistoryConfiguration.Factory) factory.get()).create(building, type, config);
+        }
+
+        return Optional.of(config == null ? Simple.empty() : Simple.of(config));
+    }
+
+    // Copies the mutable building state the factory depends on, the worker must not read it while the game mutates it
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private @Nullable Object captureConfiguration(
+            final Building building, final HistoryEntry.Type type, final @Nullable Object config) {
+        if (building.block().configurations.isEmpty()) {
+            return config;
+        }
+        final var factory = this.resolved.computeIfAbsent(building.getClass(), this::resolveFactory);
+        return factory.isPresent()
+                ? ((HistoryConfiguration.Factory) factory.get()).capture(building, type, config)
+                : config;
+    }
+
+    private Optional<Factory<?>> resolveFactory(final Class<?> type) {
+        Class<?> clazz = type;
         while (Building.class.isAssignableFrom(clazz)) {
-            final HistoryConfiguration.Factory factory = factories.get(clazz);
+            final var factory = this.factories.get(clazz);
             if (factory != null) {
-                return factory.create(building, type, config);
+                return Optional.of(factory);
             }
             clazz = clazz.getSuperclass();
         }
-
-        return Optional.of(config == null ? Simple.empty() : Simple.of(config));
+        return Optional.empty();
     }
 
-    private void addEntry(
+    // Called on the game thread, so it must stay cheap, only the mutable state is captured here, the heavy lifting is
+    // done by the worker
+    private void capture(
             final Building building,
             final Block block,
             final Unit unit,
             final Type type,
             final @Nullable Object config) {
-        final var configuration = this.getConfiguration(building, type, config);
-        final var author = HistoryAuthor.of(unit);
-        building.tile.getLinkedTiles(t -> this.addEntry(HistoryEntry.builder()
-                .setX(t.x)
-                .setBuildX(building.tileX())
-                .setY(t.y)
-                .setBuildY(building.tileY())
-                .setAuthor(author)
-                .setBlock(block)
-                .setVirtual(t.pos() != building.tile.pos())
-                .setConfiguration(configuration)
-                .setType(type)
-                .build()));
-    }
-
-    private void addEntry(final HistoryEntry entry) {
-        final var entries = this.positions.computeIfAbsent(
-                Point2.pack(entry.getX(), entry.getY()),
-                position -> new LimitedList<>(configuration.getHistoryTileLimit()));
-
-        final var previous = entries.peekLast();
-        // Some blocks have repeating configurations, we don't want to spam the history with them
-        if (previous != null && this.haveSameConfiguration(previous, entry)) {
-            entries.removeLast();
-        }
-        entries.add(entry);
-
-        if (entry.getAuthor().getUuid().isPresent() && !entry.isVirtual())
+        final @Nullable Object captured;
+        try {
+            captured = this.captureConfiguration(building, type, config);
+        } catch (final Exception exception) {
+            logger.error(
+                    "Failed to capture the configuration of {} at ({}, {})",
+                    block.name,
+                    building.tileX(),
+                    building.tileY(),
+                    exception);
+            return;
+        }
+        this.queue.offer(new HistoryIngestQueue.Event(
+                building, block, HistoryAuthor.of(unit), type, captured, this.generation.get()));
+        LockSupport.unpark(this.worker);
+    }
+
+    private void ingest() {
+        final List<HistoryIngestQueue.Event> events = new ArrayList<>(INGEST_BATCH_SIZE);
+        final List<Optional<HistoryConfiguration>> configurations = new ArrayList<>(INGEST_BATCH_SIZE);
+
+        while (this.running) {
+            this.startPendingSession();
+            if (this.queue.isEmpty()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100L));
+                continue;
+            }
+
+            for (int i = 0; i < INGEST_BATCH_SIZE; i++) {
+                final var event = this.queue.poll();
+                if (event == null) {
+                    break;
+                }
+                events.add(event);
+            }
+
+            // Creating and interning the configurations from the captured state can be expensive, it is done before
+            // locking the stores
+            for (final var event : events) {
+                try {
+                    configurations.add(this.getConfiguration(event.getBuilding(), event.getType(), event.getConfig())
+                            .map(this.interner::intern));
+                } catch (final Exception exception) {
+                    logger.error(
+                            "Failed to resolve the configuration of {} at ({}, {})",
+                            event.getBlock().name,
+                            event.getBuilding().tileX(),
+                            event.getBuilding().tileY(),
+                            exception);
+                    configurations.add(Optional.empty());
+                }
+            }
+
+            this.lock.writeLock().lock();
+            try {
+                // The map may have changed since the last check, its events must go in the new session
+                this.startPendingSession();
+                for (int i = 0; i < events.size(); i++) {
+                    final var event = events.get(i);
+                    if (event.getGeneration() != this.generation.get()) {
+                        continue;
+                    }
+                    // A single bad event must not kill the worker, or the history would silently stop
+                    try {
+                        this.addEntry(event, configurations.get(i));
+                    } catch (final Exception exception) {
+                        logger.error(
+                                "Failed to add the history entry of {} at ({}, {})",
+                                event.getBlock().name,
+                                event.getBuilding().tileX(),
+                                event.getBuilding().tileY(),
+                                exception);
+                    }
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            events.clear();
+            configurations.clear();
+        }
+    }
+
+    private void startPendingSession() {
+        final var request = this.pendingSession.getAndSet(null);
+        if (request == null || this.journal == null) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.journal.startSession(request.map(), request.timestamp());
+        } catch (final IOException exception) {
+            logger.error("Failed to start a new history session", exception);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void addEntry(final HistoryIngestQueue.Event event, final Optional<HistoryConfiguration> configuration) {
+        final var building = event.getBuilding();
+        final var author = event.getAuthor();
+
+        // Multi-tile buildings only get one entry, the covered tiles are resolved by the store when queried
+        final var added = this.tiles.add(
+                building.tileX(),
+                building.tileY(),
+                event.getType(),
+                event.getBlock(),
+                event.getRotation(),
+                author,
+                configuration.orElse(null),
+                event.getTimestamp());
+        // A repeated configuration is dropped by every store, so the tile and player histories always agree
+        if (!added) {
+            return;
+        }
+        this.regions.add(
+                building.tileX(),
+                building.tileY(),
+                event.getType(),
+                event.getBlock(),
+                event.getRotation(),
+                author,
+                configuration.orElse(null),
+                event.getTimestamp());
+
+
+        if (author.getUuid().isPresent()) {
             this.players
                     .computeIfAbsent(
-                            entry.getAuthor().getUuid().get(),
-                            player -> new LimitedList<>(configuration.getHistoryPlayerLimit()))
-                    .add(entry);
+                            author.getUuid().get(),
+                            player -> new LimitedList<>(
+                                    this.configuration.getHistoryHotPlayerLimit(), this::addColdPlayerEntry))
+                    .add(HistoryEntry.builder()
+                            .setX(building.tileX())
+                            .setBuildX(building.tileX())
+                            .setY(building.tileY())
+                            .setBuildY(building.tileY())
+                            .setAuthor(author)
+                            .setBlock(event.getBlock())
+                            .setConfiguration(configuration)
+                            .setType(event.getType())
+                            .setRotation(event.getRotation())
+                            .setTimestamp(Instant.ofEpochMilli(event.getTimestamp()))
+                            .build());
+            this.replicator.offer(
+                    author.getUuid().get(),
+                    event.getType(),
+                    event.getBlock(),
+                    building.tileX(),
+                    building.tileY(),
+                    event.getTimestamp());
+            this.detector.observe(
+                    author.getUuid().get(),
+                    event.getType(),
+                    event.getBlock(),
+                    building.tileX(),
+                    building.tileY(),
+                    configuration.orElse(null),
+                    event.getTimestamp());
+        }
+
+        // Written last, so a failing write or encoding can't leave the in-memory histories incomplete
+        if (this.journal != null) {
+            try {
+                this.journal.append(
+                        building.tileX(),
+                        building.tileY(),
+                        event.getType(),
+                        event.getBlock(),
+                        event.getRotation(),
+                        author,
+                        configuration.orElse(null),
+                        event.getTimestamp());
+            } catch (final IOException | RuntimeException exception) {
+                logger.error("Failed to write in the history journal", exception);
+            }
+        }
+    }
+
+    // The player lists only keep their last entries, the evicted ones go to their own cold tier
+    private void addColdPlayerEntry(final HistoryEntry entry) {
+        this.coldPlayers.add(
+                Point2.pack(entry.getBuildX(), entry.getBuildY()),
+                HistorySnapshot.packType(entry.getType().ordinal(), entry.getRotation()),
+                entry.getBlock().id,
+                entry.getAuthor(),
+                entry.getConfiguration().orElse(null),
+                entry.getTimestamp().toEpochMilli());
+    }
+
+    private record SessionRequest(String map, long timestamp) {}
+
+    @FunctionalInterface
+    private interface ColdQuery {
+
+        List<HistoryEntry> run(final long before, final int limit);
     }
 
-    private boolean haveSameConfiguration(final HistoryEntry entryA, final HistoryEntry entryB) {
-        return entryA.getBlock().equals(entryB.getBlock())
-                && entryA.getConfiguration().equals(entryB.getConfiguration())
-                && entryA.getType() == entryB.getType();
+    @FunctionalInterface
+    private interface JournalQuery {
+
+        List<HistoryEntry> run(final HistoryJournal journal) throws IOException;
     }
 
     @SuppressWarnings("JdkObsolete")
@@ -209,15 +602,17 @@ public final class SimpleHistoryService implements HistoryService, NucleusListen
         private static final long serialVersionUID = -6315128929800347513L;
 
         private final int limit;
+        private final transient Consumer<E> evicted;
 
-        public LimitedList(final int limit) {
+        public LimitedList(final int limit, final Consumer<E> evicted) {
             this.limit = limit;
+            this.evicted = evicted;
         }
 
         @Override
         public boolean add(final E e) {
             if (this.size() >= this.limit) {
-                this.removeFirst();
+                this.evicted.accept(this.removeFirst());
             }
             return super.add(e);
         }
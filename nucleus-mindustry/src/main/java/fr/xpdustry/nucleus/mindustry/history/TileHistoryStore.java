@@ -0,0 +1,351 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import arc.struct.IntIntMap;
+import arc.struct.IntSeq;
+import arc.struct.ObjectIntMap;
+import arc.struct.Seq;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import mindustry.Vars;
+import mindustry.world.Block;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Columnar storage of the tile history. Each tile owns a fixed-capacity ring buffer, and all the rings are laid out
+ * in the same parallel primitive arrays, so adding an entry doesn't allocate anything once the tile has been seen.
+ * <p>
+ * Entries are only written on the origin tile of a building. The other tiles covered by a multi-tile building keep
+ * a small ring of the origins that covered them, so their history is resolved from the origins at read time.
+ */
+final class TileHistoryStore {
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_LINKS = 1024;
+    // Number of distinct buildings remembered for a tile, older ones are forgotten
+    private static final int LINK_CAPACITY = 4;
+
+    private final IntIntMap slots = new IntIntMap();
+    private final IntIntMap links = new IntIntMap();
+    private final Seq<HistoryAuthor> authors = new Seq<>();
+    private final ObjectIntMap<HistoryAuthor> authorIndices = new ObjectIntMap<>();
+    private final int capacity;
+    private final EvictionListener listener;
+    private int count = 0;
+
+    // Ring state, indexed by slot
+    private int[] positions;
+    private int[] heads;
+    private int[] sizes;
+
+    // Entry columns, the ring of a slot lives in [slot * capacity, (slot + 1) * capacity)
+    private byte[] types;
+    private short[] blocks;
+    private int[] builds;
+    private int[] entryAuthors;
+    private long[] timestamps;
+    private @Nullable HistoryConfiguration[] configurations;
+
+    // Origin rings of the tiles covered by multi-tile buildings, the ring of a link lives in
+    // [link * LINK_CAPACITY, (link + 1) * LINK_CAPACITY)
+    private int linkCount = 0;
+    private int[] linkOrigins;
+    private byte[] linkHeads;
+    private byte[] linkSizes;
+
+    TileHistoryStore(final int capacity, final EvictionListener listener) {
+        this.capacity = Math.max(capacity, 1);
+        this.listener = listener;
+        this.positions = new int[INITIAL_SLOTS];
+        this.heads = new int[INITIAL_SLOTS];
+        this.sizes = new int[INITIAL_SLOTS];
+        this.types = new byte[INITIAL_SLOTS * this.capacity];
+        this.blocks = new short[INITIAL_SLOTS * this.capacity];
+        this.builds = new int[INITIAL_SLOTS * this.capacity];
+        this.entryAuthors = new int[INITIAL_SLOTS * this.capacity];
+        this.timestamps = new long[INITIAL_SLOTS * this.capacity];
+        this.configurations = new HistoryConfiguration[INITIAL_SLOTS * this.capacity];
+        this.linkOrigins = new int[INITIAL_LINKS * LINK_CAPACITY];
+        this.linkHeads = new byte[INITIAL_LINKS];
+        this.linkSizes = new byte[INITIAL_LINKS];
+    }
+
+    /**
+     * Adds an entry to the ring of the building.
+     *
+     * @return whether the entry was added, false if it only repeats the last entry of the building
+     */
+    boolean add(
+            final int buildX,
+            final int buildY,
+            final HistoryEntry.Type type,
+            final Block block,
+            final int rotation,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {
+        final var packed = HistorySnapshot.packType(type.ordinal(), rotation);
+        final var origin = Point2.pack(buildX, buildY);
+        final var slot = this.getOrCreateSlot(origin);
+        final var size = this.sizes[slot];
+
+        if (size > 0) {
+            final var last = this.index(slot, size - 1);
+            // Some blocks have repeating configurations, we don't want to spam the history with them. The repeat is
+            // dropped instead of overwriting the last entry, so the other stores can skip it the same way
+            if (this.types[last] == packed
+                    && this.blocks[last] == block.id
+                    && this.authors.get(this.entryAuthors[last]).equals(author)
+                    && Objects.equals(this.configurations[last], configuration)) {
+                return false;
+            }
+        }
+
+        if (block.size > 1) {
+            this.link(buildX, buildY, block.size, origin);
+        }
+
+        final int index;
+        if (size < this.capacity) {
+            index = this.index(slot, size);
+            this.sizes[slot] = size + 1;
+        } else {
+            // The ring is full, the oldest entry is handed to the listener before being overwritten
+            index = this.index(slot, 0);
+            this.heads[slot] = (this.heads[slot] + 1) % this.capacity;
+            this.listener.onEntryEvicted(
+                    this.builds[index],
+                    this.types[index],
+                    this.blocks[index],
+                    this.authors.get(this.entryAuthors[index]),
+                    this.configurations[index],
+                    this.timestamps[index]);
+        }
+
+        this.write(index, packed, block, buildX, buildY, author, configuration, timestamp);
+        return true;
+    }
+
+    List<HistoryEntry> getHistory(final int x, final int y) {
+        final var position = Point2.pack(x, y);
+        final var own = this.slots.get(position, -1);
+
+        final var candidates = new IntSeq(LINK_CAPACITY + 1);
+        if (own != -1) {
+            candidates.add(own);
+        }
+        final var link = this.links.get(position, -1);
+        if (link != -1) {
+            for (int i = 0; i < this.linkSizes[link]; i++) {
+                final var slot = this.slots.get(this.linkOrigins[this.linkIndex(link, i)], -1);
+                if (slot != -1 && !candidates.contains(slot)) {
+                    candidates.add(slot);
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        final var indices = new IntSeq(this.capacity);
+        for (int i = 0; i < candidates.size; i++) {
+            final var slot = candidates.get(i);
+            for (int j = 0; j < this.sizes[slot]; j++) {
+                final var index = this.index(slot, j);
+                if (slot == own || covers(this.positions[slot], this.blocks[index], x, y)) {
+                    indices.add(index);
+                }
+            }
+        }
+
+        // The rings are already chronological, only merge them when the tile got covered by other buildings
+        if (candidates.size > 1) {
+            this.sortByTimestamp(indices);
+        }
+
+        final var start = Math.max(0, indices.size - this.capacity);
+        final var snapshot = new HistorySnapshot(indices.size - start);
+        for (int i = start; i < indices.size; i++) {
+            final var index = indices.get(i);
+            snapshot.add(
+                    position,
+                    this.builds[index],
+                    this.types[index],
+                    this.blocks[index],
+                    this.authors.get(this.entryAuthors[index]),
+                    this.timestamps[index],
+                    this.configurations[index]);
+        }
+        return snapshot;
+    }
+
+    void clear() {
+        this.slots.clear();
+        this.links.clear();
+        this.linkCount = 0;
+        this.authors.clear();
+        this.authorIndices.clear();
+        Arrays.fill(this.configurations, 0, this.count * this.capacity, null);
+        this.count = 0;
+    }
+
+    private void write(
+            final int index,
+            final byte type,
+            final Block block,
+            final int buildX,
+            final int buildY,
+            final HistoryAuthor author,
+            final @Nullable HistoryConfiguration configuration,
+            final long timestamp) {
+        this.types[index] = type;
+        this.blocks[index] = block.id;
+        this.builds[index] = Point2.pack(buildX, buildY);
+        this.entryAuthors[index] = this.getAuthorIndex(author);
+        this.timestamps[index] = timestamp;
+        this.configurations[index] = configuration;
+    }
+
+    private void link(final int buildX, final int buildY, final int size, final int origin) {
+        final var offset = -(size - 1) / 2;
+        for (int dx = 0; dx < size; dx++) {
+            for (int dy = 0; dy < size; dy++) {
+                final var position = Point2.pack(buildX + dx + offset, buildY + dy + offset);
+                if (position == origin) {
+                    continue;
+                }
+
+                var link = this.links.get(position, -1);
+                if (link == -1) {
+                    if (this.linkCount == this.linkSizes.length) {
+                        this.growLinks();
+                    }
+                    link = this.linkCount++;
+                    this.links.put(position, link);
+                    this.linkHeads[link] = 0;
+                    this.linkSizes[link] = 0;
+                }
+
+                final var known = this.linkSizes[link];
+                // Most events come from buildings already linked to the tile, nothing to write in that case
+                if (known > 0 && this.linkOrigins[this.linkIndex(link, known - 1)] == origin) {
+                    continue;
+                }
+                if (known < LINK_CAPACITY) {
+                    this.linkOrigins[this.linkIndex(link, known)] = origin;
+                    this.linkSizes[link]++;
+                } else {
+                    this.linkOrigins[this.linkIndex(link, 0)] = origin;
+                    this.linkHeads[link] = (byte) ((this.linkHeads[link] + 1) % LINK_CAPACITY);
+                }
+            }
+        }
+    }
+
+    static boolean covers(final int origin, final short block, final int x, final int y) {
+        final var size = Vars.content.block(block).size;
+        final var offset = -(size - 1) / 2;
+        final var minX = Point2.x(origin) + offset;
+        final var minY = Point2.y(origin) + offset;
+        return x >= minX && x < minX + size && y >= minY && y < minY + size;
+    }
+
+    private void sortByTimestamp(final IntSeq indices) {
+        // Insertion sort, stable and fast enough for the few entries of a tile
+        final var items = indices.items;
+        for (int i = 1; i < indices.size; i++) {
+            final var current = items[i];
+            var j = i - 1;
+            while (j >= 0 && this.timestamps[items[j]] > this.timestamps[current]) {
+                items[j + 1] = items[j];
+                j--;
+            }
+            items[j + 1] = current;
+        }
+    }
+
+    private int linkIndex(final int link, final int offset) {
+        return (link * LINK_CAPACITY) + ((this.linkHeads[link] + offset) % LINK_CAPACITY);
+    }
+
+    private int index(final int slot, final int offset) {
+        return (slot * this.capacity) + ((this.heads[slot] + offset) % this.capacity);
+    }
+
+    private int getOrCreateSlot(final int position) {
+        var slot = this.slots.get(position, -1);
+        if (slot != -1) {
+            return slot;
+        }
+        if (this.count == this.positions.length) {
+            this.grow();
+        }
+        slot = this.count++;
+        this.slots.put(position, slot);
+        this.positions[slot] = position;
+        this.heads[slot] = 0;
+        this.sizes[slot] = 0;
+        return slot;
+    }
+
+    private int getAuthorIndex(final HistoryAuthor author) {
+        var index = this.authorIndices.get(author, -1);
+        if (index == -1) {
+            index = this.authors.size;
+            this.authors.add(author);
+            this.authorIndices.put(author, index);
+        }
+        return index;
+    }
+
+    private void growLinks() {
+        final var links = this.linkSizes.length * 2;
+        this.linkOrigins = Arrays.copyOf(this.linkOrigins, links * LINK_CAPACITY);
+        this.linkHeads = Arrays.copyOf(this.linkHeads, links);
+        this.linkSizes = Arrays.copyOf(this.linkSizes, links);
+    }
+
+    private void grow() {
+        final var slots = this.positions.length * 2;
+        this.positions = Arrays.copyOf(this.positions, slots);
+        this.heads = Arrays.copyOf(this.heads, slots);
+        this.sizes = Arrays.copyOf(this.sizes, slots);
+        this.types = Arrays.copyOf(this.types, slots * this.capacity);
+        this.blocks = Arrays.copyOf(this.blocks, slots * this.capacity);
+        this.builds = Arrays.copyOf(this.builds, slots * this.capacity);
+        this.entryAuthors = Arrays.copyOf(this.entryAuthors, slots * this.capacity);
+        this.timestamps = Arrays.copyOf(this.timestamps, slots * this.capacity);
+        this.configurations = Arrays.copyOf(this.configurations, slots * this.capacity);
+    }
+
+    @FunctionalInterface
+    interface EvictionListener {
+
+        void onEntryEvicted(
+                final int build,
+                final byte type,
+                final short block,
+                final HistoryAuthor author,
+                final @Nullable HistoryConfiguration configuration,
+                final long timestamp);
+    }
+}
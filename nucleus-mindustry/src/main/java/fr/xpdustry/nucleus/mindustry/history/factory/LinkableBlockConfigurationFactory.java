@@ -31,35 +31,41 @@ public abstract class LinkableBlockConfigurationFactory<B extends Building> impl
 
     @Override
     public Optional<HistoryConfiguration> create(final B building, final Type type, final @Nullable Object config) {
+        return config instanceof HistoryConfiguration.Link link ? Optional.of(link) : Optional.empty();
+    }
+
+    // The link validity depends on the current links of the building, so the whole configuration is resolved here
+    @Override
+    public @Nullable Object capture(final B building, final Type type, final @Nullable Object config) {
         if (config == null || !building.block().configurations.containsKey(config.getClass())) {
-            return Optional.empty();
+            return null;
         }
 
         if (config instanceof Integer integer) {
             if (integer == -1 || integer == building.pos()) {
-                return Optional.of(HistoryConfiguration.Link.reset());
+                return HistoryConfiguration.Link.reset();
             }
             final var point = Point2.unpack(integer);
             if (point.x < 0 || point.y < 0) {
-                return Optional.empty();
+                return null;
             }
-            return Optional.of(HistoryConfiguration.Link.of(
+            return HistoryConfiguration.Link.of(
                     List.of(ImmutablePoint.of(point.x - building.tileX(), point.y - building.tileY())),
-                    this.isLinkValid(building, point.x, point.y)));
+                    this.isLinkValid(building, point.x, point.y));
         } else if (config instanceof Point2 point) {
             // Point2 are used by schematics, so they are already relative to the building
-            return Optional.of(HistoryConfiguration.Link.of(
+            return HistoryConfiguration.Link.of(
                     List.of(ImmutablePoint.of(point.x, point.y)),
-                    this.isLinkValid(building, point.x + building.tileX(), point.y + building.tileY())));
+                    this.isLinkValid(building, point.x + building.tileX(), point.y + building.tileY()));
         } else if (config instanceof Point2[] array) {
             final var links = new ImmutablePoint[array.length];
             for (int i = 0; i < array.length; i++) {
                 final var point2 = array[i];
                 links[i] = ImmutablePoint.of(point2.x, point2.y);
             }
-            return Optional.of(HistoryConfiguration.Link.of(Arrays.asList(links), true));
+            return HistoryConfiguration.Link.of(Arrays.asList(links), true);
         } else {
-            return Optional.empty();
+            return null;
         }
     }
 
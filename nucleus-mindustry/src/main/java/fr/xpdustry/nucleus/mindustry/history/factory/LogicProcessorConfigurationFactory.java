@@ -40,33 +40,44 @@ public final class LogicProcessorConfigurationFactory extends LinkableBlockConfi
     @Override
     public Optional<HistoryConfiguration> create(
             final LogicBuild building, final Type type, final @Nullable Object config) {
-        if (type == Type.PLACING || type == Type.PLACE || type == Type.BREAKING || type == Type.BREAK) {
-            return getConfiguration(building);
+        if (config instanceof Snapshot snapshot) {
+            return getConfiguration(snapshot);
         } else if (config instanceof byte[] bytes) {
+            // The compressed code is immutable, so the inflating is left to the worker
             return readCode(bytes).map(code -> HistoryConfiguration.Text.of(code, Text.Type.CODE));
         }
         return super.create(building, type, config);
     }
 
+    @Override
+    public @Nullable Object capture(final LogicBuild building, final Type type, final @Nullable Object config) {
+        if (type == Type.PLACING || type == Type.PLACE || type == Type.BREAKING || type == Type.BREAK) {
+            final List<ImmutablePoint> links = ArcCollections.immutableList(building.links).stream()
+                    .filter(link -> link.active)
+                    .map(link -> ImmutablePoint.of(link.x - building.tileX(), link.y - building.tileY()))
+                    .toList();
+            return new Snapshot(links, building.code);
+        } else if (config instanceof byte[]) {
+            return config;
+        }
+        return super.capture(building, type, config);
+    }
+
     @Override
     protected boolean isLinkValid(final LogicBuild building, final int x, final int y) {
         final var link = building.links.find(l -> l.x == x && l.y == y);
         return link != null && link.active;
     }
 
-    private Optional<HistoryConfiguration> getConfiguration(final LogicBuild building) {
+    private Optional<HistoryConfiguration> getConfiguration(final Snapshot snapshot) {
         final List<HistoryConfiguration> configurations = new ArrayList<>();
 
-        final List<ImmutablePoint> links = ArcCollections.immutableList(building.links).stream()
-                .filter(link -> link.active)
-                .map(link -> ImmutablePoint.of(link.x - building.tileX(), link.y - building.tileY()))
-                .toList();
-        if (!links.isEmpty()) {
-            configurations.add(HistoryConfiguration.Link.of(links, true));
+        if (!snapshot.links().isEmpty()) {
+            configurations.add(HistoryConfiguration.Link.of(snapshot.links(), true));
         }
 
-        if (!building.code.isBlank()) {
-            configurations.add(HistoryConfiguration.Text.of(building.code, Text.Type.CODE));
+        if (!snapshot.code().isBlank()) {
+            configurations.add(HistoryConfiguration.Text.of(snapshot.code(), Text.Type.CODE));
         }
 
         if (configurations.isEmpty()) {
@@ -111,4 +122,6 @@ public final class LogicProcessorConfigurationFactory extends LinkableBlockConfi
             return Optional.empty();
         }
     }
+
+    private record Snapshot(List<ImmutablePoint> links, String code) {}
 }
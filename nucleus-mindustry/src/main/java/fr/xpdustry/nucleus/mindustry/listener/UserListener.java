@@ -21,27 +21,24 @@ import cloud.commandframework.meta.CommandMeta;
 import com.google.common.net.InetAddresses;
 import fr.xpdustry.distributor.api.event.EventHandler;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
-import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import fr.xpdustry.nucleus.common.database.model.User;
 import fr.xpdustry.nucleus.mindustry.annotation.ClientSide;
 import fr.xpdustry.nucleus.mindustry.command.NucleusPluginCommandManager;
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
+import fr.xpdustry.nucleus.mindustry.user.UserSessionManager;
 import javax.inject.Inject;
 import mindustry.game.EventType;
 import mindustry.gen.Groups;
-import mindustry.gen.Player;
 
 public final class UserListener implements NucleusListener {
 
-    private final Map<String, Long> playtime = new HashMap<>();
-    private final DatabaseService databaseService;
+    private final UserSessionManager sessions;
     private final NucleusPluginCommandManager clientCommandManager;
 
     @Inject
     public UserListener(
-            final DatabaseService databaseService, final @ClientSide NucleusPluginCommandManager clientCommandManager) {
-        this.databaseService = databaseService;
+            final UserSessionManager sessions, final @ClientSide NucleusPluginCommandManager clientCommandManager) {
+        this.sessions = sessions;
         this.clientCommandManager = clientCommandManager;
     }
 
@@ -52,12 +49,9 @@ public final class UserListener implements NucleusListener {
                 .meta(CommandMeta.DESCRIPTION, "Get your playtime")
                 .handler(ctx -> this.clientCommandManager
                         .recipe(ctx)
-                        .thenApplyAsync(result -> this.databaseService
-                                .getUserManager()
-                                .findByIdOrCreate(result.getSender().getPlayer().uuid())
-                                .join()
-                                .getPlayTime()
-                                .plus(getSessionPlayTime(result.getSender().getPlayer())))
+                        .thenApplyAsync(result -> this.sessions
+                                .getPlayTime(result.getSender().getPlayer().uuid())
+                                .join())
                         // TODO Format this god awful mess
                         .thenAccept(duration -> ctx.getSender()
                                 .sendMessage("Your play time is "
@@ -69,37 +63,28 @@ public final class UserListener implements NucleusListener {
 
     @EventHandler
     public void onPlayerJoin(final EventType.PlayerJoin event) {
-        playtime.put(event.player.uuid(), System.currentTimeMillis());
-
         final var address = InetAddresses.forString(event.player.ip());
-        databaseService.getUserManager().updateOrCreate(event.player.uuid(), user -> user.setLastName(
-                        event.player.plainName())
-                .addName(event.player.plainName())
-                .setLastAddress(address)
-                .addAddress(address)
-                .setTimesJoined(user.getTimesJoined() + 1));
+        final var name = event.player.plainName();
+        this.sessions.open(
+                event.player.uuid(),
+                EntityUpdate.<User>create()
+                        .set(User.LAST_NAME, name)
+                        .addToSet(User.NAMES, name)
+                        .set(User.LAST_ADDRESS, address)
+                        .addToSet(User.ADDRESSES, address)
+                        .increment(User.TIMES_JOINED, 1));
     }
 
     @EventHandler
     public void onGameOver(final EventType.GameOverEvent event) {
-        Groups.player.forEach(player -> this.databaseService
-                .getUserManager()
-                .updateOrCreate(player.uuid(), user -> user.setGamesPlayed(user.getGamesPlayed() + 1)));
+        Groups.player.forEach(player ->
+                this.sessions.update(player.uuid(), EntityUpdate.<User>create().increment(User.GAMES_PLAYED, 1)));
+        this.sessions.flush();
     }
 
     @EventHandler
     public void onPlayerLeave(final EventType.PlayerLeave event) {
-        // TODO Create an helper class to capture completable future exceptions
-        this.databaseService
-                .getUserManager()
-                .updateOrCreate(
-                        event.player.uuid(),
-                        user -> user.setPlayTime(user.getPlayTime().plus(getSessionPlayTime(event.player))))
-                .whenComplete((empty, throwable) -> playtime.remove(event.player.uuid()));
-    }
-
-    @SuppressWarnings("NullAway") // The static analyzer thinks players returns nullable values, but it doesn't
-    private Duration getSessionPlayTime(final Player player) {
-        return Duration.ofMillis(System.currentTimeMillis() - playtime.get(player.uuid()));
+        final var played = this.sessions.getSessionDuration(event.player.uuid());
+        this.sessions.close(event.player.uuid(), EntityUpdate.<User>create().increment(User.PLAY_TIME, played));
     }
 }
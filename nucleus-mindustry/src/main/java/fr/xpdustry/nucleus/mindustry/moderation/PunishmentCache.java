@@ -0,0 +1,288 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.moderation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.net.InetAddresses;
+import fr.xpdustry.distributor.api.event.EventHandler;
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.model.Punishment;
+import fr.xpdustry.nucleus.common.database.model.PunishmentMessage;
+import fr.xpdustry.nucleus.common.message.MessageService;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import mindustry.game.EventType;
+import mindustry.gen.Groups;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the active punishments of the recently seen addresses in memory, so the moderation checks don't have to wait
+ * for the database. The entries of the online players are pinned until they leave and refreshed once they are stale,
+ * the others expire an hour after their last load. The entries are also reloaded when a {@link PunishmentMessage} is
+ * received.
+ */
+public final class PunishmentCache implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PunishmentCache.class);
+    private static final long STALE_AFTER_NANOS = Duration.ofMinutes(5L).toNanos();
+
+    private final Cache<InetAddress, Entry> recent = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofHours(1L))
+            .maximumSize(10_000)
+            .build();
+    // Guarded by itself, the entries of the online addresses are moved out of the recent cache to survive eviction
+    private final Set<InetAddress> online = new HashSet<>();
+    private final Map<InetAddress, Entry> pinned = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder hitNanos = new LongAdder();
+    private final AtomicLong maxHitNanos = new AtomicLong(0L);
+    private final DatabaseService database;
+    private final MessageService messageService;
+
+    @Inject
+    public PunishmentCache(final DatabaseService database, final MessageService messageService) {
+        this.database = database;
+        this.messageService = messageService;
+    }
+
+    @Override
+    public void onNucleusInit() {
+        this.messageService.subscribe(PunishmentMessage.class, message -> this.load(
+                message.getTargets().stream().map(InetAddresses::forString).toList()));
+
+        final List<InetAddress> addresses = new ArrayList<>();
+        for (final var player : Groups.player) {
+            final var address = InetAddresses.forString(player.ip());
+            this.pin(address);
+            addresses.add(address);
+        }
+        this.load(addresses);
+    }
+
+    @EventHandler
+    public void onPlayerJoin(final EventType.PlayerJoin event) {
+        this.pin(InetAddresses.forString(event.player.ip()));
+    }
+
+    @EventHandler
+    public void onPlayerLeave(final EventType.PlayerLeave event) {
+        // The leaving player is still in the player group
+        for (final var player : Groups.player) {
+            if (player != event.player && player.ip().equals(event.player.ip())) {
+                return;
+            }
+        }
+        this.unpin(InetAddresses.forString(event.player.ip()));
+    }
+
+    /**
+     * Returns the active punishments of an address, or an empty optional if the address is not loaded yet.
+     */
+    public Optional<List<Punishment>> getActive(final InetAddress address) {
+        final var start = System.nanoTime();
+        final var cached = this.get(address);
+        if (cached == null) {
+            this.misses.increment();
+            return Optional.empty();
+        }
+
+        final var active = filterActive(cached.punishments());
+        final var elapsed = System.nanoTime() - start;
+        this.hits.increment();
+        this.hitNanos.add(elapsed);
+        this.maxHitNanos.accumulateAndGet(elapsed, Math::max);
+        return Optional.of(active);
+    }
+
+    /**
+     * Returns the active punishments of an address, they are loaded from the database only if the address is not
+     * cached or if its entry is stale.
+     */
+    public CompletableFuture<List<Punishment>> getOrLoad(final InetAddress address) {
+        final var cached = this.get(address);
+        if (cached != null && !cached.isStale()) {
+            this.hits.increment();
+            return CompletableFuture.completedFuture(filterActive(cached.punishments()));
+        }
+        this.misses.increment();
+        return this.load(address);
+    }
+
+    public CompletableFuture<List<Punishment>> load(final InetAddress address) {
+        return this.load(List.of(address));
+    }
+
+    /**
+     * Loads the punishments of the addresses in a single query, then returns the active punishments of all of them.
+     */
+    public CompletableFuture<List<Punishment>> load(final Collection<InetAddress> addresses) {
+        if (addresses.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return this.database
+                .getPunishmentManager()
+                .findActiveByTargets(addresses)
+                .thenApply(active -> {
+                    for (final var address : addresses) {
+                        final List<Punishment> punishments = new ArrayList<>();
+                        for (final var punishment : active) {
+                            if (punishment.getTargets().contains(address)) {
+                                punishments.add(punishment);
+                            }
+                        }
+                        this.put(address, new Entry(List.copyOf(punishments), System.nanoTime()));
+                    }
+                    return active;
+                })
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Failed to load the punishments of {}", addresses, throwable);
+                    }
+                });
+    }
+
+    /**
+     * Updates the cached punishments of the targets, then notifies the other servers of the change.
+     */
+    public void update(final Punishment punishment) {
+        final List<InetAddress> unknown = new ArrayList<>();
+        for (final var target : punishment.getTargets()) {
+            final var cached = this.get(target);
+            final List<Punishment> updated = new ArrayList<>();
+            if (cached != null) {
+                for (final var entry : cached.punishments()) {
+                    if (!entry.getIdentifier().equals(punishment.getIdentifier())) {
+                        updated.add(entry);
+                    }
+                }
+            } else {
+                unknown.add(target);
+            }
+            if (punishment.isActive()) {
+                updated.add(punishment);
+            }
+            // An unknown target only holds this punishment for now, it is marked as stale so the next check reloads it
+            final var loaded = cached != null ? cached.loaded() : System.nanoTime() - STALE_AFTER_NANOS - 1L;
+            this.put(target, new Entry(List.copyOf(updated), loaded));
+        }
+        this.load(unknown);
+        this.messageService.publish(PunishmentMessage.of(punishment));
+    }
+
+    @TaskHandler(interval = 1L, unit = MindustryTimeUnit.MINUTES, async = true)
+    public void onPinnedRefresh() {
+        final List<InetAddress> stale = new ArrayList<>();
+        this.pinned.forEach((address, entry) -> {
+            if (entry.isStale()) {
+                stale.add(address);
+            }
+        });
+        this.load(stale);
+    }
+
+    @TaskHandler(interval = 10L, unit = MindustryTimeUnit.MINUTES, async = true)
+    public void onStatisticsReport() {
+        final var hitCount = this.hits.sumThenReset();
+        final var missCount = this.misses.sumThenReset();
+        final var total = this.hitNanos.sumThenReset();
+        final var max = this.maxHitNanos.getAndSet(0L);
+        if (hitCount + missCount == 0) {
+            return;
+        }
+        logger.debug(
+                "Punishment cache: {} hits, {} misses, {}ns average hit latency, {}ns max hit latency",
+                hitCount,
+                missCount,
+                hitCount == 0 ? 0 : total / hitCount,
+                max);
+    }
+
+    private @Nullable Entry get(final InetAddress address) {
+        final var entry = this.pinned.get(address);
+        return entry != null ? entry : this.recent.getIfPresent(address);
+    }
+
+    private void put(final InetAddress address, final Entry entry) {
+        synchronized (this.online) {
+            if (this.online.contains(address)) {
+                this.pinned.put(address, entry);
+            } else {
+                this.recent.put(address, entry);
+            }
+        }
+    }
+
+    private void pin(final InetAddress address) {
+        synchronized (this.online) {
+            if (this.online.add(address)) {
+                final var entry = this.recent.getIfPresent(address);
+                if (entry != null) {
+                    this.pinned.put(address, entry);
+                    this.recent.invalidate(address);
+                }
+            }
+        }
+    }
+
+    private void unpin(final InetAddress address) {
+        synchronized (this.online) {
+            if (this.online.remove(address)) {
+                final var entry = this.pinned.remove(address);
+                if (entry != null) {
+                    this.recent.put(address, entry);
+                }
+            }
+        }
+    }
+
+    private static List<Punishment> filterActive(final List<Punishment> punishments) {
+        final List<Punishment> active = new ArrayList<>(punishments.size());
+        for (final var punishment : punishments) {
+            if (punishment.isActive()) {
+                active.add(punishment);
+            }
+        }
+        return active;
+    }
+
+    private record Entry(List<Punishment> punishments, long loaded) {
+
+        private boolean isStale() {
+            return System.nanoTime() - this.loaded > STALE_AFTER_NANOS;
+        }
+    }
+}
@@ -20,22 +20,23 @@ package fr.xpdustry.nucleus.mindustry.moderation;
 import arc.Core;
 import arc.Events;
 import com.google.common.net.InetAddresses;
-import fr.xpdustry.distributor.api.event.EventHandler;
-import fr.xpdustry.distributor.api.util.Priority;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
 import fr.xpdustry.nucleus.common.database.DatabaseService;
 import fr.xpdustry.nucleus.common.database.model.Punishment;
 import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
 import fr.xpdustry.nucleus.mindustry.chat.ChatManager;
+import fr.xpdustry.nucleus.mindustry.network.AdmissionCheck.Rejection;
+import fr.xpdustry.nucleus.mindustry.network.AdmissionPipeline;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import mindustry.game.EventType.PlayerBanEvent;
-import mindustry.game.EventType.PlayerConnect;
 import mindustry.game.EventType.PlayerIpBanEvent;
 import mindustry.gen.Call;
 import mindustry.gen.Groups;
@@ -45,53 +46,48 @@ import org.bson.types.ObjectId;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 
-// TODO TO avoid blocking the server, assign the player to derelict and once validated, let him spawn and broadcast a
-//  confirmation message
 public final class SimpleModerationService implements ModerationService, NucleusListener {
 
     private final ChatManager chat;
     private final DatabaseService database;
+    private final PunishmentCache cache;
+    private final AdmissionPipeline admission;
 
     @Inject
     public Logger logger;
 
     @Inject
-    public SimpleModerationService(final ChatManager chat, final DatabaseService database) {
+    public SimpleModerationService(
+            final ChatManager chat,
+            final DatabaseService database,
+            final PunishmentCache cache,
+            final AdmissionPipeline admission) {
         this.chat = chat;
         this.database = database;
+        this.cache = cache;
+        this.admission = admission;
     }
 
     @Override
     public void onNucleusInit() {
         this.chat.addFilter((player, message) -> {
-            final var punishment = this.database
-                    .getPunishmentManager()
-                    .findAllByTarget(InetAddresses.forString(player.ip()))
-                    .join()
-                    .stream()
-                    .filter(Punishment::isActive)
+            final var address = InetAddresses.forString(player.ip());
+            final var cached = this.cache.getActive(address);
+            if (cached.isEmpty()) {
+                // Don't let a possibly muted player speak until the punishments are known
+                this.cache.load(address);
+                player.sendMessage("[scarlet]Your chat is being verified, try again in a moment.");
+                return false;
+            }
+            final var punishment = cached.get().stream()
                     .filter(p -> p.getKind() == Kind.MUTE)
                     .max(Comparator.comparing(Punishment::getRemaining));
             punishment.ifPresent(value -> player.sendMessage(
                     "[scarlet]You are muted! Wait " + value.getRemaining().toMinutes() + " minutes to speak again."));
             return punishment.isEmpty();
         });
-    }
 
-    @EventHandler(priority = Priority.HIGHEST)
-    public void onPlayerConnect(final PlayerConnect event) {
-        if (event.player.con().kicked) {
-            return;
-        }
-        this.database
-                .getPunishmentManager()
-                .findAllByTarget(InetAddresses.forString(event.player.ip()))
-                .thenApply(punishments -> punishments.stream()
-                        .filter(Punishment::isActive)
-                        .filter(p -> p.getKind() == Kind.BAN || p.getKind() == Kind.KICK)
-                        .max(Comparator.comparing(Punishment::getKind).thenComparing(Punishment::getRemaining)))
-                .thenAccept(punishment -> punishment.ifPresent(value -> showPunishmentAndKick(event.player, value)))
-                .join();
+        this.admission.addCheck(this::checkPunishments);
     }
 
     @Override
@@ -115,10 +111,26 @@ public final class SimpleModerationService implements ModerationService, Nucleus
         return this.createPunishment(target, kind, reason, duration).thenCompose(punishment -> this.database
                 .getPunishmentManager()
                 .save(punishment)
+                .thenAccept(empty -> this.cache.update(punishment))
                 .thenAccept(empty -> this.kickOnlinePlayer(sender, punishment))
                 .thenApply(empty -> punishment));
     }
 
+    private CompletableFuture<Optional<Rejection>> checkPunishments(final Player player) {
+        // Only hits the database when the address is not cached or when its entry is stale
+        return this.cache
+                .getOrLoad(InetAddresses.forString(player.ip()))
+                .thenApply(punishments -> this.findKickingPunishment(punishments)
+                        .map(punishment -> (Rejection) target -> showPunishmentAndKick(target, punishment)));
+    }
+
+    private Optional<Punishment> findKickingPunishment(final List<Punishment> punishments) {
+        return punishments.stream()
+                .filter(Punishment::isActive)
+                .filter(p -> p.getKind() == Kind.BAN || p.getKind() == Kind.KICK)
+                .max(Comparator.comparing(Punishment::getKind).thenComparing(Punishment::getRemaining));
+    }
+
     private void kickOnlinePlayer(final @Nullable Player sender, final Punishment punishment) {
         if (!(punishment.getKind() == Kind.BAN || punishment.getKind() == Kind.KICK)) {
             return;
@@ -180,11 +192,7 @@ public final class SimpleModerationService implements ModerationService, Nucleus
         }
         return this.database
                 .getPunishmentManager()
-                .findAllByTarget(InetAddresses.forString(target.ip()))
-                .thenApply(punishments -> punishments.stream()
-                        .map(Punishment::getKind)
-                        .filter(Kind.BAN::equals)
-                        .count())
+                .countByTargetAndKind(InetAddresses.forString(target.ip()), Kind.BAN)
                 .thenApply(count -> Duration.ofDays(((long) Math.pow(2, count.intValue() + 1)) * 7L));
     }
 
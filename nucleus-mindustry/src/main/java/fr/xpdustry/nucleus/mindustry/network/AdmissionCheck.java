@@ -0,0 +1,40 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.network;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import mindustry.gen.Player;
+
+/**
+ * A check run by the {@link AdmissionPipeline} when a player connects, it must not block.
+ */
+@FunctionalInterface
+public interface AdmissionCheck {
+
+    CompletableFuture<Optional<Rejection>> check(final Player player);
+
+    /**
+     * The action taken on the main thread when the player is not admitted.
+     */
+    @FunctionalInterface
+    interface Rejection {
+
+        void reject(final Player player);
+    }
+}
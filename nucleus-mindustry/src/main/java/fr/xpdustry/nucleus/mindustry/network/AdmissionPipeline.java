@@ -0,0 +1,173 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.network;
+
+import arc.Core;
+import com.google.common.net.InetAddresses;
+import fr.xpdustry.distributor.api.event.EventHandler;
+import fr.xpdustry.distributor.api.util.Priority;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import fr.xpdustry.nucleus.mindustry.network.AdmissionCheck.Rejection;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import mindustry.Vars;
+import mindustry.game.EventType;
+import mindustry.game.Team;
+import mindustry.gen.Player;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parks the connecting players in the derelict team while the admission checks run in parallel, then admits or
+ * rejects them on the main thread. A check that fails rejects the player. Players whose checks exceed the timeout
+ * are admitted, but are still kicked if one of the checks rejects them afterward.
+ */
+public final class AdmissionPipeline implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionPipeline.class);
+    private static final Rejection FAILED_CHECK =
+            player -> player.kick("[scarlet]Your connection could not be verified, try again later.", 0);
+
+    private final List<AdmissionCheck> checks = new CopyOnWriteArrayList<>();
+    private final Queue<Player> pending = new ArrayDeque<>();
+    private final NucleusPluginConfiguration configuration;
+    private final ConnectionRateLimiter limiter;
+    private int running = 0;
+
+    @Inject
+    public AdmissionPipeline(final NucleusPluginConfiguration configuration, final ConnectionRateLimiter limiter) {
+        this.configuration = configuration;
+        this.limiter = limiter;
+    }
+
+    public void addCheck(final AdmissionCheck check) {
+        this.checks.add(check);
+    }
+
+    @EventHandler(priority = Priority.HIGHEST)
+    public void onPlayerConnect(final EventType.PlayerConnect event) {
+        if (event.player.con().kicked) {
+            return;
+        }
+        // Shed the floods before anything expensive happens
+        if (!this.limiter.tryAcquire(InetAddresses.forString(event.player.ip()))) {
+            event.player.kick("[scarlet]Too many connections from your network, try again later.", 0);
+            return;
+        }
+        if (this.checks.isEmpty()) {
+            return;
+        }
+        event.player.team(Team.derelict);
+        this.pending.add(event.player);
+        this.drain();
+    }
+
+    @EventHandler
+    public void onPlayerLeave(final EventType.PlayerLeave event) {
+        this.pending.remove(event.player);
+    }
+
+    private void drain() {
+        while (this.running < this.configuration.getAdmissionConcurrency() && !this.pending.isEmpty()) {
+            final var player = this.pending.remove();
+            this.running++;
+            this.check(player)
+                    .orTimeout(this.configuration.getAdmissionTimeout(), TimeUnit.MILLISECONDS)
+                    .whenComplete((rejection, throwable) -> Core.app.post(() -> {
+                        this.running--;
+                        this.complete(player, rejection, throwable);
+                        this.drain();
+                    }));
+        }
+    }
+
+    private CompletableFuture<Optional<Rejection>> check(final Player player) {
+        final var verdict = new CompletableFuture<Optional<Rejection>>();
+        final var remaining = new AtomicInteger(this.checks.size());
+        for (final var check : this.checks) {
+            CompletableFuture<Optional<Rejection>> future;
+            try {
+                future = check.check(player);
+            } catch (final Exception exception) {
+                future = CompletableFuture.failedFuture(exception);
+            }
+            future.whenComplete((rejection, throwable) -> {
+                final Optional<Rejection> result;
+                if (throwable != null) {
+                    // The checks that can fail open swallow their errors, the others must not let the player in
+                    logger.error(
+                            "An admission check of {} ({}) failed, rejecting.",
+                            player.plainName(),
+                            player.uuid(),
+                            throwable);
+                    result = Optional.of(FAILED_CHECK);
+                } else {
+                    result = rejection;
+                }
+                if (result.isPresent()) {
+                    // The first rejection wins, no need to wait for the other checks
+                    if (!verdict.complete(result) && verdict.isCompletedExceptionally()) {
+                        // The verdict timed out and the player has been admitted, reject them anyway
+                        Core.app.post(() -> this.reject(player, result.get()));
+                    }
+                } else if (remaining.decrementAndGet() == 0) {
+                    verdict.complete(Optional.empty());
+                }
+            });
+        }
+        return verdict;
+    }
+
+    private void complete(
+            final Player player, final @Nullable Optional<Rejection> rejection, final @Nullable Throwable throwable) {
+        if (throwable instanceof TimeoutException) {
+            // A check that completes with a rejection later will still kick the player
+            logger.warn("The admission of {} ({}) timed out, admitting.", player.plainName(), player.uuid());
+        } else if (throwable != null) {
+            logger.error("The admission of {} ({}) failed, rejecting.", player.plainName(), player.uuid(), throwable);
+            this.reject(player, FAILED_CHECK);
+            return;
+        } else if (rejection != null && rejection.isPresent()) {
+            this.reject(player, rejection.get());
+            return;
+        }
+        if (!player.con().isConnected() || player.con().kicked) {
+            return;
+        }
+        if (player.team() == Team.derelict) {
+            player.team(Vars.netServer.assignTeam(player));
+        }
+        player.sendMessage("[green]Your connection has been validated, welcome!");
+    }
+
+    private void reject(final Player player, final Rejection rejection) {
+        if (player.con().isConnected() && !player.con().kicked) {
+            rejection.reject(player);
+        }
+    }
+}
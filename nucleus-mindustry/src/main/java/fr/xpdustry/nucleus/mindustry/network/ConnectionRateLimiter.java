@@ -0,0 +1,240 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.network;
+
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the connection rate per subnet, {@code /24} for IPv4 and {@code /48} for IPv6. A count-min sketch tracks
+ * every subnet cheaply, only the subnets above the sketch threshold get a token bucket. A subnet running out of tokens
+ * is blackholed for a while.
+ */
+public final class ConnectionRateLimiter implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRateLimiter.class);
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    private static final long[] SKETCH_SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final AtomicIntegerArray sketch = new AtomicIntegerArray(SKETCH_DEPTH * SKETCH_WIDTH);
+    private final Map<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<Long, Long> blackholes = new ConcurrentHashMap<>();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder blackholed = new LongAdder();
+    private final NucleusPluginConfiguration configuration;
+    private final LongSupplier clock;
+    private long reported = 0L;
+
+    @Inject
+    public ConnectionRateLimiter(final NucleusPluginConfiguration configuration) {
+        this(configuration, monotonicClock());
+    }
+
+    /**
+     * Creates a rate limiter with its own clock, it returns the time in milliseconds and must never go backwards.
+     */
+    ConnectionRateLimiter(final NucleusPluginConfiguration configuration, final LongSupplier clock) {
+        this.configuration = configuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a new connection from the given address is allowed.
+     */
+    public boolean tryAcquire(final InetAddress address) {
+        final var subnet = getSubnet(address);
+        final var now = this.now();
+
+        final var until = this.blackholes.get(subnet);
+        if (until != null && until > now) {
+            this.shed.increment();
+            return false;
+        }
+
+        if (this.increment(subnet) <= this.configuration.getConnectionRateSketchThreshold()) {
+            return true;
+        }
+
+        final var bucket = this.buckets.computeIfAbsent(
+                subnet,
+                key -> new TokenBucket(
+                        this.configuration.getConnectionRateCapacity(),
+                        this.configuration.getConnectionRateRefill(),
+                        now));
+        if (bucket.tryConsume(now)) {
+            return true;
+        }
+
+        this.blackholes.put(
+                subnet, now + TimeUnit.SECONDS.toMillis(this.configuration.getConnectionRateBlackholeDuration()));
+        this.buckets.remove(subnet);
+        this.blackholed.increment();
+        this.shed.increment();
+        return false;
+    }
+
+    public long getShedCount() {
+        return this.shed.sum();
+    }
+
+    public long getBlackholedCount() {
+        return this.blackholed.sum();
+    }
+
+    /**
+     * Returns the number of subnets currently blackholed, the expired ones are only removed by the maintenance.
+     */
+    public int getBlackholedSubnetCount() {
+        final var now = this.now();
+        var count = 0;
+        for (final var until : this.blackholes.values()) {
+            if (until > now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @TaskHandler(interval = 1L, unit = MindustryTimeUnit.MINUTES, async = true)
+    public void onRateLimiterMaintenance() {
+        // Halving the counts makes the sketch forget the old connections
+        for (int i = 0; i < this.sketch.length(); i++) {
+            final var count = this.sketch.get(i);
+            if (count != 0) {
+                this.sketch.set(i, count >>> 1);
+            }
+        }
+
+        final var now = this.now();
+        this.blackholes.values().removeIf(until -> until <= now);
+        this.buckets.values().removeIf(bucket -> bucket.isFull(now));
+
+        final var total = this.shed.sum();
+        if (total > this.reported) {
+            logger.info(
+                    "Shed {} connections in the last minute, {} subnets are blackholed.",
+                    total - this.reported,
+                    this.blackholes.size());
+            this.reported = total;
+        }
+    }
+
+    private int increment(final long subnet) {
+        var estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            final var index = i * SKETCH_WIDTH + (int) (mix(subnet ^ SKETCH_SEEDS[i]) & (SKETCH_WIDTH - 1));
+            estimate = Math.min(estimate, this.sketch.incrementAndGet(index));
+        }
+        return estimate;
+    }
+
+    private long now() {
+        return this.clock.getAsLong();
+    }
+
+    private static LongSupplier monotonicClock() {
+        final var origin = System.nanoTime();
+        return () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    private static long getSubnet(final InetAddress address) {
+        final var bytes = address.getAddress();
+        var subnet = 0L;
+        if (address instanceof Inet4Address) {
+            for (int i = 0; i < 3; i++) {
+                subnet = (subnet << 8) | (bytes[i] & 0xFF);
+            }
+            return subnet;
+        }
+        for (int i = 0; i < 6; i++) {
+            subnet = (subnet << 8) | (bytes[i] & 0xFF);
+        }
+        // Keeps the IPv6 subnets apart from the IPv4 ones
+        return subnet | (1L << 48);
+    }
+
+    private static long mix(final long value) {
+        var hash = value;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * A lock-free token bucket, the refill time and the amount of milli-tokens are packed in a single long.
+     */
+    private static final class TokenBucket {
+
+        private static final int TOKEN_BITS = 20;
+        private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+        private static final long TOKEN = 1000L;
+
+        private final AtomicLong state;
+        private final long capacity;
+        private final long refillPerMinute;
+
+        private TokenBucket(final int capacity, final int refillPerMinute, final long now) {
+            this.capacity = Math.min(Math.max(1, capacity), 1000) * TOKEN;
+            this.refillPerMinute = Math.max(0, refillPerMinute);
+            this.state = new AtomicLong((now << TOKEN_BITS) | this.capacity);
+        }
+
+        private boolean tryConsume(final long now) {
+            while (true) {
+                final var current = this.state.get();
+                var last = current >>> TOKEN_BITS;
+                var tokens = current & TOKEN_MASK;
+                final var added = (now - last) * this.refillPerMinute * TOKEN / TimeUnit.MINUTES.toMillis(1L);
+                if (added > 0) {
+                    tokens = Math.min(this.capacity, tokens + added);
+                    last = now;
+                }
+                if (tokens < TOKEN) {
+                    return false;
+                }
+                if (this.state.compareAndSet(current, (last << TOKEN_BITS) | (tokens - TOKEN))) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean isFull(final long now) {
+            final var current = this.state.get();
+            final var tokens = current & TOKEN_MASK;
+            final var elapsed = now - (current >>> TOKEN_BITS);
+            return tokens + (elapsed * this.refillPerMinute * TOKEN / TimeUnit.MINUTES.toMillis(1L)) >= this.capacity;
+        }
+    }
+}
@@ -17,56 +17,71 @@
  */
 package fr.xpdustry.nucleus.mindustry.network;
 
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
-import com.google.common.net.InetAddresses;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import fr.xpdustry.distributor.api.event.EventHandler;
-import fr.xpdustry.distributor.api.util.Priority;
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusApplication;
 import fr.xpdustry.nucleus.common.application.NucleusListener;
 import fr.xpdustry.nucleus.common.database.model.Punishment.Kind;
+import fr.xpdustry.nucleus.common.network.AddressRangeSet;
+import fr.xpdustry.nucleus.common.network.CloudAddressProvider;
+import fr.xpdustry.nucleus.common.network.CloudAddressProvider.Metadata;
+import fr.xpdustry.nucleus.common.network.CloudAddressSnapshot;
+import fr.xpdustry.nucleus.common.network.FileCloudAddressProvider;
 import fr.xpdustry.nucleus.common.network.VpnDetector;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
 import fr.xpdustry.nucleus.mindustry.moderation.ModerationService;
+import fr.xpdustry.nucleus.mindustry.network.AdmissionCheck.Rejection;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.math.BigInteger;
-import java.net.Inet4Address;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
-import mindustry.game.EventType;
+import mindustry.gen.Player;
 import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@SuppressWarnings("UnstableApiUsage")
 public final class DdosGatekeeper implements NucleusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(DdosGatekeeper.class);
 
-    // TODO Cache in a local file
-    private final List<AddressesProvider> providers = new ArrayList<>();
-    private final RangeSet<BigInteger> blocked = TreeRangeSet.create();
+    private final List<CloudAddressProvider> providers = new ArrayList<>();
+    private final Map<String, CloudAddressSnapshot.Entry> entries = new LinkedHashMap<>();
+    private volatile AddressRangeSet blocked = AddressRangeSet.empty();
     private final VpnDetector vpnDetector;
     private final ModerationService moderation;
+    private final AdmissionPipeline admission;
+    private final Path snapshot;
 
     @Inject
-    public DdosGatekeeper(final VpnDetector vpnDetector, final ModerationService moderation) {
+    public DdosGatekeeper(
+            final VpnDetector vpnDetector,
+            final ModerationService moderation,
+            final AdmissionPipeline admission,
+            final NucleusApplication application,
+            final NucleusPluginConfiguration configuration) {
         this.vpnDetector = vpnDetector;
         this.moderation = moderation;
+        this.admission = admission;
+        this.snapshot = application.getDataDirectory().resolve("cloud-addresses.bin");
 
         final var httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(5L))
@@ -79,65 +94,109 @@ public final class DdosGatekeeper implements NucleusListener {
         this.providers.add(new AmazonWebServicesAddressesProvider(httpClient, gson));
         this.providers.add(new GoogleCloudAddressesProvider(httpClient, gson));
         this.providers.add(new OracleCloudAddressesProvider(httpClient, gson));
+        for (final var file : configuration.getCloudAddressFiles()) {
+            if (!file.isBlank()) {
+                this.providers.add(new FileCloudAddressProvider(Path.of(file)));
+            }
+        }
     }
 
     @Override
     public void onNucleusInit() {
-        var count = 0;
-        for (final var provider : this.providers) {
-            final Collection<Range<BigInteger>> addresses;
+        synchronized (this.entries) {
             try {
-                addresses = provider.getAddresses();
-            } catch (final Exception e) {
-                logger.error("Failed to get addresses for cloud provider '{}'", provider.getProviderName(), e);
-                continue;
-            }
-
-            if (addresses.isEmpty()) {
-                logger.warn("No addresses found for cloud provider '{}'", provider.getProviderName());
-                continue;
+                this.entries.putAll(CloudAddressSnapshot.read(this.snapshot));
+            } catch (final IOException e) {
+                logger.error("Failed to read the cloud addresses snapshot, waiting for the refresh", e);
             }
-
-            logger.info("Found {} addresses for cloud provider '{}'", addresses.size(), provider.getProviderName());
-            count += addresses.size();
-            this.blocked.addAll(addresses);
+            this.rebuild();
         }
 
-        logger.info("Blocked {} cloud addresses.", count);
+        this.admission.addCheck(this::checkCloudAddress);
+        this.admission.addCheck(this::checkVpnAddress);
     }
 
-    @EventHandler(priority = Priority.HIGH)
-    public void onPlayerConnect(final EventType.PlayerConnect event) {
-        if (event.player.con().kicked) {
-            return;
+    @TaskHandler(interval = 6L, unit = MindustryTimeUnit.HOURS, async = true)
+    public void onCloudAddressesRefresh() {
+        synchronized (this.entries) {
+            var changed = false;
+            for (final var provider : this.providers) {
+                final var previous = this.entries.get(provider.getProviderName());
+                final Optional<CloudAddressProvider.Result> result;
+                try {
+                    result = provider.fetch(previous == null ? Metadata.none() : previous.metadata());
+                } catch (final Exception e) {
+                    // Keep the previous ranges, better outdated than nothing
+                    logger.error("Failed to get addresses for cloud provider '{}'", provider.getProviderName(), e);
+                    continue;
+                }
+
+                if (result.isEmpty()) {
+                    logger.debug("The addresses of cloud provider '{}' are up to date", provider.getProviderName());
+                    continue;
+                }
+
+                final var ranges = result.get().ranges().stream()
+                        .map(CloudAddressSnapshot.Cidr::parse)
+                        .flatMap(Optional::stream)
+                        .toList();
+                if (ranges.size() < result.get().ranges().size()) {
+                    logger.warn(
+                            "Ignored {} invalid addresses of cloud provider '{}'",
+                            result.get().ranges().size() - ranges.size(),
+                            provider.getProviderName());
+                }
+                // An empty result is still a valid answer, only the failed fetches keep the previous ranges
+                if (ranges.isEmpty()) {
+                    logger.warn("No addresses found for cloud provider '{}'", provider.getProviderName());
+                } else {
+                    logger.info(
+                            "Found {} addresses for cloud provider '{}'", ranges.size(), provider.getProviderName());
+                }
+                this.entries.put(
+                        provider.getProviderName(), new CloudAddressSnapshot.Entry(result.get().metadata(), ranges));
+                changed = true;
+            }
+
+            if (changed) {
+                this.rebuild();
+                try {
+                    CloudAddressSnapshot.write(this.snapshot, this.entries);
+                } catch (final IOException e) {
+                    logger.error("Failed to write the cloud addresses snapshot", e);
+                }
+            }
         }
+    }
 
-        if (this.blocked.encloses(createInetAddressRange(event.player.ip()))) {
-            this.moderation
-                    .punish(
-                            null,
-                            event.player,
-                            Kind.KICK,
-                            "Cloud addresses are not allowed on this server.",
-                            Duration.ofDays(7L))
-                    .join();
-            return;
+    private void rebuild() {
+        final var builder = AddressRangeSet.builder();
+        var count = 0;
+        for (final var provider : this.providers) {
+            final var entry = this.entries.get(provider.getProviderName());
+            if (entry == null) {
+                continue;
+            }
+            for (final var range : entry.ranges()) {
+                builder.add(range.toInetAddress(), range.prefix());
+            }
+            count += entry.ranges().size();
         }
+        this.blocked = builder.build();
+        logger.info("Blocked {} cloud addresses, merged into {} ranges.", count, this.blocked.size());
+    }
 
-        if (this.isVpn(event.player.ip())) {
-            this.moderation
-                    .punish(
-                            null,
-                            event.player,
-                            Kind.KICK,
-                            "VPN addresses are not allowed on this server.",
-                            Duration.ofDays(7L))
-                    .join();
-            return;
+    private CompletableFuture<Optional<Rejection>> checkCloudAddress(final Player player) {
+        if (!this.blocked.contains(player.ip())) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
+        final Rejection rejection = target -> this.reject(target, "Cloud addresses are not allowed on this server.");
+        return CompletableFuture.completedFuture(Optional.of(rejection));
     }
 
-    private boolean isVpn(final String address) {
+    private CompletableFuture<Optional<Rejection>> checkVpnAddress(final Player player) {
+        final var address = player.ip();
+        final Rejection rejection = target -> this.reject(target, "VPN addresses are not allowed on this server.");
         logger.debug("Checking if '{}' is a VPN.", address);
         return this.vpnDetector
                 .isVpn(address)
@@ -145,30 +204,21 @@ public final class DdosGatekeeper implements NucleusListener {
                     logger.debug("Failed to check if '{}' is a VPN.", address, throwable);
                     return false;
                 })
-                .join();
-    }
-
-    private static Range<BigInteger> createInetAddressRange(final String address) {
-        final var parts = address.split("/", 2);
-        final var parsedAddress = InetAddresses.forString(parts[0]);
-        if (parts.length != 2) {
-            return Range.singleton(new BigInteger(1, parsedAddress.getAddress()));
-        }
-        final var bigIntAddress = new BigInteger(1, parsedAddress.getAddress());
-        final var cidrPrefixLen = Integer.parseInt(parts[1]);
-        final var bits = parsedAddress instanceof Inet4Address ? 32 : 128;
-        final var addressCount = BigInteger.ONE.shiftLeft(bits - cidrPrefixLen);
-        return Range.closed(bigIntAddress, bigIntAddress.add(addressCount));
+                .thenApply(vpn -> vpn ? Optional.of(rejection) : Optional.<Rejection>empty());
     }
 
-    private interface AddressesProvider {
-
-        String getProviderName();
-
-        Collection<Range<BigInteger>> getAddresses() throws IOException, InterruptedException;
+    private void reject(final Player player, final String reason) {
+        this.moderation
+                .punish(null, player, Kind.KICK, reason, Duration.ofDays(7L))
+                .exceptionally(throwable -> {
+                    logger.error("Failed to punish {} ({}).", player.plainName(), player.uuid(), throwable);
+                    return null;
+                });
+        // The player might not be in the player group yet, so kick it directly
+        player.kick("[scarlet]" + reason, 0);
     }
 
-    private abstract static class JsonAddressesProvider implements AddressesProvider {
+    private abstract static class JsonAddressesProvider implements CloudAddressProvider {
 
         private final String name;
         private final HttpClient httpClient;
@@ -186,28 +236,42 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        public final Collection<Range<BigInteger>> getAddresses() throws IOException, InterruptedException {
-            final var response = this.httpClient.send(
-                    HttpRequest.newBuilder()
-                            .uri(this.getUri())
-                            .timeout(Duration.ofSeconds(10L))
-                            .GET()
-                            .build(),
-                    HttpResponse.BodyHandlers.ofInputStream());
-            if (response.statusCode() != 200) {
+        public final Optional<Result> fetch(final Metadata previous) throws IOException, InterruptedException {
+            final var uri = this.getUri();
+            final var request = HttpRequest.newBuilder()
+                    .uri(uri)
+                    .timeout(Duration.ofSeconds(10L))
+                    .GET();
+            if (previous.etag() != null) {
+                request.header("If-None-Match", previous.etag());
+            }
+            if (previous.lastModified() != null) {
+                request.header("If-Modified-Since", previous.lastModified());
+            }
+
+            final var response = this.httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() == 304) {
+                response.body().close();
+                return Optional.empty();
+            } else if (response.statusCode() != 200) {
+                response.body().close();
                 throw new IOException(String.format(
                         "Failed to download '%s' public addresses file (status-code: %d, url: %s).",
-                        this.getProviderName(), response.statusCode(), this.getUri()));
+                        this.getProviderName(), response.statusCode(), uri));
             }
 
+            final var metadata = new Metadata(
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
             try (final Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
-                return this.getAddresses(this.gson.fromJson(reader, JsonObject.class));
+                final var addresses = this.getAddresses(this.gson.fromJson(reader, JsonObject.class));
+                return Optional.of(new Result(addresses, metadata));
             }
         }
 
         protected abstract URI getUri() throws IOException;
 
-        protected abstract Collection<Range<BigInteger>> getAddresses(final JsonObject object);
+        protected abstract Collection<String> getAddresses(final JsonObject object);
     }
 
     private static final class AzureAddressesProvider extends JsonAddressesProvider {
@@ -233,7 +297,7 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        protected Collection<Range<BigInteger>> getAddresses(final JsonObject object) {
+        protected Collection<String> getAddresses(final JsonObject object) {
             return object.get("values").getAsJsonArray().asList().stream()
                     .map(JsonElement::getAsJsonObject)
                     .filter(element -> element.get("name").getAsString().equals("AzureCloud"))
@@ -241,8 +305,7 @@ public final class DdosGatekeeper implements NucleusListener {
                             .getAsJsonObject()
                             .get("addressPrefixes")
                             .getAsJsonArray())
-                    .flatMap(array ->
-                            array.asList().stream().map(element -> createInetAddressRange(element.getAsString())))
+                    .flatMap(array -> array.asList().stream().map(JsonElement::getAsString))
                     .toList();
         }
     }
@@ -261,10 +324,10 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        protected Collection<Range<BigInteger>> getAddresses(final JsonObject object) {
+        protected Collection<String> getAddresses(final JsonObject object) {
 
             return object.get("actions").getAsJsonArray().asList().stream()
-                    .map(element -> createInetAddressRange(element.getAsString()))
+                    .map(JsonElement::getAsString)
                     .toList();
         }
     }
@@ -284,18 +347,17 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        protected Collection<Range<BigInteger>> getAddresses(final JsonObject object) {
-            final Set<Range<BigInteger>> addresses = new HashSet<>();
+        protected Collection<String> getAddresses(final JsonObject object) {
+            final Set<String> addresses = new HashSet<>();
             addresses.addAll(parsePrefix(object, "prefixes", "ip_prefix"));
             addresses.addAll(parsePrefix(object, "ipv6_prefixes", "ipv6_prefix"));
             return addresses;
         }
 
-        private Collection<Range<BigInteger>> parsePrefix(
+        private Collection<String> parsePrefix(
                 final JsonObject object, final String name, final String element) {
             return object.get(name).getAsJsonArray().asList().stream()
-                    .map(entry -> createInetAddressRange(
-                            entry.getAsJsonObject().get(element).getAsString()))
+                    .map(entry -> entry.getAsJsonObject().get(element).getAsString())
                     .toList();
         }
     }
@@ -315,12 +377,12 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        protected Collection<Range<BigInteger>> getAddresses(JsonObject object) {
+        protected Collection<String> getAddresses(JsonObject object) {
             return object.get("prefixes").getAsJsonArray().asList().stream()
                     .map(JsonElement::getAsJsonObject)
                     .map(element -> element.has("ipv4Prefix")
-                            ? createInetAddressRange(element.get("ipv4Prefix").getAsString())
-                            : createInetAddressRange(element.get("ipv6Prefix").getAsString()))
+                            ? element.get("ipv4Prefix").getAsString()
+                            : element.get("ipv6Prefix").getAsString())
                     .toList();
         }
     }
@@ -340,11 +402,10 @@ public final class DdosGatekeeper implements NucleusListener {
         }
 
         @Override
-        protected Collection<Range<BigInteger>> getAddresses(final JsonObject object) {
+        protected Collection<String> getAddresses(final JsonObject object) {
             return object.get("regions").getAsJsonArray().asList().stream()
                     .flatMap(element -> element.getAsJsonObject().get("cidrs").getAsJsonArray().asList().stream())
-                    .map(element -> createInetAddressRange(
-                            element.getAsJsonObject().get("cidr").getAsString()))
+                    .map(element -> element.getAsJsonObject().get("cidr").getAsString())
                     .toList();
         }
     }
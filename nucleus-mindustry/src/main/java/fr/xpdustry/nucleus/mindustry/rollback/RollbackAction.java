@@ -0,0 +1,71 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.rollback;
+
+import fr.xpdustry.nucleus.common.annotation.ImmutableNucleusStyle;
+import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration;
+import java.util.Optional;
+import mindustry.game.Team;
+import mindustry.world.Block;
+import org.immutables.value.Value.Immutable;
+
+@Immutable(copy = false, builder = false)
+@ImmutableNucleusStyle
+public sealed interface RollbackAction permits ImmutableRollbackAction {
+
+    static RollbackAction remove(final int x, final int y, final Block block, final Team team) {
+        return ImmutableRollbackAction.of(Type.REMOVE, x, y, block, team, 0, Optional.empty());
+    }
+
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    static RollbackAction place(
+            final int x,
+            final int y,
+            final Block block,
+            final Team team,
+            final int rotation,
+            final Optional<HistoryConfiguration> configuration) {
+        return ImmutableRollbackAction.of(Type.PLACE, x, y, block, team, rotation, configuration);
+    }
+
+    static RollbackAction configure(
+            final int x, final int y, final Block block, final Team team, final HistoryConfiguration configuration) {
+        return ImmutableRollbackAction.of(Type.CONFIGURE, x, y, block, team, 0, Optional.of(configuration));
+    }
+
+    Type getType();
+
+    int getX();
+
+    int getY();
+
+    Block getBlock();
+
+    Team getTeam();
+
+    // Only used to rebuild the block, the other actions keep the block as it is
+    int getRotation();
+
+    Optional<HistoryConfiguration> getConfiguration();
+
+    enum Type {
+        REMOVE,
+        PLACE,
+        CONFIGURE
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.rollback;
+
+import fr.xpdustry.nucleus.common.annotation.ImmutableNucleusStyle;
+import java.util.List;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * The inverse operations computed from the history, nothing is applied to the world until it is executed, so it
+ * doubles as a dry-run diff.
+ */
+@Immutable(copy = false, builder = false)
+@ImmutableNucleusStyle
+public sealed interface RollbackPlan permits ImmutableRollbackPlan {
+
+    static RollbackPlan of(final List<RollbackAction> actions, final int skipped) {
+        return ImmutableRollbackPlan.of(actions, skipped);
+    }
+
+    List<RollbackAction> getActions();
+
+    /**
+     * Returns the number of buildings that could not be fully reverted, either because their previous state is unknown,
+     * because the space is now occupied by another building, or because their links can't be restored.
+     */
+    int getSkipped();
+}
@@ -0,0 +1,37 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.rollback;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface RollbackService {
+
+    RollbackPlan planPlayerRollback(final String uuid);
+
+    RollbackPlan planAreaRollback(final int x, final int y, final int width, final int height, final Instant since);
+
+    /**
+     * Queues the plan for execution, it will be applied over several ticks. The listener is notified on the main
+     * thread each time the task progresses by a tenth, and once it is done.
+     */
+    RollbackTask execute(final RollbackPlan plan, final Consumer<RollbackTask> listener);
+
+    Optional<RollbackTask> getCurrentTask();
+}
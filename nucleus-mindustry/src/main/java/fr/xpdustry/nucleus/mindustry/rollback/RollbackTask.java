@@ -0,0 +1,81 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.rollback;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public final class RollbackTask {
+
+    private final RollbackPlan plan;
+    private final Consumer<RollbackTask> listener;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private int progress = 0;
+    private boolean cancelled = false;
+
+    RollbackTask(final RollbackPlan plan, final Consumer<RollbackTask> listener) {
+        this.plan = plan;
+        this.listener = listener;
+    }
+
+    public RollbackPlan getPlan() {
+        return this.plan;
+    }
+
+    public int getProgress() {
+        return this.progress;
+    }
+
+    public int getTotal() {
+        return this.plan.getActions().size();
+    }
+
+    public boolean isDone() {
+        return this.completion.isDone();
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public CompletableFuture<Void> getCompletion() {
+        return this.completion;
+    }
+
+    RollbackAction next() {
+        final var action = this.plan.getActions().get(this.progress);
+        final var step = Math.max(1, this.getTotal() / 10);
+        if (++this.progress % step == 0 && this.progress != this.getTotal()) {
+            this.listener.accept(this);
+        }
+        return action;
+    }
+
+    boolean hasNext() {
+        return !this.cancelled && this.progress < this.getTotal();
+    }
+
+    void complete() {
+        this.completion.complete(null);
+        this.listener.accept(this);
+    }
+}
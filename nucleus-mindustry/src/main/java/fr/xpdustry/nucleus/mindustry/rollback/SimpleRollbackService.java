@@ -0,0 +1,489 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.rollback;
+
+import arc.math.geom.Point2;
+import arc.struct.Seq;
+import fr.xpdustry.distributor.api.event.EventHandler;
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration;
+import fr.xpdustry.nucleus.mindustry.history.HistoryConfiguration.Link;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import fr.xpdustry.nucleus.mindustry.history.HistoryService;
+import fr.xpdustry.nucleus.mindustry.util.ImmutablePoint;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.inject.Inject;
+import mindustry.Vars;
+import mindustry.game.EventType;
+import mindustry.gen.Building;
+import mindustry.world.Block;
+import mindustry.world.blocks.distribution.ItemBridge;
+import mindustry.world.blocks.distribution.ItemBridge.ItemBridgeBuild;
+import mindustry.world.blocks.distribution.MassDriver;
+import mindustry.world.blocks.distribution.MassDriver.MassDriverBuild;
+import mindustry.world.blocks.logic.LogicBlock;
+import mindustry.world.blocks.logic.LogicBlock.LogicBuild;
+import mindustry.world.blocks.logic.LogicBlock.LogicLink;
+import mindustry.world.blocks.payloads.PayloadMassDriver;
+import mindustry.world.blocks.payloads.PayloadMassDriver.PayloadDriverBuild;
+import mindustry.world.blocks.power.PowerNode;
+import mindustry.world.blocks.power.PowerNode.PowerNodeBuild;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class SimpleRollbackService implements RollbackService, NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimpleRollbackService.class);
+
+    private final Deque<RollbackTask> tasks = new ArrayDeque<>();
+    private final HistoryService history;
+    private final NucleusPluginConfiguration configuration;
+
+    @Inject
+    public SimpleRollbackService(final HistoryService history, final NucleusPluginConfiguration configuration) {
+        this.history = history;
+        this.configuration = configuration;
+    }
+
+    @Override
+    public RollbackPlan planPlayerRollback(final String uuid) {
+        return this.plan(
+                this.history.getHistory(uuid),
+                entry -> entry.getAuthor().getUuid().filter(uuid::equals).isPresent());
+    }
+
+    @Override
+    public RollbackPlan planAreaRollback(
+            final int x, final int y, final int width, final int height, final Instant since) {
+        return this.plan(
+                this.history.getHistory(x, y, width, height, since),
+                entry -> !entry.getTimestamp().isBefore(since));
+    }
+
+    @Override
+    public RollbackTask execute(final RollbackPlan plan, final Consumer<RollbackTask> listener) {
+        final var task = new RollbackTask(plan, listener);
+        this.tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public Optional<RollbackTask> getCurrentTask() {
+        return Optional.ofNullable(this.tasks.peek());
+    }
+
+    @TaskHandler(interval = 1L, unit = MindustryTimeUnit.TICKS)
+    public void onRollbackUpdate() {
+        final var task = this.tasks.peek();
+        if (task == null || !Vars.state.isPlaying()) {
+            return;
+        }
+
+        // The budget keeps large rollbacks from freezing the server, the rest is applied in the next ticks
+        var budget = this.configuration.getRollbackTickBudget();
+        while (budget-- > 0 && task.hasNext()) {
+            final var action = task.next();
+            try {
+                this.apply(action);
+            } catch (final RuntimeException exception) {
+                logger.error("Failed to apply the rollback action {}", action, exception);
+            }
+        }
+
+        if (!task.hasNext()) {
+            this.tasks.poll();
+            task.complete();
+        }
+    }
+
+    @EventHandler
+    public void onWorldLoadEvent(final EventType.WorldLoadEvent event) {
+        // The plans refer to the positions of the previous map
+        for (final var task : this.tasks) {
+            task.cancel();
+            task.complete();
+        }
+        this.tasks.clear();
+    }
+
+    private RollbackPlan plan(final List<HistoryEntry> source, final Predicate<HistoryEntry> reverted) {
+        // Earliest reverted entry of each building, the state to restore is the one right before it
+        final Map<Integer, HistoryEntry> earliest = new LinkedHashMap<>();
+        for (final var entry : source) {
+            if (reverted.test(entry)) {
+                earliest.merge(
+                        Point2.pack(entry.getBuildX(), entry.getBuildY()),
+                        entry,
+                        (a, b) -> a.getTimestamp().isAfter(b.getTimestamp()) ? b : a);
+            }
+        }
+
+        final List<RollbackAction> actions = new ArrayList<>();
+        var skipped = 0;
+        for (final var first : earliest.values()) {
+            final var x = first.getBuildX();
+            final var y = first.getBuildY();
+
+            @Nullable HistoryEntry previous = null;
+            // The configurations of the building since the first reverted action, in chronological order
+            final List<HistoryEntry> window = new ArrayList<>();
+            for (final var entry : this.history.getHistory(x, y)) {
+                if (entry.getBuildX() != x || entry.getBuildY() != y) {
+                    continue;
+                }
+                if (!entry.getTimestamp().isBefore(first.getTimestamp())) {
+                    if (entry.getType() == Type.CONFIGURE) {
+                        window.add(entry);
+                    }
+                } else if (entry.getType() == Type.PLACE
+                        || entry.getType() == Type.BREAK
+                        || entry.getType() == Type.CONFIGURE) {
+                    previous = entry;
+                }
+            }
+
+            // When the previous state is out of the history, it is guessed from the first reverted action
+            final var reference = previous != null ? previous : first;
+            final var present = previous != null
+                    ? previous.getType() != Type.BREAK
+                    : first.getType() != Type.PLACE && first.getType() != Type.PLACING;
+            var configuration = previous != null || first.getType() != Type.CONFIGURE
+                    ? reference.getConfiguration()
+                    : Optional.<HistoryConfiguration>empty();
+            // Whether a part of the state of the building can't be restored
+            var partial = false;
+            if (!isLinkRestorable(reference.getBlock())) {
+                if (configuration.isPresent()) {
+                    final var restorable = withoutLinks(configuration.get());
+                    if (!restorable.equals(configuration)) {
+                        // The links of this block can't be diffed with the world, they are left as is
+                        partial = true;
+                        configuration = restorable;
+                    }
+                }
+                partial |= window.stream().anyMatch(entry -> entry.getConfiguration()
+                        .filter(config -> !withoutLinks(config).equals(Optional.of(config)))
+                        .isPresent());
+            }
+
+            final var tile = Vars.world.tile(x, y);
+            if (tile == null) {
+                skipped++;
+                continue;
+            }
+            final var building = tile.build != null && tile.build.tile == tile ? tile.build : null;
+
+            if (!present) {
+                if (building != null) {
+                    actions.add(RollbackAction.remove(x, y, building.block, building.team));
+                }
+            } else if (building != null && building.block == reference.getBlock()) {
+                if (hasToggledLinks(building.block)) {
+                    // The previous entry only holds the last toggled link, the other toggles of the window are
+                    // reverted from the first toggle of each link
+                    final var links = new LinkHistory();
+                    window.forEach(links::revert);
+                    partial |= !links.isComplete();
+                    configuration = withLinks(configuration, links.getConfigurations());
+                }
+                if (configuration.isPresent()) {
+                    actions.add(RollbackAction.configure(x, y, building.block, building.team, configuration.get()));
+                }
+                if (partial) {
+                    skipped++;
+                }
+            } else if (this.isFree(x, y, reference.getBlock())) {
+                actions.add(RollbackAction.place(
+                        x,
+                        y,
+                        reference.getBlock(),
+                        reference.getAuthor().getTeam(),
+                        reference.getRotation(),
+                        configuration));
+                if (partial) {
+                    skipped++;
+                }
+            } else {
+                skipped++;
+            }
+        }
+
+        return RollbackPlan.of(actions, skipped);
+    }
+
+    private boolean isFree(final int x, final int y, final Block block) {
+        final var offset = -(block.size - 1) / 2;
+        for (int dx = 0; dx < block.size; dx++) {
+            for (int dy = 0; dy < block.size; dy++) {
+                final var tile = Vars.world.tile(x + dx + offset, y + dy + offset);
+                if (tile == null
+                        || tile.solid() && tile.build == null
+                        || tile.build != null && (tile.build.tileX() != x || tile.build.tileY() != y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void apply(final RollbackAction action) {
+        final var tile = Vars.world.tile(action.getX(), action.getY());
+        if (tile == null) {
+            return;
+        }
+        switch (action.getType()) {
+            case REMOVE -> {
+                if (tile.build != null && tile.build.block == action.getBlock()) {
+                    tile.removeNet();
+                }
+            }
+            case PLACE -> {
+                tile.setNet(action.getBlock(), action.getTeam(), action.getRotation());
+                if (tile.build != null && action.getConfiguration().isPresent()) {
+                    this.configure(tile.build, action.getConfiguration().get());
+                }
+            }
+            case CONFIGURE -> {
+                if (tile.build != null && tile.build.block == action.getBlock()) {
+                    this.configure(tile.build, action.getConfiguration().orElseThrow());
+                }
+            }
+        }
+    }
+
+    private void configure(final Building building, final HistoryConfiguration configuration) {
+        if (configuration instanceof HistoryConfiguration.Composite composite) {
+            // The code is compressed with the current links of the building, so it is applied once they are restored
+            for (final var component : composite.getConfigurations()) {
+                if (!isCode(component)) {
+                    this.configure(building, component);
+                }
+            }
+            for (final var component : composite.getConfigurations()) {
+                if (isCode(component)) {
+                    this.configure(building, component);
+                }
+            }
+            return;
+        }
+        if (configuration instanceof HistoryConfiguration.Link link && link.getType() != Link.Type.RESET) {
+            this.restoreLinks(building, link);
+            return;
+        }
+        final var value = this.toConfigValue(building, configuration);
+        if (value.isPresent()) {
+            building.configureAny(value.get());
+        }
+    }
+
+    // A link entry only holds the toggled links, so only the ones that differ from the world are configured
+    private void restoreLinks(final Building building, final HistoryConfiguration.Link link) {
+        final var connected = link.getType() == Link.Type.CONNECT;
+        for (final var position : link.getPositions()) {
+            final var x = building.tileX() + position.getX();
+            final var y = building.tileY() + position.getY();
+            final var packed = Point2.pack(x, y);
+            if (building instanceof PowerNodeBuild node) {
+                // Configuring a position toggles its link
+                if (node.power.links.contains(packed) != connected) {
+                    building.configureAny(packed);
+                }
+            } else if (building instanceof LogicBuild logic) {
+                if (logic.links.contains(l -> l.x == x && l.y == y) != connected) {
+                    building.configureAny(packed);
+                }
+            } else {
+                // The other linkable blocks only hold a single link, configuring a position replaces it
+                final var current = getSingleLink(building);
+                if (current.isEmpty()) {
+                    return;
+                }
+                if (connected && current.getAsInt() != packed) {
+                    building.configureAny(packed);
+                } else if (!connected && current.getAsInt() == packed) {
+                    building.configureAny(-1);
+                }
+            }
+        }
+    }
+
+    // Reverses the conversion done by the configuration factories of the history
+    private Optional<Object> toConfigValue(final Building building, final HistoryConfiguration configuration) {
+        if (configuration instanceof HistoryConfiguration.Simple simple) {
+            return simple.getValue();
+        } else if (configuration instanceof HistoryConfiguration.Enable enable) {
+            return Optional.of(enable.getValue());
+        } else if (configuration instanceof HistoryConfiguration.Content content) {
+            return content.getValue().map(Object.class::cast);
+        } else if (configuration instanceof HistoryConfiguration.Text text) {
+            return Optional.of(
+                    text.getType() == HistoryConfiguration.Text.Type.CODE
+                            ? LogicBlock.compress(text.getText(), getRelativeLinks(building))
+                            : text.getText());
+        } else if (configuration instanceof HistoryConfiguration.Color color) {
+            return Optional.of(color.getColor().getRGB());
+        } else if (configuration instanceof HistoryConfiguration.Canvas canvas) {
+            final var buffer = canvas.getBytes().duplicate();
+            final var bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return Optional.of(bytes);
+        } else if (configuration instanceof HistoryConfiguration.Link link && link.getType() == Link.Type.RESET) {
+            return Optional.of(
+                    building.block.configurations.containsKey(Point2[].class) ? new Point2[0] : Integer.valueOf(-1));
+        }
+        return Optional.empty();
+    }
+
+    // The compressed code carries the links of the processor, relative to it
+    private static Seq<LogicLink> getRelativeLinks(final Building building) {
+        final var links = new Seq<LogicLink>();
+        if (building instanceof LogicBuild logic) {
+            for (final var link : logic.links) {
+                links.add(new LogicLink(link.x - logic.tileX(), link.y - logic.tileY(), link.name, link.valid));
+            }
+        }
+        return links;
+    }
+
+    private static OptionalInt getSingleLink(final Building building) {
+        if (building instanceof ItemBridgeBuild bridge) {
+            return OptionalInt.of(bridge.link);
+        } else if (building instanceof MassDriverBuild driver) {
+            return OptionalInt.of(driver.link);
+        } else if (building instanceof PayloadDriverBuild driver) {
+            return OptionalInt.of(driver.link);
+        }
+        return OptionalInt.empty();
+    }
+
+    private static boolean hasToggledLinks(final Block block) {
+        return block instanceof PowerNode || block instanceof LogicBlock;
+    }
+
+    private static boolean isLinkRestorable(final Block block) {
+        return block instanceof PowerNode
+                || block instanceof LogicBlock
+                || block instanceof ItemBridge
+                || block instanceof MassDriver
+                || block instanceof PayloadMassDriver;
+    }
+
+    private static boolean isCode(final HistoryConfiguration configuration) {
+        return configuration instanceof HistoryConfiguration.Text text
+                && text.getType() == HistoryConfiguration.Text.Type.CODE;
+    }
+
+    // The links are applied after the previous configuration, so they take precedence over it
+    private static Optional<HistoryConfiguration> withLinks(
+            final Optional<HistoryConfiguration> configuration, final List<HistoryConfiguration> links) {
+        if (links.isEmpty()) {
+            return configuration;
+        }
+        final List<HistoryConfiguration> components = new ArrayList<>();
+        if (configuration.isPresent()) {
+            if (configuration.get() instanceof HistoryConfiguration.Composite composite) {
+                components.addAll(composite.getConfigurations());
+            } else {
+                components.add(configuration.get());
+            }
+        }
+        components.addAll(links);
+        return Optional.of(
+                components.size() == 1 ? components.get(0) : HistoryConfiguration.Composite.of(components));
+    }
+
+    private static Optional<HistoryConfiguration> withoutLinks(final HistoryConfiguration configuration) {
+        if (configuration instanceof HistoryConfiguration.Link link) {
+            return link.getType() == Link.Type.RESET ? Optional.of(link) : Optional.empty();
+        } else if (configuration instanceof HistoryConfiguration.Composite composite) {
+            final List<HistoryConfiguration> components = new ArrayList<>();
+            for (final var component : composite.getConfigurations()) {
+                withoutLinks(component).ifPresent(components::add);
+            }
+            if (components.size() == composite.getConfigurations().size()) {
+                return Optional.of(composite);
+            }
+            return switch (components.size()) {
+                case 0 -> Optional.empty();
+                case 1 -> Optional.of(components.get(0));
+                default -> Optional.of(HistoryConfiguration.Composite.of(components));
+            };
+        }
+        return Optional.of(configuration);
+    }
+
+    // State of the links toggled in a window, before the window
+    private static final class LinkHistory {
+
+        private final Map<ImmutablePoint, Boolean> connected = new LinkedHashMap<>();
+        private boolean complete = true;
+
+        private void revert(final HistoryEntry entry) {
+            entry.getConfiguration().ifPresent(this::revert);
+        }
+
+        private void revert(final HistoryConfiguration configuration) {
+            if (configuration instanceof HistoryConfiguration.Composite composite) {
+                composite.getConfigurations().forEach(this::revert);
+            } else if (configuration instanceof HistoryConfiguration.Link link) {
+                if (link.getType() == Link.Type.RESET || link.getPositions().size() != 1) {
+                    // A reset or a whole set of links replaces the links that were there, which aren't known
+                    this.complete = false;
+                    return;
+                }
+                // Only the first toggle tells the state before the window, the ones after a reset can't tell it
+                if (this.complete) {
+                    this.connected.putIfAbsent(link.getPositions().get(0), link.getType() == Link.Type.DISCONNECT);
+                }
+            }
+        }
+
+        private boolean isComplete() {
+            return this.complete;
+        }
+
+        private List<HistoryConfiguration> getConfigurations() {
+            final List<ImmutablePoint> connect = new ArrayList<>();
+            final List<ImmutablePoint> disconnect = new ArrayList<>();
+            this.connected.forEach((position, state) -> (state ? connect : disconnect).add(position));
+            final List<HistoryConfiguration> configurations = new ArrayList<>();
+            if (!connect.isEmpty()) {
+                configurations.add(Link.of(connect, true));
+            }
+            if (!disconnect.isEmpty()) {
+                configurations.add(Link.of(disconnect, false));
+            }
+            return configurations;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.user;
+
+import fr.xpdustry.distributor.api.scheduler.MindustryTimeUnit;
+import fr.xpdustry.distributor.api.scheduler.TaskHandler;
+import fr.xpdustry.nucleus.common.application.NucleusListener;
+import fr.xpdustry.nucleus.common.database.DatabaseService;
+import fr.xpdustry.nucleus.common.database.EntityUpdate;
+import fr.xpdustry.nucleus.common.database.model.User;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the users of the online players in memory for the duration of their session. The changes are accumulated as
+ * partial updates and written to the database in bulk periodically, when the player leaves and when the server stops.
+ */
+public final class UserSessionManager implements NucleusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSessionManager.class);
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> closing = new ConcurrentHashMap<>();
+    private final DatabaseService database;
+
+    @Inject
+    public UserSessionManager(final DatabaseService database) {
+        this.database = database;
+    }
+
+    @Override
+    public void onNucleusExit() {
+        this.flush().join();
+    }
+
+    /**
+     * Loads the user of a joining player, then applies the given update to it.
+     */
+    public void open(final String uuid, final EntityUpdate<User> update) {
+        // Waits for the save of the previous session if the player is reconnecting
+        final var session = new Session(this.closing
+                .getOrDefault(uuid, CompletableFuture.completedFuture(null))
+                .exceptionally(throwable -> null)
+                .thenCompose(empty -> this.database.getUserManager().findByIdOrCreate(uuid)));
+        this.sessions.put(uuid, session);
+        session.update(update);
+    }
+
+    /**
+     * Updates the user of an online player, the change will be written with the next flush.
+     */
+    public void update(final String uuid, final EntityUpdate<User> update) {
+        final var session = this.sessions.get(uuid);
+        if (session == null) {
+            this.database.getUserManager().update(uuid, update);
+        } else {
+            session.update(update);
+        }
+    }
+
+    /**
+     * Ends the session of a leaving player with a last update, then writes its pending changes immediately.
+     */
+    public CompletableFuture<Void> close(final String uuid, final EntityUpdate<User> update) {
+        final var session = this.sessions.remove(uuid);
+        if (session == null) {
+            return this.database.getUserManager().update(uuid, update);
+        }
+        session.update(update);
+        final var saved = session.user
+                .handle((user, throwable) -> session.drain())
+                .thenCompose(pending -> this.database.getUserManager().update(uuid, pending));
+        this.closing.put(uuid, saved);
+        saved.whenComplete((empty, throwable) -> this.closing.remove(uuid, saved));
+        return saved;
+    }
+
+    /**
+     * Returns the play time of a player, including the current session.
+     */
+    public CompletableFuture<Duration> getPlayTime(final String uuid) {
+        final var session = this.sessions.get(uuid);
+        if (session == null) {
+            return this.database.getUserManager().findByIdOrCreate(uuid).thenApply(User::getPlayTime);
+        }
+        return session.user.thenApply(user -> session.getPlayTime().plus(session.getDuration()));
+    }
+
+    /**
+     * Returns the duration of the current session of a player, or zero if the player has no session.
+     */
+    public Duration getSessionDuration(final String uuid) {
+        final var session = this.sessions.get(uuid);
+        return session == null ? Duration.ZERO : session.getDuration();
+    }
+
+    @TaskHandler(interval = 30L, unit = MindustryTimeUnit.SECONDS, async = true)
+    public void onUserFlush() {
+        this.flush();
+    }
+
+    /**
+     * Writes the pending changes of all the sessions in a single bulk write.
+     */
+    public CompletableFuture<Void> flush() {
+        final Map<String, Session> flushed = new HashMap<>();
+        final Map<String, EntityUpdate<User>> updates = new HashMap<>();
+        for (final var entry : this.sessions.entrySet()) {
+            // The changes are only written once the user is loaded, so they are not counted twice in memory
+            if (!entry.getValue().user.isDone()) {
+                continue;
+            }
+            final var pending = entry.getValue().drain();
+            if (!pending.isEmpty()) {
+                flushed.put(entry.getKey(), entry.getValue());
+                updates.put(entry.getKey(), pending);
+            }
+        }
+        if (updates.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.database.getUserManager().updateAll(updates).whenComplete((empty, throwable) -> {
+            if (throwable != null) {
+                logger.error("Failed to save {} users, retrying with the next flush.", updates.size(), throwable);
+                flushed.forEach((uuid, session) -> session.restore(updates.get(uuid)));
+            }
+        });
+    }
+
+    private static final class Session {
+
+        private final CompletableFuture<User> user;
+        private final long start = System.currentTimeMillis();
+        private EntityUpdate<User> pending = EntityUpdate.create();
+
+        private Session(final CompletableFuture<User> user) {
+            this.user = user;
+        }
+
+        private void update(final EntityUpdate<User> update) {
+            synchronized (this) {
+                this.pending.merge(update);
+            }
+            this.user
+                    .thenAccept(loaded -> {
+                        synchronized (this) {
+                            update.apply(loaded);
+                        }
+                    })
+                    .exceptionally(throwable -> {
+                        logger.error("Failed to load the user session.", throwable);
+                        return null;
+                    });
+        }
+
+        private synchronized EntityUpdate<User> drain() {
+            final var drained = this.pending;
+            this.pending = EntityUpdate.create();
+            return drained;
+        }
+
+        private synchronized void restore(final EntityUpdate<User> failed) {
+            this.pending = failed.merge(this.pending);
+        }
+
+        private synchronized Duration getPlayTime() {
+            return this.user.join().getPlayTime();
+        }
+
+        private Duration getDuration() {
+            return Duration.ofMillis(System.currentTimeMillis() - this.start);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.util.List;
+import java.util.stream.LongStream;
+import mindustry.world.Block;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class ColdHistoryStoreTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final Block LARGE_BLOCK = HistoryTestContent.LARGE_BLOCK;
+    private static final HistoryAuthor AUTHOR_1 = HistoryTestContent.author("author-1");
+    private static final HistoryAuthor AUTHOR_2 = HistoryTestContent.author("author-2");
+    // More than two compressed blocks of the same region, the rest stays uncompressed
+    private static final int ENTRIES = 600;
+
+    @Test
+    void test_tile_history() {
+        final var store = new ColdHistoryStore(16);
+        final var configuration = HistoryConfiguration.Enable.of(true);
+        for (int i = 0; i < ENTRIES; i++) {
+            store.add(
+                    Point2.pack(8, 8),
+                    (byte) Type.CONFIGURE.ordinal(),
+                    SMALL_BLOCK.id,
+                    AUTHOR_1,
+                    i % 7 == 0 ? configuration : null,
+                    i);
+        }
+
+        final var history = store.getHistory(8, 8, Long.MAX_VALUE, ENTRIES);
+        Assertions.assertEquals(
+                LongStream.range(0L, ENTRIES).boxed().toList(), HistoryTestContent.getTimestamps(history));
+        for (int i = 0; i < ENTRIES; i++) {
+            Assertions.assertEquals(i % 7 == 0, history.get(i).getConfiguration().isPresent());
+            Assertions.assertEquals(Type.CONFIGURE, history.get(i).getType());
+            Assertions.assertEquals(AUTHOR_1, history.get(i).getAuthor());
+        }
+
+        final var latest = store.getHistory(8, 8, Long.MAX_VALUE, 3);
+        Assertions.assertEquals(List.of(597L, 598L, 599L), HistoryTestContent.getTimestamps(latest));
+        final var before = store.getHistory(8, 8, 100L, 2);
+        Assertions.assertEquals(List.of(98L, 99L), HistoryTestContent.getTimestamps(before));
+        Assertions.assertTrue(store.getHistory(9, 9, Long.MAX_VALUE, ENTRIES).isEmpty());
+    }
+
+    @Test
+    void test_covered_tile() {
+        final var store = new ColdHistoryStore(16);
+        store.add(Point2.pack(32, 32), (byte) Type.PLACE.ordinal(), LARGE_BLOCK.id, AUTHOR_1, null, 1L);
+        // The origin is in another region than the covered tile
+        final var history = store.getHistory(31, 31, Long.MAX_VALUE, 10);
+        Assertions.assertEquals(1, history.size());
+        Assertions.assertTrue(history.get(0).isVirtual());
+        Assertions.assertEquals(32, history.get(0).getBuildX());
+    }
+
+    @Test
+    void test_player_history() {
+        final var store = new ColdHistoryStore(16);
+        // In a single region, so most of the entries are compressed
+        for (int i = 0; i < ENTRIES; i++) {
+            store.add(
+                    Point2.pack(i % 32, i % 16),
+                    (byte) Type.BREAK.ordinal(),
+                    SMALL_BLOCK.id,
+                    i % 2 == 0 ? AUTHOR_1 : AUTHOR_2,
+                    null,
+                    i);
+        }
+
+        final var history = store.getHistory("author-2", Long.MAX_VALUE, ENTRIES);
+        Assertions.assertEquals(ENTRIES / 2, history.size());
+        for (int i = 0; i < history.size(); i++) {
+            Assertions.assertEquals((i * 2L) + 1L, history.get(i).getTimestamp().toEpochMilli());
+            Assertions.assertEquals(AUTHOR_2, history.get(i).getAuthor());
+        }
+        Assertions.assertTrue(store.getHistory("unknown", Long.MAX_VALUE, ENTRIES).isEmpty());
+    }
+
+    @Test
+    void test_block_limit() {
+        final var store = new ColdHistoryStore(1);
+        for (int i = 0; i < ENTRIES; i++) {
+            store.add(Point2.pack(8, 8), (byte) Type.PLACE.ordinal(), SMALL_BLOCK.id, AUTHOR_1, null, i);
+        }
+        // Only the newest compressed block is kept, with the uncompressed entries after it
+        final var history = store.getHistory(8, 8, Long.MAX_VALUE, ENTRIES);
+        Assertions.assertEquals(
+                LongStream.range(256L, ENTRIES).boxed().toList(), HistoryTestContent.getTimestamps(history));
+    }
+
+    @Test
+    void test_clear() {
+        final var store = new ColdHistoryStore(16);
+        for (int i = 0; i < ENTRIES; i++) {
+            store.add(Point2.pack(8, 8), (byte) Type.PLACE.ordinal(), SMALL_BLOCK.id, AUTHOR_1, null, i);
+        }
+        store.clear();
+        Assertions.assertTrue(store.getHistory(8, 8, Long.MAX_VALUE, ENTRIES).isEmpty());
+        Assertions.assertTrue(store.getHistory("author-1", Long.MAX_VALUE, ENTRIES).isEmpty());
+    }
+}
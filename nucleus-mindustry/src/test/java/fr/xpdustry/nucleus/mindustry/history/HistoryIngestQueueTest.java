@@ -0,0 +1,158 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.util.ArrayList;
+import java.util.List;
+import mindustry.gen.Building;
+import mindustry.world.Block;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class HistoryIngestQueueTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final Block POWER_NODE = HistoryTestContent.POWER_NODE;
+    private static final HistoryAuthor AUTHOR_1 = HistoryTestContent.author("author-1");
+    private static final HistoryAuthor AUTHOR_2 = HistoryTestContent.author("author-2");
+
+    @Test
+    void test_fifo() {
+        final var queue = new HistoryIngestQueue(10, HistoryOverflowPolicy.DROP_NEWEST);
+        final var building = Building.create();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, i));
+        }
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4), drain(queue));
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertNull(queue.poll());
+    }
+
+    @Test
+    void test_drop_newest() {
+        final var queue = new HistoryIngestQueue(3, HistoryOverflowPolicy.DROP_NEWEST);
+        final var building = Building.create();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(createEvent(building, SMALL_BLOCK, Type.PLACE, i));
+        }
+        Assertions.assertEquals(List.of(0, 1, 2), drain(queue));
+        Assertions.assertEquals(2L, queue.getDroppedCount());
+    }
+
+    @Test
+    void test_drop_oldest() {
+        final var queue = new HistoryIngestQueue(3, HistoryOverflowPolicy.DROP_OLDEST);
+        final var building = Building.create();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(createEvent(building, SMALL_BLOCK, Type.PLACE, i));
+        }
+        Assertions.assertEquals(List.of(2, 3, 4), drain(queue));
+        Assertions.assertEquals(2L, queue.getDroppedCount());
+    }
+
+    @Test
+    void test_coalesce_value() {
+        final var queue = new HistoryIngestQueue(2, HistoryOverflowPolicy.COALESCE);
+        final var building = Building.create();
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, 0));
+        queue.offer(createEvent(Building.create(), SMALL_BLOCK, Type.CONFIGURE, 1));
+
+        final var latest = new HistoryIngestQueue.Event(building, SMALL_BLOCK, AUTHOR_2, Type.CONFIGURE, 2, 0L);
+        queue.offer(latest);
+        Assertions.assertEquals(1L, queue.getCoalescedCount());
+        Assertions.assertEquals(0L, queue.getDroppedCount());
+
+        final var first = queue.poll();
+        Assertions.assertNotNull(first);
+        Assertions.assertSame(building, first.getBuilding());
+        Assertions.assertEquals(2, first.getConfig());
+        Assertions.assertEquals(AUTHOR_2, first.getAuthor());
+        Assertions.assertEquals(latest.getTimestamp(), first.getTimestamp());
+        Assertions.assertEquals(List.of(1), drain(queue));
+    }
+
+    @Test
+    void test_coalesce_other_building_or_type() {
+        final var queue = new HistoryIngestQueue(1, HistoryOverflowPolicy.COALESCE);
+        final var building = Building.create();
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, 0));
+        queue.offer(createEvent(Building.create(), SMALL_BLOCK, Type.CONFIGURE, 1));
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.BREAK, 2));
+        Assertions.assertEquals(0L, queue.getCoalescedCount());
+        Assertions.assertEquals(2L, queue.getDroppedCount());
+        Assertions.assertEquals(List.of(0), drain(queue));
+    }
+
+    @Test
+    void test_coalesce_claimed() {
+        final var queue = new HistoryIngestQueue(1, HistoryOverflowPolicy.COALESCE);
+        final var building = Building.create();
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, 0));
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, 1));
+        // The worker took the first event, so the next one is queued normally
+        Assertions.assertNotNull(queue.poll());
+        queue.offer(createEvent(building, SMALL_BLOCK, Type.CONFIGURE, 2));
+        Assertions.assertEquals(1L, queue.getCoalescedCount());
+        Assertions.assertEquals(List.of(2), drain(queue));
+    }
+
+    @Test
+    void test_coalesce_link_toggle() {
+        final var queue = new HistoryIngestQueue(1, HistoryOverflowPolicy.COALESCE);
+        final var building = Building.create();
+        final var links = new Point2[] {new Point2(1, 0)};
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, links));
+        // Toggling the same link twice must not collapse into a single toggle
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, Point2.pack(2, 0)));
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, new Point2(2, 0)));
+        Assertions.assertEquals(0L, queue.getCoalescedCount());
+        Assertions.assertEquals(2L, queue.getDroppedCount());
+        final var event = queue.poll();
+        Assertions.assertNotNull(event);
+        Assertions.assertSame(links, event.getConfig());
+    }
+
+    @Test
+    void test_coalesce_after_link_toggle() {
+        final var queue = new HistoryIngestQueue(2, HistoryOverflowPolicy.COALESCE);
+        final var building = Building.create();
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, new Point2[0]));
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, Point2.pack(2, 0)));
+        // The links set after the toggle can't be moved before it
+        queue.offer(createEvent(building, POWER_NODE, Type.CONFIGURE, new Point2[0]));
+        Assertions.assertEquals(0L, queue.getCoalescedCount());
+        Assertions.assertEquals(1L, queue.getDroppedCount());
+    }
+
+    private static HistoryIngestQueue.Event createEvent(
+            final Building building, final Block block, final Type type, final @Nullable Object config) {
+        return new HistoryIngestQueue.Event(building, block, AUTHOR_1, type, config, 0L);
+    }
+
+    private static List<@Nullable Object> drain(final HistoryIngestQueue queue) {
+        final List<@Nullable Object> configs = new ArrayList<>();
+        HistoryIngestQueue.Event event;
+        while ((event = queue.poll()) != null) {
+            configs.add(event.getConfig());
+        }
+        return configs;
+    }
+}
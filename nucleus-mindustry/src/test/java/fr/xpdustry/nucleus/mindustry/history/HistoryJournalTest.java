@@ -0,0 +1,114 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import mindustry.world.Block;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class HistoryJournalTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final HistoryAuthor AUTHOR_1 = HistoryTestContent.author("author-1");
+    private static final HistoryAuthor AUTHOR_2 = HistoryTestContent.author("author-2");
+    // Spans three segments of the minimum size
+    private static final int ENTRIES = 2500;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_append_across_segments() throws IOException {
+        try (final var journal = new HistoryJournal(this.directory, 0, 3)) {
+            final var session = journal.startSession("test", 0L);
+            final var configuration = HistoryConfiguration.Enable.of(true);
+            for (int i = 0; i < ENTRIES; i++) {
+                journal.append(
+                        i % 2 == 0 ? 4 : 40,
+                        4,
+                        Type.CONFIGURE,
+                        SMALL_BLOCK,
+                        i % 4,
+                        i % 2 == 0 ? AUTHOR_1 : AUTHOR_2,
+                        i % 5 == 0 ? configuration : null,
+                        i);
+            }
+
+            final var history = journal.getHistory(session, 4, 4, ENTRIES);
+            Assertions.assertEquals(
+                    LongStream.range(0L, ENTRIES).filter(i -> i % 2 == 0).boxed().toList(),
+                    HistoryTestContent.getTimestamps(history));
+            for (final var entry : history) {
+                Assertions.assertEquals(AUTHOR_1, entry.getAuthor());
+                Assertions.assertEquals(Type.CONFIGURE, entry.getType());
+                Assertions.assertEquals(entry.getTimestamp().toEpochMilli() % 4, entry.getRotation());
+                Assertions.assertEquals(
+                        entry.getTimestamp().toEpochMilli() % 5 == 0, entry.getConfiguration().isPresent());
+            }
+
+            final var latest = journal.getHistory(session, "author-2", 3);
+            Assertions.assertEquals(List.of(2495L, 2497L, 2499L), HistoryTestContent.getTimestamps(latest));
+            Assertions.assertTrue(journal.getHistory(session, "author-3", 3).isEmpty());
+        }
+    }
+
+    @Test
+    void test_reopen() throws IOException {
+        final HistorySession session;
+        try (final var journal = new HistoryJournal(this.directory, 0, 3)) {
+            session = journal.startSession("test", 10L);
+            journal.append(4, 4, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_1, null, 10L);
+        }
+        try (final var journal = new HistoryJournal(this.directory, 0, 3)) {
+            Assertions.assertEquals(List.of(session), journal.getSessions());
+            Assertions.assertEquals(Optional.empty(), journal.getCurrentSession());
+            final var history = journal.getHistory(session, 4, 4, 10);
+            Assertions.assertEquals(List.of(10L), HistoryTestContent.getTimestamps(history));
+        }
+    }
+
+    @Test
+    void test_empty_session() throws IOException {
+        try (final var journal = new HistoryJournal(this.directory, 0, 3)) {
+            final var session = journal.startSession("test", 0L);
+            Assertions.assertEquals(Optional.of(session), journal.getCurrentSession());
+            Assertions.assertTrue(journal.getHistory(session, 4, 4, 10).isEmpty());
+            Assertions.assertTrue(journal.getHistory(session, "author-1", 10).isEmpty());
+        }
+    }
+
+    @Test
+    void test_retention() throws IOException {
+        try (final var journal = new HistoryJournal(this.directory, 0, 2)) {
+            for (int i = 0; i < 4; i++) {
+                journal.startSession("map-" + i, i);
+                journal.append(4, 4, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_1, null, i);
+            }
+            final var sessions = journal.getSessions();
+            Assertions.assertEquals(List.of("map-2", "map-3"), sessions.stream().map(HistorySession::getMap).toList());
+            Assertions.assertEquals(List.of(2L, 3L), sessions.stream().map(HistorySession::getIdentifier).toList());
+        }
+    }
+}
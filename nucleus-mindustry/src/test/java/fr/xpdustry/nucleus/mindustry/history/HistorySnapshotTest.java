@@ -0,0 +1,79 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.math.geom.Point2;
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.time.Instant;
+import java.util.Optional;
+import mindustry.world.Block;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class HistorySnapshotTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final Block LARGE_BLOCK = HistoryTestContent.LARGE_BLOCK;
+    private static final HistoryAuthor AUTHOR = HistoryTestContent.author("author");
+
+    @Test
+    void test_materialize() {
+        final var configuration = HistoryConfiguration.Enable.of(true);
+        final var snapshot = new HistorySnapshot(1);
+        snapshot.add(
+                Point2.pack(11, 9),
+                Point2.pack(10, 10),
+                HistorySnapshot.packType(Type.CONFIGURE.ordinal(), 3),
+                LARGE_BLOCK.id,
+                AUTHOR,
+                42L,
+                configuration);
+
+        final var entry = snapshot.get(0);
+        Assertions.assertEquals(11, entry.getX());
+        Assertions.assertEquals(9, entry.getY());
+        Assertions.assertEquals(10, entry.getBuildX());
+        Assertions.assertEquals(10, entry.getBuildY());
+        Assertions.assertTrue(entry.isVirtual());
+        Assertions.assertEquals(Type.CONFIGURE, entry.getType());
+        Assertions.assertEquals(3, entry.getRotation());
+        Assertions.assertSame(LARGE_BLOCK, entry.getBlock());
+        Assertions.assertEquals(AUTHOR, entry.getAuthor());
+        Assertions.assertEquals(Instant.ofEpochMilli(42L), entry.getTimestamp());
+        Assertions.assertEquals(Optional.of(configuration), entry.getConfiguration());
+
+        // Materialized once, then reused
+        Assertions.assertSame(entry, snapshot.get(0));
+    }
+
+    @Test
+    void test_grow() {
+        final var snapshot = new HistorySnapshot(0);
+        for (int i = 0; i < 100; i++) {
+            snapshot.add(Point2.pack(i, i), Point2.pack(i, i), (byte) 0, SMALL_BLOCK.id, AUTHOR, i, null);
+        }
+        Assertions.assertEquals(100, snapshot.size());
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i, snapshot.get(i).getX());
+            Assertions.assertEquals(i, snapshot.get(i).getTimestamp().toEpochMilli());
+            Assertions.assertFalse(snapshot.get(i).isVirtual());
+        }
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(100));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> snapshot.remove(0));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import arc.Core;
+import arc.util.I18NBundle;
+import java.util.List;
+import java.util.Optional;
+import mindustry.Vars;
+import mindustry.core.ContentLoader;
+import mindustry.game.Team;
+import mindustry.type.UnitType;
+import mindustry.world.Block;
+import mindustry.world.blocks.power.PowerNode;
+
+/**
+ * The game content shared by the history tests, created once without loading the whole game.
+ */
+final class HistoryTestContent {
+
+    static final Block SMALL_BLOCK;
+    static final Block LARGE_BLOCK;
+    static final Block POWER_NODE;
+    static final UnitType UNIT;
+
+    static {
+        Core.bundle = I18NBundle.createEmptyBundle();
+        Vars.content = new ContentLoader();
+        SMALL_BLOCK = new Block("nucleus-test-small");
+        LARGE_BLOCK = new Block("nucleus-test-large");
+        LARGE_BLOCK.size = 3;
+        POWER_NODE = new PowerNode("nucleus-test-node");
+        UNIT = new UnitType("nucleus-test-unit");
+    }
+
+    private HistoryTestContent() {}
+
+    static HistoryAuthor author(final String uuid) {
+        return ImmutableHistoryAuthor.of(Optional.of(uuid), Team.sharded, UNIT);
+    }
+
+    static List<Long> getTimestamps(final List<HistoryEntry> entries) {
+        return entries.stream().map(entry -> entry.getTimestamp().toEpochMilli()).toList();
+    }
+}
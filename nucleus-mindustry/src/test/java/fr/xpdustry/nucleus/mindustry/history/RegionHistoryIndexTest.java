@@ -0,0 +1,95 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import mindustry.world.Block;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class RegionHistoryIndexTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final Block LARGE_BLOCK = HistoryTestContent.LARGE_BLOCK;
+    private static final HistoryAuthor AUTHOR = HistoryTestContent.author("author");
+
+    @Test
+    void test_merge_chunks() {
+        final var index = new RegionHistoryIndex(100);
+        // Spread over four chunks, the timestamps are interleaved between them
+        for (int i = 0; i < 40; i++) {
+            final var x = (i % 2) * 20;
+            final var y = ((i / 2) % 2) * 20;
+            index.add(x, y, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, i);
+        }
+        final var history = index.getHistory(0, 0, 40, 40, 0L);
+        Assertions.assertEquals(LongStream.range(0L, 40L).boxed().toList(), HistoryTestContent.getTimestamps(history));
+    }
+
+    @Test
+    void test_merge_random() {
+        final var random = new Random(42L);
+        final var index = new RegionHistoryIndex(1000);
+        for (int i = 0; i < 500; i++) {
+            // Small inversions, like the ones of the coalesced events
+            final var timestamp = i % 3 == 0 ? i + 2 : i;
+            index.add(random.nextInt(64), random.nextInt(64), Type.BREAK, SMALL_BLOCK, 0, AUTHOR, null, timestamp);
+        }
+        final var timestamps = HistoryTestContent.getTimestamps(index.getHistory(0, 0, 64, 64, 0L));
+        Assertions.assertEquals(500, timestamps.size());
+        for (int i = 1; i < timestamps.size(); i++) {
+            Assertions.assertTrue(timestamps.get(i - 1) <= timestamps.get(i));
+        }
+    }
+
+    @Test
+    void test_since() {
+        final var index = new RegionHistoryIndex(100);
+        for (int i = 0; i < 10; i++) {
+            index.add(5, 5, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, i);
+        }
+        final var history = index.getHistory(0, 0, 10, 10, 7L);
+        Assertions.assertEquals(List.of(7L, 8L, 9L), HistoryTestContent.getTimestamps(history));
+    }
+
+    @Test
+    void test_bucket_capacity() {
+        final var index = new RegionHistoryIndex(2);
+        index.add(5, 5, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, 1L);
+        index.add(6, 6, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, 2L);
+        index.add(7, 7, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, 3L);
+        Assertions.assertEquals(List.of(2L, 3L), HistoryTestContent.getTimestamps(index.getHistory(0, 0, 16, 16, 0L)));
+    }
+
+    @Test
+    void test_region_bounds() {
+        final var index = new RegionHistoryIndex(100);
+        index.add(5, 5, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, 1L);
+        index.add(9, 9, Type.PLACE, SMALL_BLOCK, 0, AUTHOR, null, 2L);
+        // Covers from (15, 15) to (17, 17), its origin is in another chunk than the queried region
+        index.add(16, 16, Type.PLACE, LARGE_BLOCK, 0, AUTHOR, null, 3L);
+
+        Assertions.assertEquals(List.of(1L), HistoryTestContent.getTimestamps(index.getHistory(4, 4, 2, 2, 0L)));
+        Assertions.assertEquals(List.of(2L, 3L), HistoryTestContent.getTimestamps(index.getHistory(9, 9, 7, 7, 0L)));
+        Assertions.assertTrue(index.getHistory(10, 10, 4, 4, 0L).isEmpty());
+        Assertions.assertTrue(index.getHistory(0, 0, 0, 10, 0L).isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.history;
+
+import fr.xpdustry.nucleus.mindustry.history.HistoryEntry.Type;
+import java.util.ArrayList;
+import java.util.List;
+import mindustry.world.Block;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class TileHistoryStoreTest {
+
+    private static final Block SMALL_BLOCK = HistoryTestContent.SMALL_BLOCK;
+    private static final Block LARGE_BLOCK = HistoryTestContent.LARGE_BLOCK;
+    private static final HistoryAuthor AUTHOR_1 = HistoryTestContent.author("author-1");
+    private static final HistoryAuthor AUTHOR_2 = HistoryTestContent.author("author-2");
+
+    private final List<Long> evicted = new ArrayList<>();
+    private final TileHistoryStore store = new TileHistoryStore(
+            3, (build, type, block, author, configuration, timestamp) -> this.evicted.add(timestamp));
+
+    @Test
+    void test_ring_wrap_around() {
+        for (int i = 1; i <= 5; i++) {
+            final var type = i % 2 == 0 ? Type.BREAK : Type.PLACE;
+            Assertions.assertTrue(this.store.add(4, 4, type, SMALL_BLOCK, 0, AUTHOR_1, null, i));
+        }
+        Assertions.assertEquals(List.of(3L, 4L, 5L), HistoryTestContent.getTimestamps(this.store.getHistory(4, 4)));
+        Assertions.assertEquals(List.of(1L, 2L), this.evicted);
+    }
+
+    @Test
+    void test_repeated_configuration() {
+        final var enabled = HistoryConfiguration.Enable.of(true);
+        Assertions.assertTrue(this.store.add(4, 4, Type.CONFIGURE, SMALL_BLOCK, 0, AUTHOR_1, enabled, 1L));
+        Assertions.assertFalse(this.store.add(4, 4, Type.CONFIGURE, SMALL_BLOCK, 0, AUTHOR_1, enabled, 2L));
+        Assertions.assertEquals(List.of(1L), HistoryTestContent.getTimestamps(this.store.getHistory(4, 4)));
+
+        // Another author or another value is a new entry
+        Assertions.assertTrue(this.store.add(4, 4, Type.CONFIGURE, SMALL_BLOCK, 0, AUTHOR_2, enabled, 3L));
+        Assertions.assertTrue(this.store.add(
+                4, 4, Type.CONFIGURE, SMALL_BLOCK, 0, AUTHOR_2, HistoryConfiguration.Enable.of(false), 4L));
+        Assertions.assertEquals(List.of(1L, 3L, 4L), HistoryTestContent.getTimestamps(this.store.getHistory(4, 4)));
+        Assertions.assertTrue(this.evicted.isEmpty());
+    }
+
+    @Test
+    void test_multi_tile_building() {
+        Assertions.assertTrue(this.store.add(10, 10, Type.PLACE, LARGE_BLOCK, 2, AUTHOR_1, null, 1L));
+        Assertions.assertTrue(this.store.add(12, 12, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_2, null, 2L));
+
+        final var origin = this.store.getHistory(10, 10);
+        Assertions.assertEquals(1, origin.size());
+        Assertions.assertFalse(origin.get(0).isVirtual());
+        Assertions.assertEquals(Type.PLACE, origin.get(0).getType());
+        Assertions.assertEquals(2, origin.get(0).getRotation());
+
+        final var covered = this.store.getHistory(11, 9);
+        Assertions.assertEquals(1, covered.size());
+        Assertions.assertTrue(covered.get(0).isVirtual());
+        Assertions.assertEquals(11, covered.get(0).getX());
+        Assertions.assertEquals(10, covered.get(0).getBuildX());
+
+        // Outside of the large building, only the small one
+        Assertions.assertEquals(List.of(2L), HistoryTestContent.getTimestamps(this.store.getHistory(12, 12)));
+        Assertions.assertTrue(this.store.getHistory(13, 13).isEmpty());
+    }
+
+    @Test
+    void test_covered_tile_merges_buildings() {
+        this.store.add(11, 11, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_1, null, 1L);
+        this.store.add(11, 11, Type.BREAK, SMALL_BLOCK, 0, AUTHOR_1, null, 2L);
+        this.store.add(10, 10, Type.PLACE, LARGE_BLOCK, 0, AUTHOR_2, null, 3L);
+        Assertions.assertEquals(List.of(1L, 2L, 3L), HistoryTestContent.getTimestamps(this.store.getHistory(11, 11)));
+    }
+
+    @Test
+    void test_clear() {
+        this.store.add(4, 4, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_1, null, 1L);
+        this.store.clear();
+        Assertions.assertTrue(this.store.getHistory(4, 4).isEmpty());
+        Assertions.assertTrue(this.store.add(4, 4, Type.PLACE, SMALL_BLOCK, 0, AUTHOR_1, null, 2L));
+        Assertions.assertEquals(List.of(2L), HistoryTestContent.getTimestamps(this.store.getHistory(4, 4)));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Nucleus, the software collection powering Xpdustry.
+ * Copyright (C) 2022  Xpdustry
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package fr.xpdustry.nucleus.mindustry.network;
+
+import com.google.common.net.InetAddresses;
+import fr.xpdustry.nucleus.mindustry.NucleusPluginConfiguration;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.aeonbits.owner.ConfigFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class ConnectionRateLimiterTest {
+
+    private static final InetAddress TEST_ADDRESS = InetAddresses.forString("78.5.47.96");
+    private static final InetAddress SAME_SUBNET_ADDRESS = InetAddresses.forString("78.5.47.200");
+    private static final InetAddress OTHER_SUBNET_ADDRESS = InetAddresses.forString("78.5.48.96");
+
+    private final AtomicLong clock = new AtomicLong(0L);
+
+    @Test
+    void test_below_sketch_threshold() {
+        final var limiter = this.createLimiter(3, 1, 0, 60);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        }
+        // The fourth connection is above the threshold and takes the single token of the bucket
+        Assertions.assertFalse(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertEquals(1L, limiter.getShedCount());
+    }
+
+    @Test
+    void test_token_bucket_refill() {
+        // One token per second
+        final var limiter = this.createLimiter(0, 2, 60, 60);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+
+        this.clock.addAndGet(1000L);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+
+        this.clock.addAndGet(10_000L);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertEquals(0L, limiter.getShedCount());
+    }
+
+    @Test
+    void test_blackhole() {
+        final var limiter = this.createLimiter(0, 1, 60, 60);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertFalse(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertEquals(1L, limiter.getBlackholedCount());
+        Assertions.assertEquals(1, limiter.getBlackholedSubnetCount());
+
+        // The bucket would have refilled, but the subnet stays blackholed
+        this.clock.addAndGet(30_000L);
+        Assertions.assertFalse(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertFalse(limiter.tryAcquire(SAME_SUBNET_ADDRESS));
+        Assertions.assertTrue(limiter.tryAcquire(OTHER_SUBNET_ADDRESS));
+        Assertions.assertEquals(3L, limiter.getShedCount());
+        Assertions.assertEquals(1L, limiter.getBlackholedCount());
+
+        this.clock.addAndGet(30_000L);
+        Assertions.assertEquals(0, limiter.getBlackholedSubnetCount());
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertEquals(3L, limiter.getShedCount());
+    }
+
+    @Test
+    void test_ipv6_subnets() {
+        final var limiter = this.createLimiter(0, 1, 0, 60);
+        Assertions.assertTrue(limiter.tryAcquire(InetAddresses.forString("2001:db8:1::1")));
+        Assertions.assertFalse(limiter.tryAcquire(InetAddresses.forString("2001:db8:1:ffff::1")));
+        Assertions.assertTrue(limiter.tryAcquire(InetAddresses.forString("2001:db8:2::1")));
+    }
+
+    @Test
+    void test_address_families_are_separate() {
+        final var limiter = this.createLimiter(0, 1, 0, 60);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertFalse(limiter.tryAcquire(TEST_ADDRESS));
+        // The first 48 bits of this address are the first 24 bits of the test address
+        Assertions.assertTrue(limiter.tryAcquire(InetAddresses.forString("0:4e:52f::1")));
+    }
+
+    @Test
+    void test_maintenance_removes_expired_blackholes() {
+        final var limiter = this.createLimiter(0, 1, 0, 60);
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertFalse(limiter.tryAcquire(TEST_ADDRESS));
+
+        this.clock.addAndGet(60_000L);
+        limiter.onRateLimiterMaintenance();
+        Assertions.assertEquals(0, limiter.getBlackholedSubnetCount());
+        Assertions.assertTrue(limiter.tryAcquire(TEST_ADDRESS));
+        Assertions.assertEquals(1L, limiter.getBlackholedCount());
+    }
+
+    private ConnectionRateLimiter createLimiter(
+            final int threshold, final int capacity, final int refill, final int blackhole) {
+        final var configuration = ConfigFactory.create(
+                NucleusPluginConfiguration.class,
+                Map.of(
+                        "fr.xpdustry.nucleus.mindustry.connection.rate.sketch-threshold", String.valueOf(threshold),
+                        "fr.xpdustry.nucleus.mindustry.connection.rate.capacity", String.valueOf(capacity),
+                        "fr.xpdustry.nucleus.mindustry.connection.rate.refill", String.valueOf(refill),
+                        "fr.xpdustry.nucleus.mindustry.connection.rate.blackhole-duration",
+                                String.valueOf(blackhole)));
+        return new ConnectionRateLimiter(configuration, this.clock::get);
+    }
+}